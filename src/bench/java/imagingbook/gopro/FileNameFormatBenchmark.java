@@ -0,0 +1,127 @@
+package imagingbook.gopro;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link FileNameFormat#matchFileName(String)} and {@link FileNameFormat#mapFileName(String)}
+ * for both GoPro formats on arrays of file names with a given fraction of matching names.
+ * The regex-based matching used originally is included as a baseline, the
+ * {@link FormatClassifier} over all registered formats for comparison.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileNameFormatBenchmark {
+
+    private static final int N = 1024;
+
+    private static final String[] otherNames = {
+            "notes.txt", "IMG_4711.JPG", "GOPR0527.MP4", "GH01052.MP4", "DSC01234.ARW",
+            "GX010527.MP4.bak", "Thumbs.db", "052701-GH010528.MP4", "GHXX0527.MP4", "readme"
+    };
+
+    @Param({"0.1", "0.5", "0.9"})
+    public double hitRatio;
+
+    private final FileNameFormat original = new FileNameFormat.OriginalGoproFormat();
+    private final FileNameFormat renamed = new FileNameFormat.RenamedGoproFormat();
+    private final FileNameFormat classifier = FileNameFormats.getClassifier(RenamerSettings.ProcessMode.Rename);
+
+    private String[] originalNames;     // mix of original GoPro names and others
+    private String[] renamedNames;      // mix of renamed GoPro names and others
+    private String[] originalMatches;   // original GoPro names only
+    private String[] renamedMatches;    // renamed GoPro names only
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(42);
+        originalNames = new String[N];
+        renamedNames = new String[N];
+        originalMatches = new String[N];
+        renamedMatches = new String[N];
+        for (int i = 0; i < N; i++) {
+            String name = String.format("G%c%02d%04d.%s", "HLX".charAt(rnd.nextInt(3)),
+                    1 + rnd.nextInt(20), rnd.nextInt(10000), rnd.nextBoolean() ? "MP4" : "LRV");
+            originalMatches[i] = name;
+            renamedMatches[i] = original.mapFileName(name);
+            boolean hit = rnd.nextDouble() < hitRatio;
+            String other = otherNames[rnd.nextInt(otherNames.length)];
+            originalNames[i] = hit ? originalMatches[i] : other;
+            renamedNames[i] = hit ? renamedMatches[i] : other;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public void matchOriginal(Blackhole bh) {
+        for (String name : originalNames) {
+            bh.consume(original.matchFileName(name));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public void matchOriginalRegex(Blackhole bh) {
+        for (String name : originalNames) {
+            bh.consume(FileNameFormat.OriginalGoproFormat.pat.matcher(FileNameFormat.stripFileExtension(name)).matches());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public void matchClassifier(Blackhole bh) {
+        for (String name : originalNames) {
+            bh.consume(classifier.matchFileName(name));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public void matchRenamed(Blackhole bh) {
+        for (String name : renamedNames) {
+            bh.consume(renamed.matchFileName(name));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public void matchRenamedRegex(Blackhole bh) {
+        for (String name : renamedNames) {
+            bh.consume(FileNameFormat.RenamedGoproFormat.pat.matcher(FileNameFormat.stripFileExtension(name)).matches());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public void mapOriginal(Blackhole bh) {
+        for (String name : originalMatches) {
+            bh.consume(original.mapFileName(name));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public void mapRenamed(Blackhole bh) {
+        for (String name : renamedMatches) {
+            bh.consume(renamed.mapFileName(name));
+        }
+    }
+}
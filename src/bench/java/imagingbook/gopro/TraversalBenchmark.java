@@ -0,0 +1,117 @@
+package imagingbook.gopro;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures dry runs of the {@link RenamerEngine} on a synthetic directory tree
+ * (see {@link SyntheticTreeGenerator}), as well as the bare directory traversal
+ * with {@link DirectoryWalker} and with the original {@link File#listFiles()}-based recursion.
+ * Tree sizes can be set on the command line, e.g.,
+ * {@code -Djmh.args="TraversalBenchmark -p dirs=1000 -p videos=50"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TraversalBenchmark {
+
+    @Param({"200"})
+    public int dirs;
+
+    @Param({"20"})
+    public int videos;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private Path root;
+    private RenamerSettings settings;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        root = Files.createTempDirectory("gopro-bench");
+        new SyntheticTreeGenerator().setDirs(dirs).setDepth(2).setVideos(videos).generate(root);
+        settings = new RenamerSettings().setStartDir(root).setVerbose(false).setParallelism(parallelism);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public long engineDryRun() {
+        return new RenamerEngine(settings, msg -> { }).run().getMatchedCount();
+    }
+
+    @Benchmark
+    public long directoryWalker() {
+        long[] count = {0};
+        new DirectoryWalker(true).walk(root, new DirectoryWalker.Visitor() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir) {
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                count[0]++;
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return count[0];
+    }
+
+    @Benchmark
+    public long legacyListFiles() {
+        return listFiles(root.toFile());
+    }
+
+    // the traversal used originally by GoProFileRenamer.processDirectory()
+    private static long listFiles(File dir) {
+        File[] allfiles = dir.listFiles(file -> !file.isHidden());
+        if (allfiles == null)
+            return 0;
+        long count = 0;
+        List<File> subdirs = new ArrayList<>();
+        for (File file : allfiles) {
+            if (file.isDirectory()) {
+                subdirs.add(file);
+            } else {
+                count++;
+            }
+        }
+        for (File sdir : subdirs) {
+            count += listFiles(sdir);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,55 @@
+package imagingbook.gopro;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A {@link RenamerListener} that records all events, to be replayed
+ * later (in the right order) to another listener.
+ */
+class BufferedListener implements RenamerListener {
+
+    private final List<Consumer<RenamerListener>> events = new ArrayList<>();
+
+    @Override
+    public void log(String msg) {
+        events.add(l -> l.log(msg));
+    }
+
+    @Override
+    public void directoryEntered(Path dir, String label) {
+        events.add(l -> l.directoryEntered(dir, label));
+    }
+
+    @Override
+    public void fileProcessed(Path dir, String name, String newName, FileStatus status) {
+        events.add(l -> l.fileProcessed(dir, name, newName, status));
+    }
+
+    @Override
+    public void fileProcessed(Path dir, String name, String newName, FileStatus status, long size, long nanos) {
+        events.add(l -> l.fileProcessed(dir, name, newName, status, size, nanos));
+    }
+
+    /**
+     * Records an arbitrary action, to be performed (in order) when the events
+     * are replayed. The action receives the target listener.
+     * @param action the action to perform
+     */
+    void defer(Consumer<RenamerListener> action) {
+        events.add(action);
+    }
+
+    /**
+     * Sends all recorded events to the given listener and clears this buffer.
+     * @param target the receiving listener
+     */
+    void replay(RenamerListener target) {
+        for (Consumer<RenamerListener> e : events) {
+            e.accept(target);
+        }
+        events.clear();
+    }
+}
@@ -0,0 +1,81 @@
+package imagingbook.gopro;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Collects keys (files) reported by frequent events and releases each key once
+ * it has settled, i.e., no event was reported for a quiet period and its size
+ * remained unchanged for another quiet period. The size check catches files
+ * still being written without events being reported (e.g., on network drives).
+ * Time is passed in explicitly, thus this class can be tested without waiting.
+ * Not thread-safe.
+ * @param <K> the key type
+ */
+class Debouncer<K> {
+
+    private static class Pending {
+        long lastEvent;
+        long lastSize = -1;
+        long sizeTime;
+    }
+
+    private final long quietMs;
+    private final ToLongFunction<K> sizeOf;
+    private final Map<K, Pending> pending = new HashMap<>();
+
+    /**
+     * @param quietMs the quiet period (ms)
+     * @param sizeOf returns the current size of a key's file, a negative value if it is gone
+     */
+    Debouncer(long quietMs, ToLongFunction<K> sizeOf) {
+        this.quietMs = quietMs;
+        this.sizeOf = sizeOf;
+    }
+
+    /**
+     * Reports an event for the given key.
+     * @param key the key
+     * @param now the current time (ms)
+     */
+    void touch(K key, long now) {
+        pending.computeIfAbsent(key, k -> new Pending()).lastEvent = now;
+    }
+
+    /**
+     * Returns (and removes) all keys that have settled. Keys whose file is gone are dropped.
+     * @param now the current time (ms)
+     * @return the settled keys, in no particular order
+     */
+    List<K> poll(long now) {
+        List<K> ready = new ArrayList<>();
+        for (Iterator<Map.Entry<K, Pending>> it = pending.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<K, Pending> e = it.next();
+            Pending p = e.getValue();
+            if (now - p.lastEvent < quietMs)
+                continue;
+            long size = sizeOf.applyAsLong(e.getKey());
+            if (size < 0) {
+                it.remove();
+            } else if (size != p.lastSize) {
+                p.lastSize = size;
+                p.sizeTime = now;
+            } else if (now - p.sizeTime >= quietMs) {
+                ready.add(e.getKey());
+                it.remove();
+            }
+        }
+        return ready;
+    }
+
+    /**
+     * @return the number of pending keys
+     */
+    int size() {
+        return pending.size();
+    }
+}
@@ -0,0 +1,294 @@
+package imagingbook.gopro;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A persistent index of directories, used by {@link DirectoryWalker} to skip
+ * directories that did not change since the previous walk. For each directory,
+ * the cache stores its modification time, the number of entries and files, the
+ * names of its sub-directories and the number of files still to be processed
+ * (reported by the visitor). A directory is skipped (i.e., not listed, only its
+ * sub-directories are walked) if its modification time is unchanged and it had
+ * no files to be processed. Thus a walk of an unchanged tree only reads the
+ * attributes of each directory.
+ * <p>
+ * Directory modification times only change when entries are added, removed
+ * or renamed, which is all that matters for renaming. Since time stamps have
+ * limited resolution (2 seconds on FAT file systems), directories modified
+ * shortly before being listed are not cached ("racy" time stamps), as they may
+ * change again without changing their time stamp.
+ * <p>
+ * The cache is bounded: entries of directories not seen for a number of walks
+ * (e.g., deleted directories) are evicted when the cache is saved, and if the
+ * cache is still too large, the entries seen least recently are dropped.
+ * The cache is valid for a single file name format only (see {@link #load(Path, String)}).
+ * In verify mode, cached directories are listed anyway and compared to their
+ * entries, for checking that skipping them is safe on a particular file system.
+ */
+public class DirectoryCache {
+
+    private static final int MAGIC = 0x47504443;    // "GPDC"
+    private static final int VERSION = 1;
+
+    static final long RACY_MARGIN_MS = 2000;
+    static final int DEFAULT_MAX_ENTRIES = 500000;
+    static final int DEFAULT_MAX_AGE = 10;
+
+    /**
+     * The cached state of a single directory.
+     */
+    static class Entry {
+        final long mtime;
+        final int entryCount;       // all entries, including hidden ones
+        final int fileCount;        // non-hidden files
+        final int pendingCount;     // files still to be processed
+        final String[] subdirs;     // names of the non-hidden sub-directories
+        volatile int generation;    // the walk in which this directory was last seen
+
+        Entry(long mtime, int entryCount, int fileCount, int pendingCount, String[] subdirs, int generation) {
+            this.mtime = mtime;
+            this.entryCount = entryCount;
+            this.fileCount = fileCount;
+            this.pendingCount = pendingCount;
+            this.subdirs = subdirs;
+            this.generation = generation;
+        }
+
+        boolean sameListing(Entry other) {
+            return entryCount == other.entryCount && fileCount == other.fileCount
+                    && pendingCount == other.pendingCount && Arrays.equals(subdirs, other.subdirs);
+        }
+    }
+
+    private final String formatKey;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final int generation;
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+    private int maxAge = DEFAULT_MAX_AGE;
+    private boolean verify = false;
+
+    private final LongAdder skippedCount = new LongAdder();
+    private final LongAdder staleCount = new LongAdder();
+
+    private DirectoryCache(String formatKey, int generation) {
+        this.formatKey = formatKey;
+        this.generation = generation;
+    }
+
+    /**
+     * Creates an empty cache.
+     * @param formatKey identifies the file name format
+     * @return a new cache
+     */
+    public static DirectoryCache create(String formatKey) {
+        return new DirectoryCache(formatKey, 1);
+    }
+
+    /**
+     * Loads a cache file. If the file does not exist, is damaged or was
+     * created for a different file name format, an empty cache is returned.
+     * @param file the cache file
+     * @param formatKey identifies the file name format
+     * @return the cache
+     */
+    public static DirectoryCache load(Path file, String formatKey) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file), 1 << 16)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(formatKey)) {
+                return create(formatKey);
+            }
+            DirectoryCache cache = new DirectoryCache(formatKey, in.readInt() + 1);
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                String path = in.readUTF();
+                long mtime = in.readLong();
+                int entryCount = in.readInt();
+                int fileCount = in.readInt();
+                int pendingCount = in.readInt();
+                String[] subdirs = new String[in.readInt()];
+                for (int k = 0; k < subdirs.length; k++) {
+                    subdirs[k] = in.readUTF();
+                }
+                int gen = in.readInt();
+                cache.entries.put(path, new Entry(mtime, entryCount, fileCount, pendingCount, subdirs, gen));
+            }
+            return cache;
+        } catch (IOException | RuntimeException e) {
+            return create(formatKey);
+        }
+    }
+
+    /**
+     * Saves this cache, after evicting stale entries. The file is replaced atomically.
+     * @param file the cache file
+     * @throws IOException if the file cannot be written
+     */
+    public void save(Path file) throws IOException {
+        evict();
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(tmp), 1 << 16)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(formatKey);
+            out.writeInt(generation);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> me : entries.entrySet()) {
+                Entry e = me.getValue();
+                out.writeUTF(me.getKey());
+                out.writeLong(e.mtime);
+                out.writeInt(e.entryCount);
+                out.writeInt(e.fileCount);
+                out.writeInt(e.pendingCount);
+                out.writeInt(e.subdirs.length);
+                for (String s : e.subdirs) {
+                    out.writeUTF(s);
+                }
+                out.writeInt(e.generation);
+            }
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Removes entries not seen during the last {@link #getMaxAge()} walks, then,
+     * if there are more than {@link #getMaxEntries()} entries, those seen least recently.
+     */
+    void evict() {
+        entries.values().removeIf(e -> generation - e.generation >= maxAge);
+        int excess = entries.size() - maxEntries;
+        if (excess > 0) {
+            List<Map.Entry<String, Entry>> list = new ArrayList<>(entries.entrySet());
+            list.sort((a, b) -> Integer.compare(a.getValue().generation, b.getValue().generation));
+            for (int i = 0; i < excess; i++) {
+                entries.remove(list.get(i).getKey());
+            }
+        }
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public DirectoryCache setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        return this;
+    }
+
+    /**
+     * @return the number of walks after which entries of directories not seen are evicted
+     */
+    public int getMaxAge() {
+        return maxAge;
+    }
+
+    public DirectoryCache setMaxAge(int maxAge) {
+        this.maxAge = maxAge;
+        return this;
+    }
+
+    public boolean isVerify() {
+        return verify;
+    }
+
+    /**
+     * In verify mode, no directories are skipped, but unchanged directories
+     * are compared to their cache entries (see {@link #getStaleCount()}).
+     * @param verify {@code true} for verify mode
+     * @return this cache
+     */
+    public DirectoryCache setVerify(boolean verify) {
+        this.verify = verify;
+        return this;
+    }
+
+    /**
+     * @return the number of cached directories
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the number of directories skipped (or, in verify mode, found unchanged)
+     */
+    public long getSkippedCount() {
+        return skippedCount.sum();
+    }
+
+    /**
+     * @return the number of directories whose time stamp was unchanged, but whose
+     * listing differed from the cache entry (only in verify mode)
+     */
+    public long getStaleCount() {
+        return staleCount.sum();
+    }
+
+    // -------------------------------------------------------------------------
+
+    private static String key(Path dir) {
+        return dir.toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Looks up a directory whose files can be skipped, i.e., with unchanged
+     * time stamp and no files to be processed.
+     * @param dir the directory
+     * @param mtime the current modification time of the directory
+     * @return the cache entry, or {@code null} if the directory must be listed
+     */
+    Entry lookup(Path dir, long mtime) {
+        Entry e = entries.get(key(dir));
+        if (e == null || e.mtime != mtime || e.pendingCount > 0) {
+            return null;
+        }
+        e.generation = generation;
+        skippedCount.increment();
+        return e;
+    }
+
+    /**
+     * Stores the listing of a directory. Directories modified just before
+     * they were listed are not stored.
+     * @param dir the directory
+     * @param mtime the modification time of the directory (read before listing)
+     * @param listTime the time the directory was listed
+     * @param entryCount the number of entries (including hidden ones)
+     * @param fileCount the number of non-hidden files
+     * @param pendingCount the number of files still to be processed
+     * @param subdirs the names of the non-hidden sub-directories
+     * @param cached the entry found before listing (verify mode), or {@code null}
+     */
+    void store(Path dir, long mtime, long listTime, int entryCount, int fileCount, int pendingCount,
+               List<String> subdirs, Entry cached) {
+        Entry e = new Entry(mtime, entryCount, fileCount, pendingCount,
+                subdirs.toArray(new String[0]), generation);
+        if (cached != null && !cached.sameListing(e)) {
+            staleCount.increment();
+        }
+        if (mtime > listTime - RACY_MARGIN_MS) {
+            entries.remove(key(dir));
+        } else {
+            entries.put(key(dir), e);
+        }
+    }
+}
@@ -0,0 +1,561 @@
+package imagingbook.gopro;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Walks a directory tree using {@link DirectoryStream}s, reading the attributes
+ * of each entry once (see {@link #getAttributeReadCount()}). Where the file system supports DOS attributes
+ * (Windows), the hidden flag is taken from the same attribute read, otherwise
+ * names starting with '.' are considered hidden (same as {@link java.io.File#isHidden()}).
+ * Hidden files and directories are skipped. Symbolic links to files are followed,
+ * symbolic links to directories only as permitted by the {@link SymlinkPolicy}.
+ * <p>
+ * Every directory is walked at most once, even if it is reached through several
+ * paths (symbolic links, bind mounts or a tree mounted twice) or through a link loop:
+ * directories are identified by their device and inode numbers, which are kept in a
+ * compact {@link FileKeySet}. Where the file system supports the "unix" attribute view,
+ * entries are read through this view, so the "dev" and "ino" attributes come with
+ * the same single read. Otherwise directories are identified by their file keys
+ * (see {@link BasicFileAttributes#fileKey()}).
+ * Directories reached again are reported by {@link Visitor#visitDirectoryRepeated(Path)}.
+ * Unless all links are followed, entries are read without following links, and only
+ * symbolic links are read again through the link.
+ * <p>
+ * Directories are visited in pre-order, using an explicit stack instead of recursion.
+ * All files of a directory are visited before any of its sub-directories, and
+ * sub-directories are visited in listing order.
+ * <p>
+ * If a {@link DirectoryCache} is set, directories unchanged since the previous
+ * walk are not listed, only their sub-directories (taken from the cache) are walked,
+ * subject to the same checks as listed sub-directories.
+ * <p>
+ * {@link #walk(Path, Visitor)} is not thread-safe, but {@link #visitDirectory(Path, Visitor, List)}
+ * may be called concurrently (see {@link ParallelWalker}).
+ */
+public class DirectoryWalker {
+
+    /**
+     * Determines which symbolic links to directories are followed.
+     */
+    public enum SymlinkPolicy {
+        /** Links to directories are never followed. */
+        Never,
+        /** Links are followed if their target is inside the start directory. */
+        WithinRoot,
+        /** All links are followed (the default). */
+        Always
+    }
+
+    /**
+     * Receives the entries found by a {@link DirectoryWalker}.
+     * Returning {@link FileVisitResult#TERMINATE} from any method stops the walk,
+     * {@link FileVisitResult#SKIP_SUBTREE} (or {@link FileVisitResult#SKIP_SIBLINGS})
+     * returned from {@link #preVisitDirectory(Path)} skips the directory.
+     */
+    public interface Visitor {
+
+        public FileVisitResult preVisitDirectory(Path dir);
+
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs);
+
+        /**
+         * Called after all files of a directory were visited and the directory
+         * stream is closed, i.e., before any sub-directories are visited.
+         * Files of the directory can be safely renamed at this point.
+         * @param dir the directory
+         * @return how to continue
+         */
+        public default FileVisitResult postVisitFiles(Path dir) {
+            return FileVisitResult.CONTINUE;
+        }
+
+        public default FileVisitResult visitDirectoryFailed(Path dir, IOException e) {
+            return FileVisitResult.CONTINUE;
+        }
+
+        /**
+         * Called instead of {@link #preVisitDirectory(Path)} for a directory skipped
+         * because it is unchanged according to the {@link DirectoryCache}.
+         * @param dir the directory
+         * @return how to continue
+         */
+        public default FileVisitResult visitDirectoryUnchanged(Path dir) {
+            return FileVisitResult.CONTINUE;
+        }
+
+        /**
+         * Only used with a {@link DirectoryCache}: called after {@link #postVisitFiles(Path)}
+         * to obtain the number of files of the directory that still need processing.
+         * The directory is only skipped in later walks if this number is 0.
+         * @param dir the directory
+         * @return the number of files to be processed
+         */
+        public default int getPendingCount(Path dir) {
+            return 0;
+        }
+
+        /**
+         * Called while listing the parent directory, for a sub-directory that is not
+         * walked because it was walked before, i.e., it is reached through a link loop,
+         * through another symbolic link or through another mount point.
+         * @param dir the sub-directory
+         */
+        public default void visitDirectoryRepeated(Path dir) { }
+
+        /**
+         * Called while listing the parent directory, for a symbolic link to a directory
+         * that is not followed because of the {@link SymlinkPolicy}.
+         * @param link the symbolic link
+         */
+        public default void visitLinkSkipped(Path link) { }
+    }
+
+    // DOS attributes are also supported on Linux (through extended attributes),
+    // but hidden files are then still identified by their names:
+    private static final boolean dosAttributes =
+            FileSystems.getDefault().supportedFileAttributeViews().contains("dos") &&
+            !FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+    private static final boolean unixAttributes =
+            FileSystems.getDefault().supportedFileAttributeViews().contains("unix");
+
+    private final boolean recursive;
+    private final SymlinkPolicy symlinkPolicy;
+    private DirectoryCache cache = null;
+    private Path realStart = null;      // for SymlinkPolicy.WithinRoot
+
+    // the directories walked so far, guarded by visited:
+    private final FileKeySet visited = new FileKeySet();
+    private final Set<Object> visitedOther = new HashSet<>();   // file keys, without the unix view
+
+    private final LongAdder directoryCount = new LongAdder();
+    private final LongAdder entryCount = new LongAdder();
+    private final LongAdder attributeReadCount = new LongAdder();
+    private final LongAdder listingNanos = new LongAdder();
+    private final LongAdder visitNanos = new LongAdder();
+
+    /**
+     * Creates a new walker.
+     * @param recursive if {@code false}, only the start directory is listed
+     */
+    public DirectoryWalker(boolean recursive) {
+        this(recursive, SymlinkPolicy.Always);
+    }
+
+    /**
+     * Creates a new walker.
+     * @param recursive if {@code false}, only the start directory is listed
+     * @param symlinkPolicy which symbolic links to directories are followed
+     */
+    public DirectoryWalker(boolean recursive, SymlinkPolicy symlinkPolicy) {
+        this.recursive = recursive;
+        this.symlinkPolicy = symlinkPolicy;
+    }
+
+    public SymlinkPolicy getSymlinkPolicy() {
+        return symlinkPolicy;
+    }
+
+    /**
+     * Sets the cache used for skipping unchanged directories.
+     * @param cache the directory cache, {@code null} for none
+     */
+    void setCache(DirectoryCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * @return the number of directories listed so far
+     */
+    public long getDirectoryCount() {
+        return directoryCount.sum();
+    }
+
+    /**
+     * @return the number of directory entries read so far (including hidden entries)
+     */
+    public long getEntryCount() {
+        return entryCount.sum();
+    }
+
+    /**
+     * @return the number of file attribute reads so far (one per entry, plus one
+     * for each symbolic link, unless all links are followed, or each broken link
+     * otherwise)
+     */
+    public long getAttributeReadCount() {
+        return attributeReadCount.sum();
+    }
+
+    /**
+     * @return the time spent listing directories and reading attributes so far,
+     * excluding the time spent in {@link Visitor#visitFile}, in nanoseconds
+     */
+    public long getListingNanos() {
+        return listingNanos.sum();
+    }
+
+    /**
+     * @return the time spent in {@link Visitor#visitFile} so far, in nanoseconds
+     */
+    public long getVisitNanos() {
+        return visitNanos.sum();
+    }
+
+    /**
+     * Walks the directory tree starting at the given directory.
+     * @param start the start directory
+     * @param visitor receives directories and files
+     * @return {@code false} if the walk was terminated by the visitor
+     */
+    public boolean walk(Path start, Visitor visitor) {
+        start(start);
+        List<Path> stack = new ArrayList<>();
+        stack.add(start);
+        while (!stack.isEmpty()) {
+            Path dir = stack.remove(stack.size() - 1);
+            int mark = stack.size();
+            FileVisitResult result = visitDirectory(dir, visitor, stack);
+            if (result == FileVisitResult.TERMINATE)
+                return false;
+            if (result != FileVisitResult.CONTINUE) {
+                stack.subList(mark, stack.size()).clear();
+                continue;
+            }
+            // sub-directories were pushed in listing order, but are popped from the end:
+            Collections.reverse(stack.subList(mark, stack.size()));
+        }
+        return true;
+    }
+
+    /**
+     * Prepares a new walk, i.e., forgets the directories walked before and
+     * registers the start directory as walked.
+     * @param start the start directory
+     */
+    void start(Path start) {
+        synchronized (visited) {
+            visited.clear();
+            visitedOther.clear();
+        }
+        realStart = (symlinkPolicy == SymlinkPolicy.WithinRoot) ? toRealPath(start) : null;
+        try {
+            markVisited(start, read(start));
+        } catch (IOException e) {
+            // listing will fail as well
+        }
+    }
+
+    /**
+     * @return the number of directories walked (or scheduled to be walked) since the start
+     */
+    int getVisitedCount() {
+        synchronized (visited) {
+            return visited.size() + visitedOther.size();
+        }
+    }
+
+    /**
+     * Registers a directory as walked.
+     * @return {@code false} if the directory was walked before
+     */
+    private boolean markVisited(Path dir, BasicFileAttributes attrs) {
+        if (attrs instanceof UnixAttributes) {
+            UnixAttributes ua = (UnixAttributes) attrs;
+            synchronized (visited) {
+                return visited.add(ua.getDev(), ua.getIno());
+            }
+        }
+        Object key = attrs.fileKey();
+        if (key == null) {
+            key = toRealPath(dir);      // e.g., on Windows
+        }
+        synchronized (visited) {
+            return visitedOther.add(key);
+        }
+    }
+
+    /**
+     * Visits a single directory, i.e., passes all (non-hidden) files to the
+     * visitor and adds all (non-hidden) sub-directories to the given list if
+     * recursive. If the directory is unchanged according to the cache, it is
+     * not listed and the sub-directories are taken from the cache.
+     * @param dir the directory
+     * @param visitor receives the directory and its files
+     * @param subdirs collects the directory's sub-directories
+     * @return {@link FileVisitResult#CONTINUE} if the sub-directories are to be
+     * visited, {@link FileVisitResult#TERMINATE} if the visitor stopped the walk
+     */
+    FileVisitResult visitDirectory(Path dir, Visitor visitor, List<Path> subdirs) {
+        long mtime = -1;
+        DirectoryCache.Entry cached = null;
+        if (cache != null) {
+            try {
+                mtime = Files.getLastModifiedTime(dir).toMillis();
+                cached = cache.lookup(dir, mtime);
+            } catch (IOException e) {
+                mtime = -1;     // listing will fail as well, nothing to cache
+            }
+            if (cached != null && !cache.isVerify()) {
+                FileVisitResult result = visitor.visitDirectoryUnchanged(dir);
+                if (result == FileVisitResult.CONTINUE && recursive) {
+                    for (String name : cached.subdirs) {
+                        Path entry = dir.resolve(name);
+                        BasicFileAttributes attrs = readAttributes(entry);
+                        if (attrs == null)
+                            continue;
+                        boolean link = attrs.isSymbolicLink();
+                        if (link)
+                            attrs = readTarget(entry, attrs);
+                        if (attrs.isDirectory() && isWalked(entry, attrs, link, visitor))
+                            subdirs.add(entry);
+                    }
+                }
+                return result;
+            }
+        }
+        FileVisitResult result = visitor.preVisitDirectory(dir);
+        if (result != FileVisitResult.CONTINUE)
+            return result;
+        return listDirectory(dir, visitor, subdirs, mtime, cached);
+    }
+
+    /**
+     * Lists a single directory, passing all (non-hidden) files to the visitor
+     * and adding all (non-hidden) sub-directories to the given list if recursive.
+     * @param dir the directory
+     * @param visitor receives the directory's files
+     * @param subdirs collects the directory's sub-directories
+     * @param mtime the directory's modification time, for storing the listing in the cache (-1 for none)
+     * @param cached the directory's cache entry (verify mode only)
+     * @return the result of {@link Visitor#postVisitFiles(Path)} or
+     * {@link FileVisitResult#TERMINATE} if the visitor stopped the walk
+     */
+    private FileVisitResult listDirectory(Path dir, Visitor visitor, List<Path> subdirs,
+                                          long mtime, DirectoryCache.Entry cached) {
+        directoryCount.increment();
+        boolean caching = cache != null && mtime >= 0;
+        long listTime = System.currentTimeMillis();
+        int entries = 0, files = 0;
+        List<String> dirNames = caching ? new ArrayList<>() : null;
+        long startNanos = System.nanoTime();
+        long visiting = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path entry : stream) {
+                entryCount.increment();
+                entries++;
+                if (!dosAttributes && isDotFile(entry))
+                    continue;
+                BasicFileAttributes attrs = readAttributes(entry);
+                if (attrs == null || (dosAttributes && ((DosFileAttributes) attrs).isHidden()))
+                    continue;
+                boolean link = attrs.isSymbolicLink();
+                if (link)
+                    attrs = readTarget(entry, attrs);
+                if (attrs.isDirectory()) {
+                    if (caching)    // all sub-directories, since the policy may differ in later walks
+                        dirNames.add(entry.getFileName().toString());
+                    if (recursive && isWalked(entry, attrs, link, visitor))
+                        subdirs.add(entry);     // sub-directory to be processed later
+                }
+                else {
+                    files++;
+                    long t = System.nanoTime();
+                    FileVisitResult r = visitor.visitFile(entry, attrs);
+                    visiting += System.nanoTime() - t;
+                    if (r == FileVisitResult.TERMINATE) {
+                        addTimes(startNanos, visiting);
+                        return FileVisitResult.TERMINATE;
+                    }
+                }
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            IOException ioe = (e instanceof DirectoryIteratorException) ?
+                    ((DirectoryIteratorException) e).getCause() : (IOException) e;
+            caching = false;
+            if (visitor.visitDirectoryFailed(dir, ioe) == FileVisitResult.TERMINATE) {
+                addTimes(startNanos, visiting);
+                return FileVisitResult.TERMINATE;
+            }
+        }
+        addTimes(startNanos, visiting);
+        FileVisitResult result = visitor.postVisitFiles(dir);
+        if (caching && result != FileVisitResult.TERMINATE) {
+            cache.store(dir, mtime, listTime, entries, files, visitor.getPendingCount(dir), dirNames, cached);
+        }
+        return result;
+    }
+
+    private void addTimes(long startNanos, long visiting) {
+        listingNanos.add(System.nanoTime() - startNanos - visiting);
+        visitNanos.add(visiting);
+    }
+
+    /**
+     * Checks if a sub-directory is to be walked, i.e., it is permitted by the
+     * {@link SymlinkPolicy} (if reached through a symbolic link) and was not walked before.
+     * @param dir the sub-directory
+     * @param attrs its attributes (of the link target)
+     * @param link {@code true} if the entry is a symbolic link (never with {@link SymlinkPolicy#Always})
+     * @param visitor receives skipped and repeated directories
+     */
+    private boolean isWalked(Path dir, BasicFileAttributes attrs, boolean link, Visitor visitor) {
+        if (link && !(symlinkPolicy == SymlinkPolicy.WithinRoot && toRealPath(dir).startsWith(realStart))) {
+            visitor.visitLinkSkipped(dir);
+            return false;
+        }
+        if (!markVisited(dir, attrs)) {
+            visitor.visitDirectoryRepeated(dir);
+            return false;
+        }
+        return true;
+    }
+
+    private static Path toRealPath(Path dir) {
+        try {
+            return dir.toRealPath();
+        } catch (IOException e) {
+            return dir.toAbsolutePath().normalize();
+        }
+    }
+
+    /**
+     * Reads the attributes of a directory entry, following symbolic links only with
+     * {@link SymlinkPolicy#Always} (see {@link #readTarget(Path, BasicFileAttributes)}).
+     * @return the attributes, {@code null} if the entry has vanished
+     */
+    private BasicFileAttributes readAttributes(Path entry) {
+        attributeReadCount.increment();
+        try {
+            if (symlinkPolicy != SymlinkPolicy.Always)
+                return read(entry, LinkOption.NOFOLLOW_LINKS);
+            return read(entry);
+        } catch (IOException e) {
+            if (symlinkPolicy != SymlinkPolicy.Always)
+                return null;    // entry has vanished
+            // possibly a broken symbolic link, which is treated as a file (like java.io.File does)
+            attributeReadCount.increment();
+            try {
+                return read(entry, LinkOption.NOFOLLOW_LINKS);
+            } catch (IOException e2) {
+                return null;    // entry has vanished
+            }
+        }
+    }
+
+    /**
+     * Reads the attributes of the target of a symbolic link.
+     * @return the target's attributes, or the link's attributes if the link is broken
+     * (treated as a file, like java.io.File does)
+     */
+    private BasicFileAttributes readTarget(Path link, BasicFileAttributes linkAttrs) {
+        attributeReadCount.increment();
+        try {
+            return read(link);
+        } catch (IOException e) {
+            return linkAttrs;
+        }
+    }
+
+    /**
+     * Reads the attributes of a file through the "unix" view if available
+     * (see {@link UnixAttributes}), otherwise as DOS or basic attributes.
+     */
+    private static BasicFileAttributes read(Path file, LinkOption... options) throws IOException {
+        if (unixAttributes && file.getFileSystem() == FileSystems.getDefault())
+            return new UnixAttributes(Files.readAttributes(file, UnixAttributes.NAMES, options));
+        Class<? extends BasicFileAttributes> type = dosAttributes ? DosFileAttributes.class : BasicFileAttributes.class;
+        return Files.readAttributes(file, type, options);
+    }
+
+    private static boolean isDotFile(Path entry) {
+        Path name = entry.getFileName();
+        return name != null && name.toString().startsWith(".");
+    }
+
+    /**
+     * Basic file attributes read through the "unix" view, together with the
+     * device and inode numbers, in a single read.
+     */
+    private static class UnixAttributes implements BasicFileAttributes {
+
+        static final String NAMES = "unix:lastModifiedTime,lastAccessTime,creationTime,size,"
+                + "isRegularFile,isDirectory,isSymbolicLink,isOther,fileKey,dev,ino";
+
+        private final Map<String, Object> map;
+
+        UnixAttributes(Map<String, Object> map) {
+            this.map = map;
+        }
+
+        long getDev() {
+            return (Long) map.get("dev");
+        }
+
+        long getIno() {
+            return (Long) map.get("ino");
+        }
+
+        @Override
+        public FileTime lastModifiedTime() {
+            return (FileTime) map.get("lastModifiedTime");
+        }
+
+        @Override
+        public FileTime lastAccessTime() {
+            return (FileTime) map.get("lastAccessTime");
+        }
+
+        @Override
+        public FileTime creationTime() {
+            return (FileTime) map.get("creationTime");
+        }
+
+        @Override
+        public boolean isRegularFile() {
+            return (Boolean) map.get("isRegularFile");
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return (Boolean) map.get("isDirectory");
+        }
+
+        @Override
+        public boolean isSymbolicLink() {
+            return (Boolean) map.get("isSymbolicLink");
+        }
+
+        @Override
+        public boolean isOther() {
+            return (Boolean) map.get("isOther");
+        }
+
+        @Override
+        public long size() {
+            return (Long) map.get("size");
+        }
+
+        @Override
+        public Object fileKey() {
+            return map.get("fileKey");
+        }
+    }
+}
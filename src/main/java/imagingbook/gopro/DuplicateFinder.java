@@ -0,0 +1,251 @@
+package imagingbook.gopro;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * Finds files with identical contents, e.g., the same chapter copied twice from
+ * a camera card into different directories. Files are registered with their size
+ * while the directory tree is walked (see {@link #add(Path, long)}), then compared
+ * in three stages:
+ * <ol>
+ * <li>Files with a unique size are not read at all.</li>
+ * <li>Files of equal size are fingerprinted by hashing {@link #SAMPLE_COUNT} blocks
+ * of {@link #SAMPLE_SIZE} bytes at fixed positions (including the first and last block),
+ * using positional reads. Files not larger than the samples are hashed completely
+ * right away.</li>
+ * <li>Only files with equal fingerprints are hashed completely.</li>
+ * </ol>
+ * Since GoPro chapters of the same length rarely have the same size down to the byte,
+ * and sampled blocks of different recordings differ, a typical archive requires
+ * a few hundred KB to be read per candidate file, regardless of the file sizes,
+ * and whole files are only read if they are actual duplicates.
+ * Fingerprints are computed by {@code parallelism} threads (see {@link #findDuplicates}).
+ */
+public class DuplicateFinder {
+
+    static final int SAMPLE_COUNT = 8;
+    static final int SAMPLE_SIZE = 1 << 16;
+    static final int BUFFER_SIZE = 1 << 20;
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    private final Map<Long, List<Path>> sizeGroups = new ConcurrentHashMap<>();
+    private final Set<Path> registered = ConcurrentHashMap.newKeySet();
+    private final LongAdder sampledCount = new LongAdder();
+    private final LongAdder hashedCount = new LongAdder();
+    private final LongAdder byteCount = new LongAdder();
+
+    /**
+     * Registers a file. May be called concurrently. Files registered more than
+     * once (by the same path) are only counted once.
+     * @param file the file
+     * @param size the size of the file in bytes
+     */
+    public void add(Path file, long size) {
+        if (registered.add(file.toAbsolutePath().normalize())) {
+            sizeGroups.computeIfAbsent(size, s -> Collections.synchronizedList(new ArrayList<>())).add(file);
+        }
+    }
+
+    /**
+     * @return the number of registered files
+     */
+    public int size() {
+        return registered.size();
+    }
+
+    /**
+     * @return the number of files fingerprinted by sampling
+     */
+    public long getSampledCount() {
+        return sampledCount.sum();
+    }
+
+    /**
+     * @return the number of files hashed completely
+     */
+    public long getHashedCount() {
+        return hashedCount.sum();
+    }
+
+    /**
+     * @return the number of bytes read for fingerprints and hashes
+     */
+    public long getByteCount() {
+        return byteCount.sum();
+    }
+
+    /**
+     * Compares all registered files. Files that cannot be read are reported to
+     * {@code onError} and not considered any further.
+     * @param parallelism the number of threads used for reading files
+     * @param onError receives files that could not be read
+     * @return the groups of identical files (each group sorted by path, the groups
+     * sorted by their first path)
+     */
+    public List<List<Path>> findDuplicates(int parallelism, BiConsumer<Path, IOException> onError) {
+        List<List<Path>> small = new ArrayList<>();     // hashed completely right away
+        List<List<Path>> large = new ArrayList<>();     // fingerprinted first
+        for (Map.Entry<Long, List<Path>> e : sizeGroups.entrySet()) {
+            if (e.getValue().size() > 1) {
+                (e.getKey() <= (long) SAMPLE_COUNT * SAMPLE_SIZE ? small : large).add(e.getValue());
+            }
+        }
+        if (small.isEmpty() && large.isEmpty()) {
+            return new ArrayList<>();
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, parallelism), r -> {
+            Thread t = new Thread(r, "duplicate-finder");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<List<Path>> result = regroup(pool, small, false, onError);
+            result.addAll(regroup(pool, regroup(pool, large, true, onError), false, onError));
+            for (List<Path> group : result) {
+                group.sort(Comparator.comparing(Path::toString));
+            }
+            result.sort(Comparator.comparing(g -> g.get(0).toString()));
+            return result;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Splits each group of files into sub-groups of files with equal fingerprints
+     * (or full hashes), keeping only sub-groups with more than one file.
+     */
+    private List<List<Path>> regroup(ExecutorService pool, List<List<Path>> groups, boolean sample,
+                                     BiConsumer<Path, IOException> onError) {
+        List<List<Future<String>>> futures = new ArrayList<>(groups.size());
+        for (List<Path> group : groups) {
+            List<Future<String>> fs = new ArrayList<>(group.size());
+            for (Path file : group) {
+                fs.add(pool.submit(() -> sample ? fingerprint(file) : hash(file)));
+            }
+            futures.add(fs);
+        }
+        List<List<Path>> result = new ArrayList<>();
+        for (int g = 0; g < groups.size(); g++) {
+            Map<String, List<Path>> byHash = new HashMap<>();
+            for (int k = 0; k < groups.get(g).size(); k++) {
+                Path file = groups.get(g).get(k);
+                try {
+                    byHash.computeIfAbsent(getResult(futures.get(g).get(k)), h -> new ArrayList<>()).add(file);
+                } catch (IOException e) {
+                    onError.accept(file, e);
+                }
+            }
+            for (List<Path> sub : byHash.values()) {
+                if (sub.size() > 1)
+                    result.add(sub);
+            }
+        }
+        return result;
+    }
+
+    private static String getResult(Future<String> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw (e.getCause() instanceof IOException) ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Hashes {@link #SAMPLE_COUNT} evenly spaced blocks of a file larger than
+     * the samples together.
+     */
+    String fingerprint(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size <= (long) SAMPLE_COUNT * SAMPLE_SIZE)
+                throw new IOException("file was truncated");
+            sampledCount.increment();
+            MessageDigest md = newDigest();
+            ByteBuffer buf = ByteBuffer.allocate(SAMPLE_SIZE);
+            long step = (size - SAMPLE_SIZE) / (SAMPLE_COUNT - 1);
+            for (int i = 0; i < SAMPLE_COUNT; i++) {
+                long pos = (i < SAMPLE_COUNT - 1) ? i * step : size - SAMPLE_SIZE;
+                buf.clear();
+                readFully(ch, buf, pos);
+                buf.flip();
+                md.update(buf);
+            }
+            return size + ":" + toHex(md.digest());
+        }
+    }
+
+    /**
+     * Hashes the whole file.
+     */
+    String hash(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            hashedCount.increment();
+            long size = ch.size();
+            MessageDigest md = newDigest();
+            ByteBuffer buf = ByteBuffer.allocateDirect((int) Math.min(BUFFER_SIZE, Math.max(size, 1)));
+            long pos = 0;
+            while (pos < size) {
+                buf.clear();
+                int n = ch.read(buf, pos);
+                if (n < 0)
+                    break;      // file was truncated
+                buf.flip();
+                md.update(buf);
+                pos += n;
+                byteCount.add(n);
+            }
+            return pos + ":" + toHex(md.digest());
+        }
+    }
+
+    private void readFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, pos);
+            if (n < 0)
+                throw new IOException("unexpected end of file");
+            pos += n;
+            byteCount.add(n);
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);     // every JVM supports SHA-256
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,118 @@
+package imagingbook.gopro;
+
+/**
+ * A set of file keys, i.e., pairs of device and inode numbers, used by the
+ * {@link DirectoryWalker} for remembering the directories visited. Keys are
+ * stored in a single open-addressing hash table of {@code long}s (linear probing),
+ * taking 16 bytes per slot (at most 43 bytes per key), without any per-key objects.
+ * For example, the keys of a million directories take 32 MB.
+ * Not thread-safe.
+ */
+class FileKeySet {
+
+    private static final int MIN_CAPACITY = 64;
+
+    private long[] table;       // slot i holds (table[2i], table[2i+1]) = (dev, ino)
+    private int mask;           // number of slots - 1
+    private int size = 0;
+    private boolean hasZero = false;    // (0, 0) marks empty slots, so it is kept separately
+
+    FileKeySet() {
+        table = new long[2 * MIN_CAPACITY];
+        mask = MIN_CAPACITY - 1;
+    }
+
+    /**
+     * @return the number of keys in this set
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Adds a key to this set.
+     * @param dev the device number
+     * @param ino the inode number
+     * @return {@code true} if the key was not contained before
+     */
+    boolean add(long dev, long ino) {
+        if (dev == 0 && ino == 0) {
+            if (hasZero)
+                return false;
+            hasZero = true;
+            size++;
+            return true;
+        }
+        int i = indexOf(dev, ino);
+        if (table[2 * i] == dev && table[2 * i + 1] == ino)
+            return false;
+        table[2 * i] = dev;
+        table[2 * i + 1] = ino;
+        if (++size > (mask + 1) / 4 * 3) {
+            grow();
+        }
+        return true;
+    }
+
+    /**
+     * Checks if this set contains a key.
+     * @param dev the device number
+     * @param ino the inode number
+     * @return {@code true} if the key is contained
+     */
+    boolean contains(long dev, long ino) {
+        if (dev == 0 && ino == 0)
+            return hasZero;
+        int i = indexOf(dev, ino);
+        return table[2 * i] == dev && table[2 * i + 1] == ino;
+    }
+
+    /**
+     * Finds the slot holding the given key, or the empty slot where it belongs.
+     */
+    private int indexOf(long dev, long ino) {
+        int i = hash(dev, ino) & mask;
+        while (true) {
+            long d = table[2 * i], n = table[2 * i + 1];
+            if ((d == dev && n == ino) || (d == 0 && n == 0))
+                return i;
+            i = (i + 1) & mask;
+        }
+    }
+
+    private static int hash(long dev, long ino) {
+        long h = ino * 0x9E3779B97F4A7C15L + dev;
+        h ^= h >>> 33;      // finalizer of MurmurHash3
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private void grow() {
+        long[] old = table;
+        table = new long[2 * old.length];
+        mask = old.length - 1;      // twice the number of slots, minus 1
+        for (int i = 0; i < old.length; i += 2) {
+            if (old[i] != 0 || old[i + 1] != 0) {
+                int j = indexOf(old[i], old[i + 1]);
+                table[2 * j] = old[i];
+                table[2 * j + 1] = old[i + 1];
+            }
+        }
+    }
+
+    /**
+     * Removes all keys.
+     */
+    void clear() {
+        table = new long[2 * MIN_CAPACITY];
+        mask = MIN_CAPACITY - 1;
+        size = 0;
+        hasZero = false;
+    }
+
+    @Override
+    public String toString() {
+        return "FileKeySet[size=" + size + ", slots=" + (mask + 1) + "]";
+    }
+}
@@ -0,0 +1,25 @@
+package imagingbook.gopro;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Performs the actual file moves of a {@link RenamerEngine}. The default
+ * implementation simply calls {@link Files#move}; other implementations may be
+ * used for testing, e.g., to simulate the latency of a network file system.
+ * Implementations must be thread-safe, since moves may be performed
+ * concurrently (see {@link RenamerSettings#setMoveConcurrency(int)}).
+ */
+public interface FileMover {
+
+    public static final FileMover DEFAULT = (source, target) -> Files.move(source, target);
+
+    /**
+     * Moves (renames) a file. Must fail if the target exists.
+     * @param source the current file path
+     * @param target the new file path
+     * @throws IOException if the file could not be moved
+     */
+    public void move(Path source, Path target) throws IOException;
+}
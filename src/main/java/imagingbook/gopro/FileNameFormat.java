@@ -1,12 +1,64 @@
 package imagingbook.gopro;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.regex.Pattern;
 
+/**
+ * A file name format, i.e., the names of files to be renamed and how they are renamed.
+ * Formats are registered in {@link FileNameFormats} (and may be added as services,
+ * see {@link java.util.ServiceLoader}), which combines them into a single
+ * {@link FormatClassifier}.
+ */
 public interface FileNameFormat {
 
     public boolean matchFileName(String fName);
     public String mapFileName(String fName);
 
+    /**
+     * Finds the format to be used for the given file name, so that callers
+     * mapping and grouping a name check it only once.
+     * @param fName the file name
+     * @return the matching format ({@code this} by default), {@code null} if the name does not match
+     */
+    public default FileNameFormat classify(String fName) {
+        return matchFileName(fName) ? this : null;
+    }
+
+    /**
+     * Returns simple patterns describing the file names (without extension) matched
+     * by this format, used for pre-selecting the format in a {@link FormatClassifier}.
+     * Patterns consist of literal characters, '#' (any decimal digit) and character
+     * sets such as "[HLX]". The final decision is made by {@link #matchFileName(String)},
+     * which may check more than the pattern (e.g., matching numbers). Formats without
+     * patterns (the default) are checked one by one.
+     * @return the name patterns
+     */
+    public default List<String> getNamePatterns() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Returns the key of the chapter group of a file. All files of a group (e.g., the
+     * video, low-resolution video and thumbnail of a chapter) are renamed together or
+     * not at all (see {@link RenamePlan.DirectoryPlan}). For GoPro files, the key
+     * consists of the video number and the chapter number, e.g., "052701".
+     * @param fName a file name matched by this format
+     * @return the group key, {@code null} if the file is not grouped (the default)
+     */
+    public default String getGroupKey(String fName) {
+        return null;
+    }
+
+    /**
+     * @return the format for restoring the original names of renamed files,
+     * {@code null} if there is none (the default)
+     */
+    public default FileNameFormat getInverse() {
+        return null;
+    }
+
     // ------------------------------------------------------------------------
 
     public class OriginalGoproFormat implements FileNameFormat {
@@ -14,18 +66,38 @@ public interface FileNameFormat {
         // where zz and xxxx are all decimal digits.
         // The associated regular expression pattern is:
         static final Pattern pat = Pattern.compile("G[HLX]\\d{6}"); // original GoPro file pattern
+        // Matching is done by FileNameScanner, which implements the same pattern
+        // without allocating any objects.
 
         @Override
         public boolean matchFileName(String fName) {    // "GH010527.MP4"
-            String rName = stripFileExtension(fName);	// "GH010527"
-            return pat.matcher(rName).matches();
+            return FileNameScanner.matchOriginal(fName);
         }
 
         @Override
         public String mapFileName(String fName) {       // "GH010446.MP4"
-            String videoNo = fName.substring(4, 8);		// "0446"
-            String chapNo = fName.substring(2, 4);		// "01"
-            return videoNo + chapNo + "-" + fName;		// "044601-GH010446.MP4"
+            int n = fName.length();
+            char[] buf = new char[n + 7];
+            fName.getChars(4, 8, buf, 0);                // "0446"
+            fName.getChars(2, 4, buf, 4);                // "01"
+            buf[6] = '-';
+            fName.getChars(0, n, buf, 7);
+            return new String(buf);                     // "044601-GH010446.MP4"
+        }
+
+        @Override
+        public String getGroupKey(String fName) {       // "GH010446.MP4"
+            return fName.substring(4, 8) + fName.substring(2, 4);    // "044601"
+        }
+
+        @Override
+        public List<String> getNamePatterns() {
+            return Collections.singletonList("G[HLX]######");
+        }
+
+        @Override
+        public FileNameFormat getInverse() {
+            return new RenamedGoproFormat();
         }
     }
 
@@ -36,27 +108,137 @@ public interface FileNameFormat {
         // have been renamed by this program:
         static final Pattern pat = Pattern.compile("\\d{6}-" + OriginalGoproFormat.pat.pattern());
 
+        // In addition, the video and chapter numbers in both parts of the name
+        // must be the same (checked by FileNameScanner).
+
         @Override
         public boolean matchFileName(String fName) {    // "052701-GH010527.MP4"
-            String rName = stripFileExtension(fName);	// "052701-GH010527"
+            return FileNameScanner.matchRenamed(fName);
+        }
 
-            if (!pat.matcher(rName).matches())
-                return false;
+        @Override
+        public String mapFileName(String fName) {	    // "044601-GH010446.MP4"
+            return fName.substring(7);		            // "GH010446.MP4"
+        }
 
-            String videoNo = rName.substring(0, 4);		// "0527"
-            if (!videoNo.equals(rName.substring(11, 15)))
-                return false;
+        @Override
+        public String getGroupKey(String fName) {       // "044601-GH010446.MP4"
+            return fName.substring(0, 6);               // "044601"
+        }
 
-            String chapNo = fName.substring(4, 6);		// "01"
-            if (!chapNo.equals(rName.substring(9, 11)))
-                return false;
+        @Override
+        public List<String> getNamePatterns() {
+            return Collections.singletonList("######-G[HLX]######");
+        }
 
-            return true;
+        @Override
+        public FileNameFormat getInverse() {
+            return new OriginalGoproFormat();
         }
+    }
+
+    // ------------------------------------------------------------------------
+
+    public class LegacyGoproFormat implements FileNameFormat {
+        // Older GoPro models (up to HERO5) name the first chapter of a video
+        // GOPRxxxx and the following chapters GPzzxxxx (zz = 01, 02, ...).
+        // The first chapter is renamed as chapter 00.
 
         @Override
-        public String mapFileName(String fName) {	    // "044601-GH010446.MP4"
-            return fName.substring(7);		            // "GH010446.MP4"
+        public boolean matchFileName(String fName) {    // "GOPR0527.MP4", "GP010527.MP4"
+            return FileNameScanner.matchLegacy(fName);
+        }
+
+        @Override
+        public String mapFileName(String fName) {       // "GOPR0446.MP4", "GP010446.MP4"
+            return getGroupKey(fName) + "-" + fName;    // "044600-GOPR0446.MP4"
+        }
+
+        @Override
+        public String getGroupKey(String fName) {
+            return fName.substring(4, 8) + ((fName.charAt(1) == 'O') ? "00" : fName.substring(2, 4));
+        }
+
+        @Override
+        public List<String> getNamePatterns() {
+            return Arrays.asList("GOPR####", "GP######");
+        }
+
+        @Override
+        public FileNameFormat getInverse() {
+            return new RenamedLegacyGoproFormat();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    public class RenamedLegacyGoproFormat implements FileNameFormat {
+
+        @Override
+        public boolean matchFileName(String fName) {    // "052700-GOPR0527.MP4"
+            return FileNameScanner.matchRenamedLegacy(fName);
+        }
+
+        @Override
+        public String mapFileName(String fName) {
+            return fName.substring(7);
+        }
+
+        @Override
+        public String getGroupKey(String fName) {
+            return fName.substring(0, 6);
+        }
+
+        @Override
+        public List<String> getNamePatterns() {
+            return Arrays.asList("######-GOPR####", "######-GP######");
+        }
+
+        @Override
+        public FileNameFormat getInverse() {
+            return new LegacyGoproFormat();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    public class SphericalGoproFormat extends OriginalGoproFormat {
+        // Spherical (360) GoPro files are named GSzzxxxx and
+        // renamed the same way as the other GoPro files.
+
+        @Override
+        public boolean matchFileName(String fName) {    // "GS010527.360"
+            return FileNameScanner.matchSpherical(fName);
+        }
+
+        @Override
+        public List<String> getNamePatterns() {
+            return Collections.singletonList("GS######");
+        }
+
+        @Override
+        public FileNameFormat getInverse() {
+            return new RenamedSphericalGoproFormat();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    public class RenamedSphericalGoproFormat extends RenamedGoproFormat {
+
+        @Override
+        public boolean matchFileName(String fName) {    // "052701-GS010527.360"
+            return FileNameScanner.matchRenamedSpherical(fName);
+        }
+
+        @Override
+        public List<String> getNamePatterns() {
+            return Collections.singletonList("######-GS######");
+        }
+
+        @Override
+        public FileNameFormat getInverse() {
+            return new SphericalGoproFormat();
         }
     }
 
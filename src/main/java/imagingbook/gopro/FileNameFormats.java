@@ -0,0 +1,67 @@
+package imagingbook.gopro;
+
+import imagingbook.gopro.RenamerSettings.ProcessMode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * The registry of the available file name formats. Formats are loaded as services
+ * (see {@link ServiceLoader}) from {@code META-INF/services/imagingbook.gopro.FileNameFormat},
+ * so formats for other cameras can be added by putting a jar file with such
+ * an entry on the class path. The registered formats describe original file
+ * names, their inverses (see {@link FileNameFormat#getInverse()}) are used for
+ * reverting renamed files. The built-in formats are
+ * {@link FileNameFormat.OriginalGoproFormat}, {@link FileNameFormat.LegacyGoproFormat}
+ * and {@link FileNameFormat.SphericalGoproFormat}.
+ */
+public final class FileNameFormats {
+
+    private static volatile List<FileNameFormat> formats = null;
+    private static volatile FormatClassifier renameClassifier = null;
+    private static volatile FormatClassifier revertClassifier = null;
+
+    private FileNameFormats() { }
+
+    /**
+     * @return the registered formats, in the order of their service entries
+     */
+    public static List<FileNameFormat> getFormats() {
+        List<FileNameFormat> result = formats;
+        if (result == null) {
+            result = new ArrayList<>();
+            for (FileNameFormat f : ServiceLoader.load(FileNameFormat.class, FileNameFormat.class.getClassLoader())) {
+                result.add(f);
+            }
+            if (result.isEmpty()) {     // no service entries (e.g., a stripped jar file)
+                result.add(new FileNameFormat.OriginalGoproFormat());
+            }
+            formats = result = Collections.unmodifiableList(result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a classifier for all registered formats (in {@link ProcessMode#Rename}
+     * mode) or their inverses (in {@link ProcessMode#Revert} mode).
+     * @param mode the process mode
+     * @return the (shared) classifier
+     */
+    public static FormatClassifier getClassifier(ProcessMode mode) {
+        if (mode == ProcessMode.Rename) {
+            FormatClassifier c = renameClassifier;
+            if (c == null) {
+                renameClassifier = c = new FormatClassifier(getFormats());
+            }
+            return c;
+        } else {
+            FormatClassifier c = revertClassifier;
+            if (c == null) {
+                revertClassifier = c = (FormatClassifier) getClassifier(ProcessMode.Rename).getInverse();
+            }
+            return c;
+        }
+    }
+}
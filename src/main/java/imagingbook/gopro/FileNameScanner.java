@@ -0,0 +1,163 @@
+package imagingbook.gopro;
+
+/**
+ * Character-level matching of GoPro file names, equivalent to the regular
+ * expressions defined in {@link FileNameFormat.OriginalGoproFormat#pat} and
+ * {@link FileNameFormat.RenamedGoproFormat#pat} (applied to the file name
+ * without extension), but without creating any intermediate objects.
+ * The same is done for the names of older GoPro models ("GOPR0527", "GP010527")
+ * and of spherical (360) GoPro files ("GS010527").
+ * All methods work on arbitrary {@link CharSequence}s.
+ */
+public final class FileNameScanner {
+
+    private FileNameScanner() { }
+
+    /**
+     * Returns the length of the given file name without its extension,
+     * i.e., the index of the last '.' or the length of the name if it has no
+     * extension (see {@link FileNameFormat#stripFileExtension(String)}).
+     * @param fName the file name
+     * @return the length of the raw file name
+     */
+    public static int baseLength(CharSequence fName) {
+        for (int i = fName.length() - 1; i >= 0; i--) {
+            if (fName.charAt(i) == '.') {
+                return i;
+            }
+        }
+        return fName.length();
+    }
+
+    /**
+     * Checks if the file name without extension is an original GoPro name,
+     * such as "GH010527" (pattern "G[HLX]\d{6}").
+     * @param fName the file name
+     * @return {@code true} if the name matches
+     */
+    public static boolean matchOriginal(CharSequence fName) {
+        return baseLength(fName) == 8 && matchOriginalAt(fName, 0);
+    }
+
+    /**
+     * Checks if the file name without extension is a GoPro name renamed by
+     * this program, such as "052701-GH010527" (pattern "\d{6}-G[HLX]\d{6}"),
+     * with consistent video and chapter numbers.
+     * @param fName the file name
+     * @return {@code true} if the name matches
+     */
+    public static boolean matchRenamed(CharSequence fName) {
+        return baseLength(fName) == 15
+                && isDigits(fName, 0, 6)
+                && fName.charAt(6) == '-'
+                && matchOriginalAt(fName, 7)
+                && regionEquals(fName, 0, 11, 4)    // video number
+                && regionEquals(fName, 4, 9, 2);    // chapter number
+    }
+
+    /**
+     * Checks if the file name without extension is a name of older GoPro models,
+     * such as "GOPR0527" (first chapter) or "GP010527" (following chapters).
+     * @param fName the file name
+     * @return {@code true} if the name matches
+     */
+    public static boolean matchLegacy(CharSequence fName) {
+        return baseLength(fName) == 8 && matchLegacyAt(fName, 0);
+    }
+
+    /**
+     * Checks if the file name without extension is an older GoPro name renamed
+     * by this program, such as "052700-GOPR0527" or "052701-GP010527", with
+     * consistent video and chapter numbers (the first chapter is numbered 00).
+     * @param fName the file name
+     * @return {@code true} if the name matches
+     */
+    public static boolean matchRenamedLegacy(CharSequence fName) {
+        if (baseLength(fName) != 15 || !isDigits(fName, 0, 6) || fName.charAt(6) != '-'
+                || !matchLegacyAt(fName, 7) || !regionEquals(fName, 0, 11, 4)) {
+            return false;
+        }
+        return (fName.charAt(8) == 'O') ?
+                fName.charAt(4) == '0' && fName.charAt(5) == '0' :
+                regionEquals(fName, 4, 9, 2);
+    }
+
+    /**
+     * Checks if the file name without extension is a spherical GoPro name,
+     * such as "GS010527" (pattern "GS\d{6}").
+     * @param fName the file name
+     * @return {@code true} if the name matches
+     */
+    public static boolean matchSpherical(CharSequence fName) {
+        return baseLength(fName) == 8 && matchSphericalAt(fName, 0);
+    }
+
+    /**
+     * Checks if the file name without extension is a spherical GoPro name renamed
+     * by this program, such as "052701-GS010527", with consistent video and chapter numbers.
+     * @param fName the file name
+     * @return {@code true} if the name matches
+     */
+    public static boolean matchRenamedSpherical(CharSequence fName) {
+        return baseLength(fName) == 15
+                && isDigits(fName, 0, 6)
+                && fName.charAt(6) == '-'
+                && matchSphericalAt(fName, 7)
+                && regionEquals(fName, 0, 11, 4)
+                && regionEquals(fName, 4, 9, 2);
+    }
+
+    /**
+     * Checks for pattern "G[HLX]\d{6}" starting at the given position,
+     * the sequence must be long enough.
+     */
+    static boolean matchOriginalAt(CharSequence s, int pos) {
+        if (s.charAt(pos) != 'G') {
+            return false;
+        }
+        char c = s.charAt(pos + 1);
+        return (c == 'H' || c == 'L' || c == 'X') && isDigits(s, pos + 2, pos + 8);
+    }
+
+    /**
+     * Checks for pattern "GOPR\d{4}" or "GP\d{6}" starting at the given position,
+     * the sequence must be long enough.
+     */
+    static boolean matchLegacyAt(CharSequence s, int pos) {
+        if (s.charAt(pos) != 'G') {
+            return false;
+        }
+        if (s.charAt(pos + 1) == 'P') {
+            return isDigits(s, pos + 2, pos + 8);
+        }
+        return s.charAt(pos + 1) == 'O' && s.charAt(pos + 2) == 'P' && s.charAt(pos + 3) == 'R'
+                && isDigits(s, pos + 4, pos + 8);
+    }
+
+    /**
+     * Checks for pattern "GS\d{6}" starting at the given position,
+     * the sequence must be long enough.
+     */
+    static boolean matchSphericalAt(CharSequence s, int pos) {
+        return s.charAt(pos) == 'G' && s.charAt(pos + 1) == 'S' && isDigits(s, pos + 2, pos + 8);
+    }
+
+    static boolean isDigits(CharSequence s, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean regionEquals(CharSequence s, int pos1, int pos2, int length) {
+        for (int i = 0; i < length; i++) {
+            if (s.charAt(pos1 + i) != s.charAt(pos2 + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
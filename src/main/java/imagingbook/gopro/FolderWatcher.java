@@ -0,0 +1,220 @@
+package imagingbook.gopro;
+
+import imagingbook.gopro.RenamePlan.DirectoryPlan;
+import imagingbook.gopro.RenamerListener.FileStatus;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Watches the start directory (and, if recursive, all its sub-directories) and
+ * renames matching files as they appear, e.g., when a camera card is copied
+ * into a drop folder. Uses a {@link WatchService}, thus directories are only
+ * listed once at startup, when created, and after an event overflow (only the
+ * overflowed directory). File events are collected by a {@link Debouncer} and
+ * a file is only renamed after it has been fully written, i.e., after no events
+ * were seen and its size remained stable for the quiet period. Settled files are
+ * renamed in batches, using a {@link RenamePlan} per batch. In dry-run mode,
+ * matching files are only reported.
+ * <p>
+ * {@link #run()} blocks until {@link #stop()} is called (from another thread).
+ */
+public class FolderWatcher {
+
+    static final long DEFAULT_QUIET_MS = 2000;
+
+    private final RenamerSettings settings;
+    private final RenamerListener listener;
+    private final FileNameFormat nameformat;
+    private final RenamerEngine engine;
+    private final long quietMs;
+    private final Debouncer<Path> debouncer;
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+    private volatile WatchService watcher = null;
+    private volatile boolean stopped = false;
+
+    public FolderWatcher(RenamerSettings settings, RenamerListener listener) {
+        this(settings, listener, DEFAULT_QUIET_MS);
+    }
+
+    /**
+     * @param settings the renaming settings (the start directory is watched)
+     * @param listener receives the output
+     * @param quietMs the time a file must be unchanged before it is renamed (ms)
+     */
+    public FolderWatcher(RenamerSettings settings, RenamerListener listener, long quietMs) {
+        this.settings = settings;
+        this.listener = listener;
+        this.nameformat = settings.getNameFormat();
+        this.engine = new RenamerEngine(settings, listener);
+        this.quietMs = quietMs;
+        this.debouncer = new Debouncer<>(quietMs, FolderWatcher::sizeOf);
+    }
+
+    /**
+     * @return the statistics of all renamed files so far
+     */
+    public RenamerStatistics getStatistics() {
+        return engine.getStatistics();
+    }
+
+    /**
+     * Stops watching. May be called from any thread.
+     */
+    public void stop() {
+        stopped = true;
+        WatchService ws = watcher;
+        if (ws != null) {
+            try {
+                ws.close();
+            } catch (IOException e) {
+                // closing anyway
+            }
+        }
+    }
+
+    /**
+     * Watches the start directory until {@link #stop()} is called or the thread is interrupted.
+     * @throws IOException if the watch service cannot be created
+     */
+    public void run() throws IOException {
+        Path dir = settings.getStartDir();
+        if (!Files.isDirectory(dir)) {
+            throw new IllegalArgumentException("Path is not a directory: " + dir);
+        }
+        try (WatchService ws = FileSystems.getDefault().newWatchService()) {
+            watcher = ws;
+            listener.log("Watching " + dir.toAbsolutePath() + (settings.isDryRun() ? " (DRY RUN) ..." : " ..."));
+            scan(dir);
+            long tick = Math.max(10, Math.min(quietMs / 2, 500));
+            while (!stopped) {
+                WatchKey key = ws.poll(tick, TimeUnit.MILLISECONDS);
+                while (key != null) {
+                    processEvents(key);
+                    key = ws.poll();
+                }
+                List<Path> ready = debouncer.poll(System.currentTimeMillis());
+                if (!ready.isEmpty()) {
+                    processBatch(ready);
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // stopped
+        } finally {
+            watcher = null;
+        }
+        listener.log("Stopped watching, " + engine.getStatistics().getRenamedCount() + " files renamed.");
+    }
+
+    private void processEvents(WatchKey key) {
+        Path dir = keys.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (dir == null)
+                break;
+            if (event.kind() == OVERFLOW) {
+                listener.log("Too many events, rescanning " + dir);
+                scan(dir);
+                continue;
+            }
+            Path file = dir.resolve((Path) event.context());
+            if (event.kind() == ENTRY_CREATE && settings.isRecursive() && Files.isDirectory(file)) {
+                scan(file);     // register the new directory and pick up files created before
+            }
+            else if (nameformat.matchFileName(file.getFileName().toString())) {
+                debouncer.touch(file, System.currentTimeMillis());
+            }
+        }
+        if (!key.reset()) {
+            keys.remove(key);   // directory is gone
+        }
+    }
+
+    /**
+     * Registers the given directory (and its sub-directories, if recursive)
+     * and collects all matching files.
+     */
+    private void scan(Path start) {
+        long now = System.currentTimeMillis();
+        DirectoryWalker walker = new DirectoryWalker(settings.isRecursive(), settings.getSymlinkPolicy());
+        walker.walk(start, new DirectoryWalker.Visitor() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir) {
+                try {
+                    keys.put(dir.register(watcher, ENTRY_CREATE, ENTRY_MODIFY), dir);
+                } catch (IOException e) {
+                    listener.log("ERROR: could not watch directory " + dir + " (" + e + ")");
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (nameformat.matchFileName(file.getFileName().toString()))
+                    debouncer.touch(file, now);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Renames a batch of settled files, grouped by directory.
+     */
+    private void processBatch(List<Path> files) {
+        Map<Path, DirectoryPlan> dirs = new LinkedHashMap<>();
+        for (Path file : files) {
+            Path dir = file.getParent();
+            String name = file.getFileName().toString();
+            FileNameFormat format = nameformat.classify(name);
+            if (format == null)
+                continue;
+            String newName = format.mapFileName(name);
+            DirectoryPlan dp = dirs.computeIfAbsent(dir, DirectoryPlan::new);
+            dp.addRename(name, newName, format.getGroupKey(name));
+            if (Files.exists(dir.resolve(newName))) {
+                dp.addFile(newName);    // reported as a conflict
+            }
+        }
+        RenamePlan plan = new RenamePlan();
+        for (DirectoryPlan dp : dirs.values()) {
+            plan.add(dp);
+        }
+        for (int d = 0; d < plan.getDirectoryCount(); d++) {
+            Path dir = plan.getDirectory(d);
+            for (int i = plan.getDirectoryStart(d); i < plan.getDirectoryEnd(d); i++) {
+                if (plan.getState(i) != RenamePlan.State.Planned) {
+                    listener.fileProcessed(dir, plan.getSource(i), plan.getTarget(i), FileStatus.Conflict);
+                } else if (settings.isDryRun()) {
+                    listener.fileProcessed(dir, plan.getSource(i), plan.getTarget(i), FileStatus.Matched);
+                }
+            }
+        }
+        if (!settings.isDryRun()) {
+            engine.apply(plan);
+        }
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package imagingbook.gopro;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link FileNameFormat} combining several formats, which finds the format of
+ * a file name in a single pass over its characters, regardless of the number of
+ * formats. The name patterns of all formats (see {@link FileNameFormat#getNamePatterns()})
+ * are compiled into a prefix tree (trie) whose edges are labeled with character
+ * classes rather than characters: ASCII characters that are accepted by exactly the
+ * same pattern elements (e.g., all digits) form a single class, so a pattern like
+ * "######-G[HLX]######" needs only a few nodes per position. The trie node reached
+ * at the end of the name (without extension) holds the candidate formats, which
+ * are then confirmed by their {@link FileNameFormat#matchFileName(String)} method.
+ * Formats without patterns are checked one by one, after the trie.
+ * <p>
+ * Instances are immutable and can be shared by several threads.
+ */
+public class FormatClassifier implements FileNameFormat {
+
+    private static final int[] NONE = new int[0];
+
+    private final FileNameFormat[] formats;
+    private final int[] unpatterned;        // indexes of formats without patterns
+    private final byte[] charClass = new byte[128];
+    private final int classCount;
+    private final int[] next;               // node * classCount + class -> node, -1 if none
+    private final int[][] accept;           // node -> indexes of formats
+
+    /**
+     * Compiles a classifier for the given formats. If a file name matches several
+     * formats, the format given first is used.
+     * @param formats the file name formats
+     */
+    public FormatClassifier(List<? extends FileNameFormat> formats) {
+        this.formats = formats.toArray(new FileNameFormat[0]);
+
+        // parse all patterns into lists of character sets:
+        List<List<BitSet>> patterns = new ArrayList<>();
+        List<Integer> owners = new ArrayList<>();
+        List<Integer> noPatterns = new ArrayList<>();
+        for (int f = 0; f < this.formats.length; f++) {
+            List<String> ps = this.formats[f].getNamePatterns();
+            if (ps.isEmpty()) {
+                noPatterns.add(f);
+            }
+            for (String p : ps) {
+                patterns.add(parse(p));
+                owners.add(f);
+            }
+        }
+        unpatterned = noPatterns.stream().mapToInt(Integer::intValue).toArray();
+
+        // characters accepted by the same pattern elements form a class (class 0 = no element):
+        List<BitSet> elements = new ArrayList<>();
+        for (List<BitSet> p : patterns)
+            elements.addAll(p);
+        Map<BitSet, Integer> signatures = new HashMap<>();
+        signatures.put(new BitSet(), 0);
+        for (int c = 0; c < 128; c++) {
+            BitSet sig = new BitSet();
+            for (int e = 0; e < elements.size(); e++) {
+                if (elements.get(e).get(c))
+                    sig.set(e);
+            }
+            Integer cls = signatures.get(sig);
+            if (cls == null) {
+                cls = signatures.size();
+                signatures.put(sig, cls);
+            }
+            charClass[c] = (byte) (int) cls;
+        }
+        classCount = signatures.size();
+        if (classCount > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("too many distinct characters in name patterns");
+        }
+
+        // build the trie:
+        List<int[]> nodes = new ArrayList<>();
+        List<int[]> accepts = new ArrayList<>();
+        nodes.add(newNode());
+        accepts.add(NONE);
+        for (int p = 0; p < patterns.size(); p++) {
+            List<Integer> current = new ArrayList<>();
+            current.add(0);
+            for (BitSet element : patterns.get(p)) {
+                List<Integer> following = new ArrayList<>();
+                for (int cls : classesOf(element)) {
+                    for (int node : current) {
+                        int child = nodes.get(node)[cls];
+                        if (child < 0) {
+                            child = nodes.size();
+                            nodes.get(node)[cls] = child;
+                            nodes.add(newNode());
+                            accepts.add(NONE);
+                        }
+                        if (!following.contains(child))
+                            following.add(child);
+                    }
+                }
+                current = following;
+            }
+            int f = owners.get(p);
+            for (int node : current) {
+                int[] a = accepts.get(node);
+                if (Arrays.binarySearch(a, f) < 0) {
+                    a = Arrays.copyOf(a, a.length + 1);
+                    a[a.length - 1] = f;
+                    Arrays.sort(a);         // formats given first take precedence
+                    accepts.set(node, a);
+                }
+            }
+        }
+        next = new int[nodes.size() * classCount];
+        for (int n = 0; n < nodes.size(); n++) {
+            System.arraycopy(nodes.get(n), 0, next, n * classCount, classCount);
+        }
+        accept = accepts.toArray(new int[0][]);
+    }
+
+    private int[] newNode() {
+        int[] node = new int[classCount];
+        Arrays.fill(node, -1);
+        return node;
+    }
+
+    /**
+     * Returns the character classes of all characters accepted by a pattern element.
+     */
+    private int[] classesOf(BitSet element) {
+        BitSet classes = new BitSet();
+        for (int c = element.nextSetBit(0); c >= 0; c = element.nextSetBit(c + 1)) {
+            classes.set(charClass[c]);
+        }
+        return classes.stream().toArray();
+    }
+
+    /**
+     * Parses a name pattern into a list of character sets, one per position.
+     */
+    static List<BitSet> parse(String pattern) {
+        List<BitSet> elements = new ArrayList<>();
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            BitSet set = new BitSet(128);
+            if (c == '#') {
+                set.set('0', '9' + 1);
+            } else if (c == '[') {
+                int end = pattern.indexOf(']', i);
+                if (end < 0) {
+                    throw new IllegalArgumentException("unterminated character set in name pattern " + pattern);
+                }
+                for (int k = i + 1; k < end; k++) {
+                    set.set(checkAscii(pattern.charAt(k), pattern));
+                }
+                i = end;
+            } else {
+                set.set(checkAscii(c, pattern));
+            }
+            elements.add(set);
+        }
+        return elements;
+    }
+
+    private static char checkAscii(char c, String pattern) {
+        if (c >= 128) {
+            throw new IllegalArgumentException("non-ASCII character in name pattern " + pattern);
+        }
+        return c;
+    }
+
+    // -------------------------------------------------------------------------
+
+    /**
+     * @return the formats of this classifier
+     */
+    public List<FileNameFormat> getFormats() {
+        return Arrays.asList(formats.clone());
+    }
+
+    /**
+     * @return the number of trie nodes
+     */
+    int getNodeCount() {
+        return accept.length;
+    }
+
+    /**
+     * Finds the format of the given file name.
+     * @param fName the file name
+     * @return the (first) matching format, {@code null} if no format matches
+     */
+    @Override
+    public FileNameFormat classify(String fName) {
+        int n = FileNameScanner.baseLength(fName);
+        int node = 0;
+        for (int i = 0; i < n && node >= 0; i++) {
+            char c = fName.charAt(i);
+            node = next[node * classCount + ((c < 128) ? charClass[c] : 0)];
+        }
+        if (node >= 0) {
+            for (int f : accept[node]) {
+                if (formats[f].matchFileName(fName))
+                    return formats[f];
+            }
+        }
+        for (int f : unpatterned) {
+            if (formats[f].matchFileName(fName))
+                return formats[f];
+        }
+        return null;
+    }
+
+    @Override
+    public boolean matchFileName(String fName) {
+        return classify(fName) != null;
+    }
+
+    /**
+     * Maps a file name by its format.
+     * @param fName the file name (must match one of the formats)
+     * @return the new file name
+     */
+    @Override
+    public String mapFileName(String fName) {
+        FileNameFormat format = classify(fName);
+        if (format == null) {
+            throw new IllegalArgumentException("file name matches no format: " + fName);
+        }
+        return format.mapFileName(fName);
+    }
+
+    @Override
+    public String getGroupKey(String fName) {
+        FileNameFormat format = classify(fName);
+        return (format != null) ? format.getGroupKey(fName) : null;
+    }
+
+    /**
+     * @return the combined name patterns of all formats
+     */
+    @Override
+    public List<String> getNamePatterns() {
+        List<String> patterns = new ArrayList<>();
+        for (FileNameFormat f : formats)
+            patterns.addAll(f.getNamePatterns());
+        return patterns;
+    }
+
+    /**
+     * @return a classifier for the inverse formats (formats without an inverse are omitted)
+     */
+    @Override
+    public FileNameFormat getInverse() {
+        List<FileNameFormat> inverse = new ArrayList<>();
+        for (FileNameFormat f : formats) {
+            if (f.getInverse() != null)
+                inverse.add(f.getInverse());
+        }
+        return new FormatClassifier(inverse);
+    }
+
+    /**
+     * @return a key identifying the combination of formats, e.g., for a {@link DirectoryCache}
+     */
+    public String getKey() {
+        StringBuilder sb = new StringBuilder(getClass().getName());
+        for (FileNameFormat f : formats)
+            sb.append(':').append(f.getClass().getName());
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return getKey();
+    }
+}
@@ -1,25 +1,33 @@
 package imagingbook.gopro;
 
+import imagingbook.gopro.RenamerSettings.ProcessMode;
+import imagingbook.gopro.ResultStore.Entry;
+import imagingbook.gopro.ResultStore.Filter;
+import imagingbook.gopro.ResultStore.Kind;
+
 import javax.imageio.ImageIO;
 import javax.swing.GroupLayout;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JScrollPane;
-import javax.swing.JTextArea;
+import javax.swing.JTable;
 import javax.swing.JTextField;
 import javax.swing.SwingConstants;
 import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 import javax.swing.UIManager;
 import javax.swing.WindowConstants;
 import java.awt.Color;
 import java.awt.Desktop;
 import java.awt.Font;
+import java.awt.Image;
 import java.io.File;
-import java.io.FileFilter;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URL;
@@ -27,10 +35,13 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
 
 import static imagingbook.gopro.JarUtils.getImplementationVersion;
-import static imagingbook.gopro.JarUtils.getManifest;
 import static javax.swing.GroupLayout.Alignment.BASELINE;
 import static javax.swing.GroupLayout.Alignment.CENTER;
 import static javax.swing.GroupLayout.Alignment.LEADING;
@@ -56,70 +67,59 @@ import static javax.swing.GroupLayout.Alignment.LEADING;
  * {@code .THM},
  * {@code .LRV} files.
  * <p>
- * Note that this only works for files produced with GoPro Hero6 to Hero12 cams.
- * Earlier models with different file naming conventions are not supported
- * (see <a href="https://community.gopro.com/s/article/GoPro-Camera-File-Naming-Convention">...</a>
+ * This naming scheme is used by GoPro Hero6 to Hero12 cams. Files of earlier models
+ * ({@code GOPR0527.MP4}, {@code GP010527.MP4}) and spherical files ({@code GS010527.360})
+ * are renamed as well, see {@link FileNameFormats} for the registered formats
+ * (and <a href="https://community.gopro.com/s/article/GoPro-Camera-File-Naming-Convention">...</a>
  * for details).
+ * <p>
+ * This class only provides the GUI, the actual work is done by {@link RenamerEngine}.
+ * See {@link RenamerCli} for running without a GUI.
  *
  * @author wilbur@ieee.org
  * @version 2024/01/31
  */
 public class GoProFileRenamer extends JFrame {
 
-    private enum ProcessMode {
-        Rename, Revert
-    }
-
     private static final String appTitle = "GoPro File Renamer";
     private static final String helpUrl = "https://github.com/imagingbook/gopro-file-renamer?tab=readme-ov-file#gopro-file-renamer";
-    private static final String implVersion = getImplementationVersion(getManifest(GoProFileRenamer.class));
+    private static final String implVersion = getImplementationVersion(GoProFileRenamer.class);
     private static final Color renameButtonColor = Color.red.darker();
     private static final Color revertButtonColor = Color.green.darker();
+    private static final int progressUpdateMillis = 250;
+    // maximum number of result rows kept, older rows are dropped:
+    private static final int maxResultRows = Integer.getInteger("renamer.maxRows", 200000);
 
     private String startDir = System.getProperty("user.dir"); //Paths.get("").toAbsolutePath().toString();
-    private boolean RECURSIVE = true;
-    private boolean VERBOSE   = true;
-    private boolean DRYRUN    = true;
-    private boolean ABSDIRS   = false;
-
     private ProcessMode mode = ProcessMode.Rename;
-    private FileNameFormat nameformat = null;
-
-    private int checkedCount = 0;
-    private int matchedCount = 0;
-    private int renamedCount = 0;
-    private int errorCount   = 0;
+    private RenamerWorker worker = null;
+    private RenamerSettings planSettings = null;    // settings of the last completed dry run
+    private RenamePlan plan = null;                 // plan of the last completed dry run
 
     private final JLabel startDirLabel;
     private final JTextField startDirField;
     private final JCheckBox checkDryRun, checkRecursive, checkVerbose, checkAbsDirs;
-    private final JButton buttonFind, buttonRename, buttonRevert, buttonClear, buttonQuit, buttonHelp;
-    private final JTextArea outputArea;
+    private final JButton buttonFind, buttonRename, buttonRevert, buttonCancel, buttonClear, buttonQuit, buttonHelp;
+    private final ResultTableModel resultModel;
+    private final JTable resultTable;
+    private final JComboBox<Filter> filterBox;
     private final JScrollPane scrollPane;
+    private final JLabel progressLabel;
+    private final Timer progressTimer;
 
     public GoProFileRenamer() {
         // version number only shows when run from JAR:
         super(appTitle + " (" + (implVersion != null ? implVersion : "no version") + ")");
         this.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
-        try {
-            UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
-        } catch (Exception ignored) { }
-        JFrame.setDefaultLookAndFeelDecorated(true);
-
-        try {
-            URL url = getClass().getResource("camera-gopro-icon.png");
-            if (url != null) {
-                this.setIconImage(ImageIO.read(url));
-            }
-        } catch (IOException ignored) { }
 
         startDirLabel = new JLabel("Start directory:");
         startDirField = new JTextField(startDir);
 
-        checkRecursive  = new JCheckBox("Recursive", RECURSIVE);
-        checkVerbose    = new JCheckBox("Verbose", VERBOSE);
-        checkDryRun     = new JCheckBox("Dry run only", DRYRUN);
-        checkAbsDirs    = new JCheckBox("Show absolute paths", ABSDIRS);
+        RenamerSettings defaults = new RenamerSettings();
+        checkRecursive  = new JCheckBox("Recursive", defaults.isRecursive());
+        checkVerbose    = new JCheckBox("Verbose", defaults.isVerbose());
+        checkDryRun     = new JCheckBox("Dry run only", defaults.isDryRun());
+        checkAbsDirs    = new JCheckBox("Show absolute paths", defaults.isAbsDirs());
 
         buttonFind  = new JButton("Find");
 
@@ -133,6 +133,9 @@ public class GoProFileRenamer extends JFrame {
         buttonRevert.setForeground(revertButtonColor);
         buttonRevert.setFont(buttonRename.getFont().deriveFont(Font.BOLD));
 
+        buttonCancel = new JButton("Cancel");
+        buttonCancel.setEnabled(false);
+
         buttonClear = new JButton("Clear Output");
         buttonQuit  = new JButton("Quit");
 
@@ -141,21 +144,36 @@ public class GoProFileRenamer extends JFrame {
         buttonHelp.setBorder(null);
         buttonHelp.setBorderPainted(false);
 
-        outputArea  = new JTextArea("", 20, 80);
-        outputArea.setEditable(false);
-        scrollPane  = new JScrollPane(outputArea);
+        resultModel = new ResultTableModel(maxResultRows);
+        resultTable = new JTable(resultModel);
+        resultTable.setFillsViewportHeight(true);
+        resultTable.getColumnModel().getColumn(0).setPreferredWidth(80);
+        resultTable.getColumnModel().getColumn(1).setPreferredWidth(200);
+        resultTable.getColumnModel().getColumn(2).setPreferredWidth(250);
+        resultTable.getColumnModel().getColumn(3).setPreferredWidth(250);
+        scrollPane  = new JScrollPane(resultTable);
+        filterBox = new JComboBox<>(Filter.values());
+        filterBox.setMaximumSize(filterBox.getPreferredSize());
+        progressLabel = new JLabel(" ");
+        progressTimer = new Timer(progressUpdateMillis, e -> updateProgress());
 
         // --------------------------------------------------------------
 
         buttonFind.addActionListener(e -> {
             JFileChooser chooser = new JFileChooser(startDir);
             chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
-            chooser.setDialogTitle("Select the root directory");
+            chooser.setMultiSelectionEnabled(true);
+            chooser.setDialogTitle("Select the root directories");
             chooser.setApproveButtonText("Select");
             int returnVal = chooser.showOpenDialog(null);
             if (returnVal == JFileChooser.APPROVE_OPTION) {
-                File f = chooser.getSelectedFile();
-                startDirField.setText(f.getAbsolutePath());
+                StringBuilder sb = new StringBuilder();
+                for (File f : chooser.getSelectedFiles()) {
+                    if (sb.length() > 0)
+                        sb.append(File.pathSeparator);
+                    sb.append(f.getAbsolutePath());
+                }
+                startDirField.setText(sb.toString());
             }
         });
 
@@ -169,8 +187,16 @@ public class GoProFileRenamer extends JFrame {
             processFiles();
         });
 
+        buttonCancel.addActionListener(e -> {
+            if (worker != null) {
+                worker.cancel();
+            }
+        });
+
         buttonClear.addActionListener(e -> clearTextOutput());
 
+        filterBox.addActionListener(e -> resultModel.setFilter((Filter) filterBox.getSelectedItem()));
+
         buttonQuit.addActionListener(e -> System.exit(0));
 
         buttonHelp.addActionListener(e -> {
@@ -216,11 +242,17 @@ public class GoProFileRenamer extends JFrame {
                                         .addComponent(buttonFind)
                                         .addComponent(buttonRename)
                                         .addComponent(buttonRevert)
+                                        .addComponent(buttonCancel)
                                         .addComponent(buttonClear)
                                         .addComponent(buttonQuit)
                                 )
                         )
                         .addComponent(scrollPane)
+                        .addGroup(layout.createSequentialGroup()
+                                .addComponent(progressLabel)
+                                .addGap(0, 0, Short.MAX_VALUE)
+                                .addComponent(filterBox)
+                        )
         );
 
         layout.setVerticalGroup(layout.createSequentialGroup()
@@ -240,11 +272,16 @@ public class GoProFileRenamer extends JFrame {
                         .addGroup(layout.createSequentialGroup()
                                 .addComponent(buttonRename)
                                 .addComponent(buttonRevert)
+                                .addComponent(buttonCancel)
                                 .addComponent(buttonClear)
                                 .addComponent(buttonQuit)
                         )
                 )
                 .addComponent(scrollPane)
+                .addGroup(layout.createParallelGroup(CENTER)
+                        .addComponent(progressLabel)
+                        .addComponent(filterBox)
+                )
         );
 
         layout.linkSize(SwingConstants.HORIZONTAL, buttonFind, buttonRename, buttonQuit);
@@ -252,47 +289,62 @@ public class GoProFileRenamer extends JFrame {
     }
 
     private void clearTextOutput() {
-        outputArea.setText(null);
+        resultModel.clear();
+    }
+
+    /**
+     * Several start directories may be entered, separated by the platform's
+     * path separator (see {@link MultiRootRenamer}).
+     */
+    private List<Path> getStartDirs() {
+        List<Path> dirs = new ArrayList<>();
+        for (String s : startDirField.getText().split(Pattern.quote(File.pathSeparator))) {
+            if (!s.trim().isEmpty())
+                dirs.add(Paths.get(s.trim()));
+        }
+        if (dirs.isEmpty())
+            dirs.add(Paths.get(""));
+        return dirs;
     }
 
-    private void updateSettings() {
-        startDir = startDirField.getText();
-        RECURSIVE = checkRecursive.isSelected();
-        VERBOSE = checkVerbose.isSelected();
-        DRYRUN = checkDryRun.isSelected();
-        ABSDIRS = checkAbsDirs.isSelected();
-        checkedCount = 0;
-        matchedCount = 0;
-        renamedCount = 0;
-        errorCount = 0;
+    private RenamerSettings getSettings() {
+        return new RenamerSettings()
+                .setStartDir(getStartDirs().get(0))
+                .setRecursive(checkRecursive.isSelected())
+                .setVerbose(checkVerbose.isSelected())
+                .setDryRun(checkDryRun.isSelected())
+                .setAbsDirs(checkAbsDirs.isSelected())
+                .setMode(mode);
     }
 
     private void log(String msg) {
-        if (msg == null)
-            this.outputArea.append("null\n");
-        else
-            this.outputArea.append(msg + "\n");
+        resultModel.addAll(Collections.singletonList(
+                new Entry(Kind.Message, null, (msg == null) ? "null" : msg, null)));
     }
 
     // -------------------------------------------------------------------------
 
     void processFiles() {
-        updateSettings();
-        File dir = new File(startDir);
-        this.nameformat = (mode.equals(ProcessMode.Rename)) ?
-                new FileNameFormat.OriginalGoproFormat() :
-                new FileNameFormat.RenamedGoproFormat();
-
-        if (!dir.isDirectory()) {
-            JOptionPane.showMessageDialog(null, "Path is not a directory:\n" + startDir);
-            return;
+        RenamerSettings settings = getSettings();
+        List<Path> startDirs = getStartDirs();
+        startDir = startDirs.get(0).toString();
+
+        for (Path dir : startDirs) {
+            if (!Files.isDirectory(dir)) {
+                JOptionPane.showMessageDialog(null, "Path is not a directory:\n" + dir);
+                return;
+            }
         }
 
-        String dlgTitle =  appTitle + (DRYRUN ? " (Dry Run)" : "");
+        boolean dryRun = settings.isDryRun();
+        RenamePlan reusedPlan = (!dryRun && startDirs.size() == 1 && isPlanValid(settings)) ? plan : null;
+        String dlgTitle =  appTitle + (dryRun ? " (Dry Run)" : "");
         int result = JOptionPane.showConfirmDialog(null,
-                (DRYRUN ?
+                (dryRun ?
                         "DRY RUN ONLY, no files will be renamed." :
-                        "About to rename files.")
+                        (reusedPlan != null) ?
+                                "About to rename " + reusedPlan.getPlannedCount() + " files found by the last dry run." :
+                                "About to rename files.")
                     + "\nProceed?",
                 dlgTitle,
                 JOptionPane.YES_NO_OPTION,
@@ -302,93 +354,161 @@ public class GoProFileRenamer extends JFrame {
             return;
         }
 
-        log("Renaming GoPro files " + (DRYRUN ? "(DRY RUN) ..." : "..."));
-        processDirectory(dir);
-        if (checkedCount == 0) {
-            log("Found no files to check!");
+        plan = null;
+        worker = new RenamerWorker(settings, startDirs, reusedPlan);
+        setRunning(true);
+        worker.execute();
+    }
+
+    /**
+     * Checks if the plan of the last dry run can be executed with the given settings,
+     * i.e., without scanning the directories again.
+     */
+    private boolean isPlanValid(RenamerSettings settings) {
+        return plan != null
+                && planSettings.getStartDir().equals(settings.getStartDir())
+                && planSettings.isRecursive() == settings.isRecursive()
+                && planSettings.getMode() == settings.getMode();
+    }
+
+    private void setRunning(boolean running) {
+        buttonRename.setEnabled(!running);
+        buttonRevert.setEnabled(!running);
+        buttonCancel.setEnabled(running);
+        if (running) {
+            progressTimer.start();
+        } else {
+            progressTimer.stop();
         }
-        else {
-            log("------------------------------");
-            log("Files checked: " + checkedCount);
-            log("Files matched: " + matchedCount);
-            log("Files renamed: " + renamedCount);
-            log("File errors:   " + errorCount);
+    }
+
+    private void updateProgress() {
+        if (worker == null) {
+            return;
         }
+        RenamerStatistics stats = worker.getStatistics();
+        double seconds = (System.nanoTime() - worker.startTime) * 1e-9;
+        long dropped = resultModel.getDroppedCount();
+        progressLabel.setText(String.format("Directories: %d   Files: %d   Matched: %d   (%.0f files/s)%s",
+                stats.getDirectoryCount(), stats.getCheckedCount(), stats.getMatchedCount(),
+                (seconds > 0) ? stats.getCheckedCount() / seconds : 0.0,
+                (dropped > 0) ? "   [" + dropped + " oldest rows dropped]" : ""));
     }
 
     /**
-     * Recursively walk a directory tree and rename all GoPro files found.
+     * Runs the {@link RenamerEngine} (or a {@link MultiRootRenamer} for several
+     * start directories) off the Event Dispatch Thread.
+     * Result rows are published by the engine thread and added to the
+     * result table in batches, i.e., once per {@link #process(List)} call.
      */
-    private void processDirectory(File dir) {
-        log("Directory: " + (ABSDIRS ? dir.getAbsolutePath() : dir.getName()));
-        File[] allfiles = dir.listFiles(new FileFilter() {
-            @Override
-            public boolean accept(File file) {
-                return !file.isHidden();	// skip hidden files and directories
-            }
-        });
+    private class RenamerWorker extends SwingWorker<RenamerStatistics, Entry> implements RenamerListener {
+
+        private final RenamerSettings settings;
+        private final RenamePlan reusedPlan;
+        private final RenamerEngine engine;
+        private final MultiRootRenamer multiRoot;   // null for a single start directory
+        private final long startTime = System.nanoTime();
+        private String dirLabel = null;     // label of the current directory, shared by all its rows
+
+        RenamerWorker(RenamerSettings settings, List<Path> startDirs, RenamePlan reusedPlan) {
+            this.settings = settings;
+            this.reusedPlan = reusedPlan;
+            this.engine = new RenamerEngine(settings, this);
+            this.multiRoot = (startDirs.size() > 1) ? new MultiRootRenamer(settings, this, startDirs) : null;
+        }
 
-        if (allfiles == null)	// this happens if 'startDir' is not a directory
-            return;
+        void cancel() {
+            if (multiRoot != null)
+                multiRoot.cancel();
+            else
+                engine.cancel();
+        }
 
-        List<File> subdirs = new ArrayList<>();
+        RenamerStatistics getStatistics() {
+            return (multiRoot != null) ? multiRoot.getStatistics() : engine.getStatistics();
+        }
 
-        // process all files in current directory:
-        for (File file : allfiles) {
-            if (file.isDirectory()) {
-                subdirs.add(file);  // add sub-directory to be processed later
-            }
-            else {
-                checkedCount++;
-                String fname = file.getName();
-                if (nameformat.matchFileName(fname)) {
-                    matchedCount++;
-                    renameFile(file);
-                } else {
-                    if (VERBOSE) log("    ignoring " + fname);
-                }
-            }
+        @Override
+        public void log(String msg) {
+            publish(new Entry(Kind.Message, null, msg, null));
+        }
+
+        @Override
+        public void directoryEntered(Path dir, String label) {
+            dirLabel = label;
+            publish(new Entry(Kind.Directory, label, null, null));
+        }
+
+        @Override
+        public void fileProcessed(Path dir, String name, String newName, FileStatus status) {
+            publish(new Entry(Kind.of(status), dirLabel, name, newName));
+        }
+
+        @Override
+        protected RenamerStatistics doInBackground() {
+            if (multiRoot != null)
+                return multiRoot.run();
+            return (reusedPlan != null) ? engine.execute(reusedPlan) : engine.run();
         }
 
-        if (RECURSIVE) {
-            for (File sdir : subdirs) {
-                processDirectory(sdir);
+        @Override
+        protected void process(List<Entry> entries) {
+            resultModel.addAll(entries);
+            int last = resultTable.getRowCount() - 1;
+            if (last >= 0) {
+                resultTable.scrollRectToVisible(resultTable.getCellRect(last, 0, true));
             }
         }
-    }
 
-    /**
-     * Tries to rename the given GoPro file according to our conventions.
-     * @param f a file with matching name.
-     * @return {@code true} if the file was properly renamed, {@code false} otherwise.
-     */
-    private boolean renameFile(File f) {
-        String oldname = f.getName();
-        String newname = nameformat.mapFileName(oldname);
-        Path source = Paths.get(f.getAbsolutePath());
-        if (VERBOSE) log("   renaming " + oldname + " -> " +  newname);
-        if (!DRYRUN) {
+        @Override
+        protected void done() {
+            updateProgress();
+            setRunning(false);
             try {
-                Files.move(source, source.resolveSibling(newname));
-                renamedCount++;
-            } catch (IOException e) {
-                log("ERROR: could not rename file " + oldname);
-                errorCount++;
-                return false;
+                RenamerStatistics stats = get();
+                if (settings.isDryRun() && !stats.isCancelled() && multiRoot == null) {
+                    planSettings = settings;
+                    plan = engine.getPlan();
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                GoProFileRenamer.this.log("ERROR: " + e.getCause());
             }
         }
-        return true;
     }
 
 // -------------------------------------------------------------------------
 
+    /**
+     * Starts the GUI. The window icon is decoded by another thread while the
+     * window is built, and set when ready.
+     * @param args ignored
+     */
     public static void main(String[] args) {
+        CompletableFuture<Image> icon = CompletableFuture.supplyAsync(GoProFileRenamer::readIcon);
         SwingUtilities.invokeLater(new Runnable() {
             @Override
             public void run() {
-                new GoProFileRenamer().setVisible(true);
+                try {
+                    UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
+                } catch (Exception ignored) { }
+                JFrame.setDefaultLookAndFeelDecorated(true);
+                GoProFileRenamer frame = new GoProFileRenamer();
+                frame.setVisible(true);
+                icon.thenAccept(image -> {
+                    if (image != null)
+                        SwingUtilities.invokeLater(() -> frame.setIconImage(image));
+                });
             }
         });
     }
+
+    private static Image readIcon() {
+        try {
+            URL url = GoProFileRenamer.class.getResource("camera-gopro-icon.png");
+            return (url != null) ? ImageIO.read(url) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
     
 }
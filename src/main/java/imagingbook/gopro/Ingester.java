@@ -0,0 +1,332 @@
+package imagingbook.gopro;
+
+import imagingbook.gopro.RenamerListener.FileStatus;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * Copies GoPro files from a source directory (e.g., the DCIM folder of a camera card)
+ * to a destination directory, directly under their new names, i.e., without a
+ * separate renaming pass. The directory structure below the source directory is
+ * kept. Files not matching the file name format are not copied.
+ * <p>
+ * Each file is copied with {@link FileChannel#transferTo} (letting the operating
+ * system move the data), or, if verification is on, through a direct buffer
+ * while computing a CRC-32 checksum, which is compared to the checksum of the
+ * written file. Every file is first written to a temporary ".part" file, which
+ * is forced to disk and then linked to its final name, which fails if that name
+ * exists, so the destination never contains partial files under a final name and
+ * existing destination files are never overwritten. Existing files of the same
+ * size are assumed to be copied already and skipped (if verification is on, only
+ * if their checksums match), other existing files are reported as conflicts.
+ * Files are copied by {@link RenamerSettings#getParallelism()} threads, but
+ * reported in listing order.
+ */
+public class Ingester {
+
+    static final int BUFFER_SIZE = 1 << 20;
+
+    private final RenamerSettings settings;
+    private final RenamerListener listener;
+    private final FileNameFormat nameformat;
+    private final Path destination;
+    private boolean verify = false;
+
+    private final RenamerStatistics stats = new RenamerStatistics();
+    private final LongAdder byteCount = new LongAdder();
+    private final LongAdder skippedCount = new LongAdder();
+    private final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+    /**
+     * @param settings the source directory is taken from {@link RenamerSettings#getStartDir()}
+     * @param listener receives the output
+     * @param destination the destination directory (created if necessary)
+     */
+    public Ingester(RenamerSettings settings, RenamerListener listener, Path destination) {
+        this.settings = settings;
+        this.listener = listener;
+        this.nameformat = settings.getNameFormat();
+        this.destination = destination;
+    }
+
+    public boolean isVerify() {
+        return verify;
+    }
+
+    /**
+     * Sets checksum verification of copied files.
+     * @param verify {@code true} for verification
+     * @return this ingester
+     */
+    public Ingester setVerify(boolean verify) {
+        this.verify = verify;
+        return this;
+    }
+
+    /**
+     * @return the number of bytes copied so far
+     */
+    public long getByteCount() {
+        return byteCount.sum();
+    }
+
+    /**
+     * @return the number of files skipped because they were copied already
+     */
+    public long getSkippedCount() {
+        return skippedCount.sum();
+    }
+
+    /**
+     * Copies all matching files from the source to the destination directory.
+     * @return the statistics of this run (copied files are counted as renamed)
+     */
+    public RenamerStatistics run() {
+        Path source = settings.getStartDir();
+        if (!Files.isDirectory(source)) {
+            throw new IllegalArgumentException("Path is not a directory: " + source);
+        }
+        listener.log("Copying GoPro files to " + destination + (settings.isDryRun() ? " (DRY RUN) ..." : " ..."));
+        long startTime = System.nanoTime();
+
+        // collect the files to be copied:
+        List<Path> files = new ArrayList<>();
+        List<Path> targets = new ArrayList<>();
+        DirectoryWalker walker = new DirectoryWalker(settings.isRecursive(), settings.getSymlinkPolicy());
+        walker.walk(source, new DirectoryWalker.Visitor() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir) {
+                stats.directoryCount.increment();
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                stats.checkedCount.increment();
+                String name = file.getFileName().toString();
+                FileNameFormat format = nameformat.classify(name);
+                if (format != null) {
+                    stats.matchedCount.increment();
+                    files.add(file);
+                    Path rel = source.relativize(file.getParent());
+                    targets.add(destination.resolve(rel.toString()).resolve(format.mapFileName(name)));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        ExecutorService pool = Executors.newFixedThreadPool(settings.getParallelism());
+        try {
+            List<Future<IOException>> results = new ArrayList<>(files.size());
+            for (int i = 0; i < files.size(); i++) {
+                Path file = files.get(i);
+                Path target = targets.get(i);
+                results.add(settings.isDryRun() ? null : pool.submit(() -> ingest(file, target)));
+            }
+            Path lastDir = null;
+            for (int i = 0; i < files.size(); i++) {
+                Path file = files.get(i);
+                if (!file.getParent().equals(lastDir)) {
+                    lastDir = file.getParent();
+                    listener.directoryEntered(lastDir, getLabel(lastDir));
+                }
+                report(file, targets.get(i), (results.get(i) != null) ? getResult(results.get(i)) : null);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        double seconds = (System.nanoTime() - startTime) * 1e-9;
+        listener.log("------------------------------");
+        listener.log("Files checked:  " + stats.getCheckedCount());
+        listener.log("Files matched:  " + stats.getMatchedCount());
+        listener.log("Files copied:   " + stats.getRenamedCount());
+        listener.log("Files skipped:  " + getSkippedCount());
+        listener.log("File errors:    " + stats.getErrorCount());
+        listener.log(String.format("Bytes copied:   %d (%.1f MB/s)", getByteCount(),
+                (seconds > 0) ? getByteCount() / seconds * 1e-6 : 0.0));
+        return stats;
+    }
+
+    private String getLabel(Path dir) {
+        if (settings.isAbsDirs()) {
+            return dir.toAbsolutePath().toString();
+        }
+        Path name = dir.getFileName();
+        return (name != null) ? name.toString() : dir.toString();
+    }
+
+    private static IOException getResult(Future<IOException> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new IOException(e);
+        } catch (ExecutionException e) {
+            return new IOException(e.getCause());
+        }
+    }
+
+    private void report(Path file, Path target, IOException error) {
+        Path dir = file.getParent();
+        String name = file.getFileName().toString();
+        String newName = target.getFileName().toString();
+        if (settings.isDryRun()) {
+            if (settings.isVerbose())
+                listener.fileProcessed(dir, name, newName, FileStatus.Matched);
+        } else if (error instanceof AlreadyCopiedException) {
+            skippedCount.increment();
+            if (settings.isVerbose())
+                listener.log("   skipping " + name + " -> " + newName + " (already copied)");
+        } else if (error instanceof FileAlreadyExistsException) {
+            stats.conflictCount.increment();
+            listener.fileProcessed(dir, name, newName, FileStatus.Conflict);
+        } else if (error != null) {
+            stats.errorCount.increment();
+            listener.fileProcessed(dir, name, newName, FileStatus.Error);
+            listener.log("       (" + error + ")");
+        } else {
+            stats.renamedCount.increment();
+            if (settings.isVerbose())
+                listener.fileProcessed(dir, name, newName, FileStatus.Renamed);
+        }
+    }
+
+    /**
+     * Signals that the target exists with the same size (and checksum, if
+     * verification is on) as the source file.
+     */
+    private static class AlreadyCopiedException extends FileAlreadyExistsException {
+        private static final long serialVersionUID = 1L;
+
+        AlreadyCopiedException(Path target) {
+            super(target.toString());
+        }
+    }
+
+    /**
+     * Copies a single file, unless the target exists.
+     * @return {@code null} if the file was copied, the exception otherwise
+     * ({@link AlreadyCopiedException} if the target exists with the same contents)
+     */
+    private IOException ingest(Path file, Path target) {
+        Path part = target.resolveSibling(target.getFileName() + ".part");
+        try {
+            if (Files.exists(target)) {
+                boolean same = Files.size(target) == Files.size(file) && (!verify || checksum(target) == checksum(file));
+                return same ? new AlreadyCopiedException(target) : new FileAlreadyExistsException(target.toString());
+            }
+            Files.createDirectories(target.getParent());
+            long crc;
+            try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(part, StandardOpenOption.CREATE,
+                         StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                crc = verify ? copyWithChecksum(in, out) : transfer(in, out);
+                out.force(true);
+            }
+            Files.setLastModifiedTime(part, Files.getLastModifiedTime(file));
+            if (verify && checksum(part) != crc) {
+                throw new IOException("checksum mismatch after copying " + file);
+            }
+            publish(part, target);
+            return null;
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(part);
+            } catch (IOException e2) {
+                // keep the original exception
+            }
+            return e;
+        }
+    }
+
+    /**
+     * Gives the completed ".part" file its final name. Creating a hard link fails
+     * atomically if the target exists (e.g., created by another ingest in the
+     * meantime), unlike a check followed by a move. Where hard links are not
+     * supported (e.g., on FAT file systems), the file is moved without replacing
+     * an existing target.
+     */
+    private static void publish(Path part, Path target) throws IOException {
+        try {
+            Files.createLink(target, part);
+        } catch (FileAlreadyExistsException e) {
+            throw e;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            Files.move(part, target);
+            return;
+        }
+        Files.delete(part);
+    }
+
+    private long transfer(FileChannel in, FileChannel out) throws IOException {
+        long size = in.size();
+        long pos = 0;
+        while (pos < size) {
+            long n = in.transferTo(pos, size - pos, out);
+            if (n <= 0 && pos >= in.size())
+                break;      // source was truncated
+            pos += n;
+            byteCount.add(n);
+        }
+        if (pos < size) {
+            throw new IOException("source file shrank while copying (" + pos + " of " + size + " bytes)");
+        }
+        return -1;
+    }
+
+    private long copyWithChecksum(FileChannel in, FileChannel out) throws IOException {
+        ByteBuffer buf = buffers.get();
+        CRC32 crc = new CRC32();
+        long size = in.size();
+        long total = 0;
+        buf.clear();
+        while (in.read(buf) >= 0) {
+            buf.flip();
+            int n = buf.remaining();
+            total += n;
+            crc.update(buf);        // consumes the buffer
+            buf.flip();
+            while (buf.hasRemaining()) {
+                out.write(buf);
+            }
+            byteCount.add(n);
+            buf.clear();
+        }
+        if (total != size) {
+            throw new IOException("source file changed size while copying (" + total + " of " + size + " bytes)");
+        }
+        return crc.getValue();
+    }
+
+    private long checksum(Path file) throws IOException {
+        ByteBuffer buf = buffers.get();
+        CRC32 crc = new CRC32();
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            buf.clear();
+            while (in.read(buf) >= 0) {
+                buf.flip();
+                crc.update(buf);
+                buf.clear();
+            }
+        }
+        return crc.getValue();
+    }
+}
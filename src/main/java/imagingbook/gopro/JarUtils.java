@@ -31,6 +31,20 @@ public class JarUtils {
         return manifest;
     }
 
+    /**
+     * Returns the implementation version of the JAR file from which
+     * {@literal clazz} was loaded. The version is taken from the class's package,
+     * which the class loader has already read from the JAR's manifest, so this is
+     * much cheaper than {@link #getManifest(Class)}, which opens the JAR again.
+     * @param clazz A class in the JAR file of interest.
+     * @return The version or {@literal null} if unknown.
+     */
+    public static String getImplementationVersion(Class<?> clazz) {
+        Package pkg = clazz.getPackage();
+        String version = (pkg != null) ? pkg.getImplementationVersion() : null;
+        return (version != null) ? version : getImplementationVersion(getManifest(clazz));
+    }
+
     public static String getImplementationVersion(Manifest mf) {
         // Manifest mf = getJarManifest(clazz);
         if (mf == null) {
@@ -0,0 +1,37 @@
+package imagingbook.gopro;
+
+import java.awt.GraphicsEnvironment;
+
+/**
+ * The main class of renamer.jar. Decides between the command line tool and the GUI
+ * before anything else is loaded: if any arguments are given, they are passed to
+ * {@link RenamerCli}, which does not load any AWT or Swing classes, so
+ * <pre>
+ * java -jar renamer.jar --apply /data/gopro</pre>
+ * starts as fast as the JVM allows (this is checked by a unit test). Without
+ * arguments, the GUI ({@link GoProFileRenamer}) is started, unless the JVM is
+ * headless. Thus scripts can simply call {@code java -jar renamer.jar} with options.
+ */
+public class Launcher {
+
+    public static void main(String[] args) {
+        if (args.length > 0) {
+            System.exit(RenamerCli.run(args));
+        }
+        if (isHeadless()) {
+            System.err.println("No display available, please give a directory (see --help).");
+            System.exit(RenamerCli.EXIT_USAGE);
+        }
+        GoProFileRenamer.main(args);
+    }
+
+    /**
+     * Checks for a display without loading AWT if possible.
+     */
+    private static boolean isHeadless() {
+        if (Boolean.getBoolean("java.awt.headless")) {
+            return true;
+        }
+        return GraphicsEnvironment.isHeadless();
+    }
+}
@@ -0,0 +1,284 @@
+package imagingbook.gopro;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Metadata read from the header of an MP4 (ISO base media) file, as written by
+ * GoPro cameras: creation time and duration (from the 'mvhd' box) and the tracks
+ * (handler type and name from 'hdlr', sample format from 'stsd'). GoPro files
+ * contain, besides video and audio, a time code track ("GoPro TCD") and a
+ * telemetry track ("GoPro MET", sample format 'gpmd').
+ * <p>
+ * Only the top-level box headers are read (a few bytes each), the media data
+ * ('mdat') is skipped, and only the 'moov' box (typically a few hundred KB,
+ * at the end of GoPro files) is memory-mapped and parsed. Thus reading the header
+ * of a multi-GB chapter file takes a few small reads, independent of its size.
+ */
+public class Mp4Header {
+
+    // seconds from 1904-01-01 (MP4 epoch) to 1970-01-01
+    static final long EPOCH_OFFSET = 2082844800L;
+
+    /**
+     * A single track of an MP4 file.
+     */
+    public static class Track {
+        private final String handlerType;
+        private final String handlerName;
+        private final String sampleFormat;
+
+        Track(String handlerType, String handlerName, String sampleFormat) {
+            this.handlerType = handlerType;
+            this.handlerName = handlerName;
+            this.sampleFormat = sampleFormat;
+        }
+
+        /**
+         * @return the handler type, e.g., "vide", "soun", "tmcd" or "meta"
+         */
+        public String getHandlerType() {
+            return handlerType;
+        }
+
+        /**
+         * @return the handler name, e.g., "GoPro AVC" (may be empty)
+         */
+        public String getHandlerName() {
+            return handlerName;
+        }
+
+        /**
+         * @return the format of the first sample entry, e.g., "avc1", "hvc1", "mp4a" or "gpmd"
+         * ({@code null} if unknown)
+         */
+        public String getSampleFormat() {
+            return sampleFormat;
+        }
+
+        @Override
+        public String toString() {
+            return handlerName.isEmpty() ? handlerType : handlerName;
+        }
+    }
+
+    private long creationTime = -1;     // seconds since 1904-01-01
+    private long timescale = 0;
+    private long duration = 0;
+    private final List<Track> tracks = new ArrayList<>();
+
+    private Mp4Header() {
+    }
+
+    /**
+     * @return the creation time as stored in the file. GoPro cameras store
+     * their local time, thus no time zone is attached.
+     */
+    public LocalDateTime getCreationTime() {
+        return LocalDateTime.ofEpochSecond(creationTime - EPOCH_OFFSET, 0, ZoneOffset.UTC);
+    }
+
+    /**
+     * @return the duration in seconds
+     */
+    public double getDuration() {
+        return (timescale > 0) ? (double) duration / timescale : 0;
+    }
+
+    /**
+     * @return the end of the recording (creation time plus duration)
+     */
+    public LocalDateTime getEndTime() {
+        return getCreationTime().plusNanos(Math.round(getDuration() * 1e9));
+    }
+
+    public List<Track> getTracks() {
+        return Collections.unmodifiableList(tracks);
+    }
+
+    /**
+     * @return {@code true} if the file has a GoPro telemetry ('gpmd') track
+     */
+    public boolean hasTelemetry() {
+        for (Track t : tracks) {
+            if ("gpmd".equals(t.sampleFormat))
+                return true;
+        }
+        return false;
+    }
+
+    // -------------------------------------------------------------------------
+
+    /**
+     * Reads the header of an MP4 file.
+     * @param file the file
+     * @return the header information
+     * @throws IOException if the file cannot be read or has no (valid) movie header
+     */
+    public static Mp4Header read(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = ch.size();
+            ByteBuffer hdr = ByteBuffer.allocate(16);
+            long pos = 0;
+            while (pos + 8 <= fileSize) {
+                hdr.clear();
+                while (hdr.hasRemaining() && ch.read(hdr, pos + hdr.position()) > 0) {
+                    // read up to 16 bytes
+                }
+                if (hdr.position() < 8)
+                    break;
+                long size = hdr.getInt(0) & 0xFFFFFFFFL;
+                int type = hdr.getInt(4);
+                int headerSize = 8;
+                if (size == 1) {
+                    if (hdr.position() < 16)
+                        break;
+                    size = hdr.getLong(8);
+                    headerSize = 16;
+                } else if (size == 0) {
+                    size = fileSize - pos;      // box extends to the end of the file
+                }
+                if (size < headerSize || pos + size > fileSize) {
+                    throw new IOException("invalid MP4 box at offset " + pos + " in " + file);
+                }
+                if (type == fourCC("moov")) {
+                    long len = size - headerSize;
+                    if (len > Integer.MAX_VALUE)
+                        throw new IOException("moov box too large in " + file);
+                    MappedByteBuffer moov = ch.map(FileChannel.MapMode.READ_ONLY, pos + headerSize, len);
+                    Mp4Header header = new Mp4Header();
+                    header.parseMoov(moov.order(ByteOrder.BIG_ENDIAN));
+                    if (header.creationTime < 0)
+                        throw new IOException("no movie header (mvhd) in " + file);
+                    return header;
+                }
+                pos += size;    // skip this box (e.g., 'mdat') without reading it
+            }
+        }
+        throw new IOException("no moov box in " + file);
+    }
+
+    static int fourCC(String s) {
+        return (s.charAt(0) << 24) | (s.charAt(1) << 16) | (s.charAt(2) << 8) | s.charAt(3);
+    }
+
+    private static String fourCC(int t) {
+        char[] c = {(char) ((t >>> 24) & 0xFF), (char) ((t >>> 16) & 0xFF), (char) ((t >>> 8) & 0xFF), (char) (t & 0xFF)};
+        return new String(c);
+    }
+
+    private static final int MVHD = fourCC("mvhd"), TRAK = fourCC("trak"), MDIA = fourCC("mdia"),
+            MINF = fourCC("minf"), STBL = fourCC("stbl"), HDLR = fourCC("hdlr"), STSD = fourCC("stsd");
+
+    private void parseMoov(ByteBuffer buf) throws IOException {
+        int pos = 0;
+        while ((pos = nextBox(buf, pos)) >= 0) {
+            int type = buf.getInt(pos + 4);
+            int start = pos + 8;
+            int end = pos + buf.getInt(pos);
+            if (type == MVHD) {
+                parseMvhd(buf, start, end);
+            } else if (type == TRAK) {
+                String[] info = new String[3];      // handler type, handler name, sample format
+                parseTrak(buf.duplicate(), start, end, info);
+                tracks.add(new Track(info[0], (info[1] != null) ? info[1] : "", info[2]));
+            }
+            pos = end;
+        }
+    }
+
+    private void parseMvhd(ByteBuffer buf, int p, int end) throws IOException {
+        // version/flags (4), then creation and modification time, timescale, duration:
+        // 4 + 4 + 4 + 4 bytes (version 0) or 8 + 8 + 4 + 8 bytes (version 1)
+        int version = (p < end) ? buf.get(p) & 0xFF : -1;
+        if (end - p < ((version == 1) ? 32 : 20)) {
+            throw new IOException("invalid mvhd box at " + (p - 8));
+        }
+        if (version == 1) {
+            creationTime = buf.getLong(p + 4);
+            timescale = buf.getInt(p + 20) & 0xFFFFFFFFL;
+            duration = buf.getLong(p + 24);
+        } else {
+            creationTime = buf.getInt(p + 4) & 0xFFFFFFFFL;
+            timescale = buf.getInt(p + 12) & 0xFFFFFFFFL;
+            duration = buf.getInt(p + 16) & 0xFFFFFFFFL;
+        }
+    }
+
+    /**
+     * Walks the boxes of a track (trak/mdia/minf/stbl) between positions start and end.
+     */
+    private static void parseTrak(ByteBuffer buf, int start, int end, String[] info) throws IOException {
+        buf.limit(end);
+        int pos = start;
+        while ((pos = nextBox(buf, pos)) >= 0) {
+            int type = buf.getInt(pos + 4);
+            int boxEnd = pos + buf.getInt(pos);
+            if (type == MDIA || type == MINF || type == STBL) {
+                parseTrak(buf, pos + 8, boxEnd, info);
+                buf.limit(end);
+            } else if (type == HDLR) {
+                // version/flags (4), pre_defined (4), handler_type (4), reserved (12), name
+                if (boxEnd - pos < 32)
+                    throw new IOException("invalid hdlr box at " + pos);
+                info[0] = fourCC(buf.getInt(pos + 16));
+                info[1] = readName(buf, pos + 32, boxEnd);
+            } else if (type == STSD) {
+                // version/flags (4), entry_count (4), first entry: size (4), format (4)
+                if (boxEnd - pos < 16)
+                    throw new IOException("invalid stsd box at " + pos);
+                if (buf.getInt(pos + 12) > 0) {
+                    if (boxEnd - pos < 24)
+                        throw new IOException("invalid stsd box at " + pos);
+                    info[2] = fourCC(buf.getInt(pos + 20));
+                }
+            }
+            pos = boxEnd;
+        }
+    }
+
+    /**
+     * Returns the position of the box at {@code pos}, or -1 if there is no
+     * complete box left before the buffer's limit.
+     */
+    private static int nextBox(ByteBuffer buf, int pos) throws IOException {
+        if (pos + 8 > buf.limit())
+            return -1;
+        long size = buf.getInt(pos) & 0xFFFFFFFFL;
+        if (size < 8 || pos + size > buf.limit())
+            throw new IOException("invalid MP4 box inside moov at " + pos);
+        return pos;
+    }
+
+    /**
+     * Reads a handler name, either a null-terminated (ISO) or a counted (QuickTime) string.
+     */
+    private static String readName(ByteBuffer buf, int start, int end) {
+        if (start >= end)
+            return "";
+        int len = buf.get(start) & 0xFF;
+        if (len == end - start - 1) {   // counted string
+            start++;
+        } else {
+            len = 0;
+            while (start + len < end && buf.get(start + len) != 0)
+                len++;
+        }
+        byte[] b = new byte[Math.min(len, end - start)];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = buf.get(start + i);
+        }
+        return new String(b, StandardCharsets.UTF_8).trim();
+    }
+}
@@ -0,0 +1,267 @@
+package imagingbook.gopro;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Processes several start directories (roots), e.g., a few card readers and archive
+ * disks at once, with one {@link RenamerEngine} per root. Roots are grouped by their
+ * device (i.e., their {@link FileStore}): roots on different devices are processed
+ * fully in parallel, while at most {@link RenamerSettings#getDeviceConcurrency()}
+ * roots on the same device are processed at the same time, so that a single disk
+ * or card reader is not slowed down by competing random accesses. Thus the total
+ * time approaches that of the slowest device rather than the sum of all roots.
+ * Within a root, {@link RenamerSettings#getParallelism()} and
+ * {@link RenamerSettings#getMoveConcurrency()} apply as usual.
+ * <p>
+ * The listener receives the events of all roots in the order of the roots, and
+ * never concurrently: the events of the first unfinished root are passed on as they
+ * occur, the events of the following roots are buffered until all previous roots
+ * are finished. Each root's run ends with its own summary, followed by a summary
+ * of all roots. A report file (see {@link RenamerSettings#setReportFile(Path)}) is
+ * shared by all roots, with the records of different roots interleaved.
+ * Journals, directory caches and metrics (file or JMX) are bound to a single
+ * engine run and cannot be used with several roots. Roots inside another root are skipped in recursive mode.
+ */
+public class MultiRootRenamer {
+
+    private final RenamerSettings settings;
+    private final RenamerListener listener;
+    private final List<Path> roots = new ArrayList<>();
+    private final List<RenamerEngine> engines = new ArrayList<>();
+    private final List<RootListener> outputs = new ArrayList<>();
+    private final long[] rootNanos;
+    private final Object lock = new Object();
+    private Function<Path, Object> deviceOf = MultiRootRenamer::getFileStore;
+    private volatile boolean cancelRequested = false;
+
+    /**
+     * Creates a renamer for the given roots. All other settings are taken from
+     * {@code settings}, except the start directory.
+     * @param settings the settings for all roots
+     * @param listener receives the events of all roots
+     * @param roots the start directories
+     */
+    public MultiRootRenamer(RenamerSettings settings, RenamerListener listener, List<Path> roots) {
+        if (settings.getJournalFile() != null || settings.getCacheFile() != null) {
+            throw new IllegalArgumentException("journals and directory caches cannot be used with several roots");
+        }
+        if (settings.getMetricsFile() != null || settings.isJmxEnabled()) {
+            throw new IllegalArgumentException("metrics cannot be used with several roots");
+        }
+        this.settings = settings;
+        this.listener = listener;
+        for (Path root : roots) {
+            Path r = root.toAbsolutePath().normalize();
+            if (!Files.isDirectory(r)) {
+                throw new IllegalArgumentException("Path is not a directory: " + root);
+            }
+            if (!this.roots.contains(r))
+                this.roots.add(r);
+        }
+        if (settings.isRecursive()) {
+            this.roots.removeIf(r -> this.roots.stream().anyMatch(o -> !o.equals(r) && r.startsWith(o)));
+        }
+        for (Path root : this.roots) {
+            RootListener out = new RootListener();
+            outputs.add(out);
+            engines.add(new RenamerEngine(settings.copy().setStartDir(root).setReportFile(null), out));
+        }
+        rootNanos = new long[this.roots.size()];
+    }
+
+    /**
+     * Replaces the mapping of roots to devices (for testing).
+     */
+    void setDeviceResolver(Function<Path, Object> deviceOf) {
+        this.deviceOf = deviceOf;
+    }
+
+    private static Object getFileStore(Path root) {
+        try {
+            return Files.getFileStore(root);
+        } catch (IOException e) {
+            return root;        // unknown device, processed on its own
+        }
+    }
+
+    /**
+     * @return the roots to be processed (absolute, without nested roots)
+     */
+    public List<Path> getRoots() {
+        return Collections.unmodifiableList(roots);
+    }
+
+    /**
+     * Requests all roots to stop as soon as possible. May be called from any thread.
+     */
+    public void cancel() {
+        cancelRequested = true;
+        for (RenamerEngine engine : engines)
+            engine.cancel();
+    }
+
+    /**
+     * Returns the (live) statistics of a single root.
+     * @param k the index of the root (see {@link #getRoots()})
+     * @return the statistics of the root
+     */
+    public RenamerStatistics getStatistics(int k) {
+        return engines.get(k).getStatistics();
+    }
+
+    /**
+     * Returns the sum of the statistics of all roots, which may be called from
+     * any thread while running.
+     * @return the total statistics
+     */
+    public RenamerStatistics getStatistics() {
+        RenamerStatistics total = new RenamerStatistics();
+        for (RenamerEngine engine : engines)
+            total.add(engine.getStatistics());
+        total.cancelled |= cancelRequested;
+        return total;
+    }
+
+    /**
+     * Processes all roots. A renamer instance performs a single run.
+     * @return the total statistics of all roots
+     */
+    public RenamerStatistics run() {
+        Map<Object, List<Integer>> devices = new LinkedHashMap<>();
+        for (int k = 0; k < roots.size(); k++) {
+            devices.computeIfAbsent(deviceOf.apply(roots.get(k)), d -> new ArrayList<>()).add(k);
+        }
+        listener.log(String.format("Processing %d roots on %d devices ...", roots.size(), devices.size()));
+
+        ReportWriter report = null;
+        if (settings.getReportFile() != null) {
+            try {
+                report = ReportWriter.open(settings.getReportFile());
+            } catch (IOException e) {
+                listener.log("ERROR: could not create report file " + settings.getReportFile() + " (" + e + ")");
+            }
+        }
+
+        List<Future<?>> futures = new ArrayList<>(Collections.nCopies(roots.size(), null));
+        List<ExecutorService> pools = new ArrayList<>();
+        long startNanos = System.nanoTime();
+        for (List<Integer> ks : devices.values()) {
+            ExecutorService pool = Executors.newFixedThreadPool(Math.min(ks.size(), settings.getDeviceConcurrency()));
+            pools.add(pool);
+            for (int k : ks) {
+                RenamerEngine engine = engines.get(k);
+                if (report != null)
+                    engine.setReport(report);
+                futures.set(k, pool.submit(() -> {
+                    long t = System.nanoTime();
+                    engine.run();
+                    rootNanos[k] = System.nanoTime() - t;
+                }));
+            }
+        }
+        try {
+            for (int k = 0; k < roots.size(); k++) {
+                outputs.get(k).goLive();
+                try {
+                    futures.get(k).get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    cancel();
+                } catch (ExecutionException e) {
+                    synchronized (lock) {
+                        listener.log("ERROR: processing " + roots.get(k) + " failed (" + e.getCause() + ")");
+                    }
+                    engines.get(k).getStatistics().errorCount.increment();
+                }
+            }
+        } finally {
+            for (ExecutorService pool : pools)
+                pool.shutdownNow();
+        }
+        if (report != null) {
+            try {
+                report.close();
+            } catch (IOException e) {
+                listener.log("ERROR: could not write report file " + settings.getReportFile() + " (" + e + ")");
+            }
+        }
+        RenamerStatistics total = getStatistics();
+        logSummary(total, System.nanoTime() - startNanos);
+        return total;
+    }
+
+    private void logSummary(RenamerStatistics total, long nanos) {
+        listener.log("==============================");
+        for (int k = 0; k < roots.size(); k++) {
+            RenamerStatistics s = engines.get(k).getStatistics();
+            listener.log(String.format("%s: %d checked, %d matched, %d renamed, %d errors (%.1f s)",
+                    roots.get(k), s.getCheckedCount(), s.getMatchedCount(), s.getRenamedCount(),
+                    s.getErrorCount(), rootNanos[k] * 1e-9));
+        }
+        listener.log("Total files checked:  " + total.getCheckedCount());
+        listener.log("Total files matched:  " + total.getMatchedCount());
+        listener.log("Total name conflicts: " + total.getConflictCount());
+        listener.log("Total files renamed:  " + total.getRenamedCount());
+        listener.log("Total errors:         " + total.getErrorCount());
+        listener.log(String.format("Total time:           %.1f s", nanos * 1e-9));
+    }
+
+    /**
+     * Passes the events of a single root on to the listener, or buffers them
+     * until all previous roots are finished. All listener calls are made
+     * while holding the common lock, so they are never concurrent.
+     */
+    private class RootListener implements RenamerListener {
+
+        private final BufferedListener buffer = new BufferedListener();
+        private boolean live = false;       // guarded by lock
+
+        void goLive() {
+            synchronized (lock) {
+                buffer.replay(listener);
+                live = true;
+            }
+        }
+
+        @Override
+        public void log(String msg) {
+            synchronized (lock) {
+                (live ? listener : buffer).log(msg);
+            }
+        }
+
+        @Override
+        public void directoryEntered(Path dir, String label) {
+            synchronized (lock) {
+                (live ? listener : buffer).directoryEntered(dir, label);
+            }
+        }
+
+        @Override
+        public void fileProcessed(Path dir, String name, String newName, FileStatus status) {
+            synchronized (lock) {
+                (live ? listener : buffer).fileProcessed(dir, name, newName, status);
+            }
+        }
+
+        @Override
+        public void fileProcessed(Path dir, String name, String newName, FileStatus status, long size, long nanos) {
+            synchronized (lock) {
+                (live ? listener : buffer).fileProcessed(dir, name, newName, status, size, nanos);
+            }
+        }
+    }
+}
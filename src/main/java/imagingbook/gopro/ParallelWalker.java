@@ -0,0 +1,147 @@
+package imagingbook.gopro;
+
+import java.nio.file.FileVisitResult;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Walks a directory tree in parallel, processing each directory in a separate
+ * {@link ForkJoinPool} task. Each directory gets its own visitor, which sends
+ * its output to a {@link BufferedListener}. The buffered output is passed on
+ * to the target listener in the same order as with the sequential
+ * {@link DirectoryWalker}, i.e., directories in pre-order and the output of each
+ * directory in one piece. Output is passed on as soon as all preceding
+ * directories are done, thus only the output of directories waiting for some
+ * (slow) predecessor is held in memory. Since the output order is kept by the
+ * tree of nodes, tasks never wait for each other: each task forks the tasks of
+ * its sub-directories and completes when all of them are complete (see
+ * {@link CountedCompleter}), so no worker thread blocks in a join and the stack
+ * depth does not grow with the depth of the directory tree.
+ */
+class ParallelWalker {
+
+    /**
+     * Creates the visitor for a single directory.
+     */
+    interface VisitorFactory {
+        DirectoryWalker.Visitor newVisitor(BufferedListener out);
+    }
+
+    /**
+     * A node of the directory tree, holding the buffered output of one directory.
+     */
+    private static class Node {
+        BufferedListener buffer = new BufferedListener();
+        Node[] children = null;
+        volatile boolean done = false;
+    }
+
+    private final DirectoryWalker lister;
+    private final int parallelism;
+    private final RenamerListener target;
+    private final Deque<Node> pending = new ArrayDeque<>();     // nodes still to be output, guarded by itself
+    private volatile boolean terminated = false;
+
+    /**
+     * Creates a new parallel walker.
+     * @param lister used for listing single directories
+     * @param parallelism the number of worker threads
+     * @param target receives the ordered output of all directory visitors
+     */
+    ParallelWalker(DirectoryWalker lister, int parallelism, RenamerListener target) {
+        this.lister = lister;
+        this.parallelism = parallelism;
+        this.target = target;
+    }
+
+    /**
+     * Walks the directory tree starting at the given directory.
+     * @param start the start directory
+     * @param factory creates a new visitor for every directory
+     * @return {@code false} if the walk was terminated by some visitor
+     */
+    boolean walk(Path start, VisitorFactory factory) {
+        lister.start(start);
+        Node root = new Node();
+        pending.push(root);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new DirectoryTask(null, start, root, factory));
+        } finally {
+            pool.shutdown();
+        }
+        return !terminated;
+    }
+
+    private class DirectoryTask extends CountedCompleter<Void> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+        private final Node node;
+        private final VisitorFactory factory;
+
+        DirectoryTask(DirectoryTask parent, Path dir, Node node, VisitorFactory factory) {
+            super(parent);
+            this.dir = dir;
+            this.node = node;
+            this.factory = factory;
+        }
+
+        @Override
+        public void compute() {
+            List<Path> subdirs = new ArrayList<>();
+            try {
+                if (!terminated) {
+                    DirectoryWalker.Visitor visitor = factory.newVisitor(node.buffer);
+                    FileVisitResult result = lister.visitDirectory(dir, visitor, subdirs);
+                    if (result == FileVisitResult.TERMINATE) {
+                        terminated = true;
+                    }
+                    if (result != FileVisitResult.CONTINUE) {
+                        subdirs.clear();
+                    }
+                }
+            } finally {
+                Node[] children = new Node[subdirs.size()];
+                for (int i = 0; i < children.length; i++) {
+                    children[i] = new Node();
+                }
+                node.children = children;
+                node.done = true;
+                flush();
+            }
+
+            setPendingCount(subdirs.size());
+            for (int i = 0; i < subdirs.size(); i++) {
+                new DirectoryTask(this, subdirs.get(i), node.children[i], factory).fork();
+            }
+            tryComplete();      // completes this task once all sub-directory tasks are complete
+        }
+    }
+
+    /**
+     * Passes the output of all completed directories to the target listener,
+     * in pre-order, up to the first directory not completed yet.
+     */
+    private void flush() {
+        synchronized (pending) {
+            while (!pending.isEmpty()) {
+                Node node = pending.peek();
+                if (!node.done)
+                    break;
+                pending.pop();
+                node.buffer.replay(target);
+                node.buffer = null;
+                for (int i = node.children.length - 1; i >= 0; i--) {
+                    pending.push(node.children[i]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package imagingbook.gopro;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Lists the recording times of all GoPro video files (.MP4, original or renamed)
+ * in the start directory (and its sub-directories, if recursive), read from their
+ * MP4 headers (see {@link Mp4Header}), and checks them for consistency with the
+ * file names. Within each directory, videos (ordered by video number) and their
+ * chapters (ordered by chapter number) are expected to be recorded in the same
+ * order. A video recorded before its predecessor usually means that the camera's
+ * clock was reset.
+ */
+public class RecordingTimeline {
+
+    private static final DateTimeFormatter timeFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final RenamerSettings settings;
+    private final RenamerListener listener;
+    private final RenamerStatistics stats = new RenamerStatistics();
+
+    public RecordingTimeline(RenamerSettings settings, RenamerListener listener) {
+        this.settings = settings;
+        this.listener = listener;
+    }
+
+    /**
+     * @return the number of inconsistencies found
+     */
+    public int getWarningCount() {
+        return (int) stats.getWarningCount();
+    }
+
+    /**
+     * Lists and checks all video files.
+     * @return the statistics of this run (videos are counted as matched, inconsistencies
+     * as warnings, files whose headers cannot be read as errors)
+     */
+    public RenamerStatistics run() {
+        DirectoryWalker walker = new DirectoryWalker(settings.isRecursive(), settings.getSymlinkPolicy());
+        walker.walk(settings.getStartDir(), new DirectoryWalker.Visitor() {
+            // video number -> chapter number -> file name, for the current directory:
+            private final Map<String, Map<String, String>> videos = new TreeMap<>();
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir) {
+                stats.directoryCount.increment();
+                videos.clear();
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                stats.checkedCount.increment();
+                String name = file.getFileName().toString();
+                int offset = FileNameScanner.matchOriginal(name) ? 0 : FileNameScanner.matchRenamed(name) ? 7 : -1;
+                if (offset >= 0 && name.regionMatches(true, offset + 8, ".MP4", 0, 4) && name.length() == offset + 12) {
+                    stats.matchedCount.increment();
+                    videos.computeIfAbsent(name.substring(offset + 4, offset + 8), v -> new TreeMap<>())
+                            .put(name.substring(offset + 2, offset + 4), name);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitFiles(Path dir) {
+                if (!videos.isEmpty()) {
+                    listener.directoryEntered(dir, getLabel(dir));
+                    checkDirectory(dir, videos);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        listener.log("------------------------------");
+        listener.log("Videos checked:    " + stats.getMatchedCount());
+        listener.log("Unreadable videos: " + stats.getErrorCount());
+        listener.log("Timeline warnings: " + stats.getWarningCount());
+        return stats;
+    }
+
+    private void checkDirectory(Path dir, Map<String, Map<String, String>> videos) {
+        LocalDateTime previousStart = null;
+        String previousVideo = null;
+        for (Map.Entry<String, Map<String, String>> video : videos.entrySet()) {
+            LocalDateTime videoStart = null;
+            LocalDateTime chapterStart = null;
+            String chapterName = null;
+            for (String name : video.getValue().values()) {
+                Mp4Header header;
+                try {
+                    header = Mp4Header.read(dir.resolve(name));
+                } catch (IOException e) {
+                    stats.errorCount.increment();
+                    listener.log("ERROR: could not read MP4 header of " + name + " (" + e.getMessage() + ")");
+                    continue;
+                }
+                LocalDateTime start = header.getCreationTime();
+                listener.log(String.format("   %s  %s  %8.1f s  %s", name, start.format(timeFormat),
+                        header.getDuration(), header.getTracks()));
+                if (chapterStart != null && start.isBefore(chapterStart)) {
+                    warn("chapter " + name + " was recorded before " + chapterName);
+                }
+                if (videoStart == null)
+                    videoStart = start;
+                chapterStart = start;
+                chapterName = name;
+            }
+            if (videoStart != null) {
+                if (previousStart != null && videoStart.isBefore(previousStart)) {
+                    warn("video " + video.getKey() + " was recorded " +
+                            Duration.between(videoStart, previousStart).getSeconds() + " s before video " +
+                            previousVideo + ", camera clock reset?");
+                }
+                previousStart = videoStart;
+                previousVideo = video.getKey();
+            }
+        }
+    }
+
+    private String getLabel(Path dir) {
+        if (settings.isAbsDirs()) {
+            return dir.toAbsolutePath().toString();
+        }
+        Path name = dir.getFileName();
+        return (name != null) ? name.toString() : dir.toString();
+    }
+
+    private void warn(String msg) {
+        stats.warningCount.increment();
+        listener.log("WARNING: " + msg);
+    }
+}
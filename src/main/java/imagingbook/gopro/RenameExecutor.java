@@ -0,0 +1,275 @@
+package imagingbook.gopro;
+
+import imagingbook.gopro.RenamePlan.State;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Executes the planned moves of a {@link RenamePlan}, with up to a given number
+ * of moves in flight at the same time. This pays off on network file systems
+ * (SMB, NFS), where every move is a server round trip. Moves are performed by
+ * virtual threads if available (Java 21+), otherwise by a fixed thread pool.
+ * <p>
+ * Results are reported in plan order by the calling thread, thus the engine's
+ * listener is never called concurrently and its output is the same as with
+ * sequential execution. A move whose target is the source of an earlier move
+ * of the same directory (a chain, see {@link RenamePlan.DirectoryPlan}) is only
+ * started after the earlier move is finished.
+ * Moves failing with a transient error (any {@link IOException} except those
+ * indicating a missing, existing or inaccessible file) are retried with
+ * exponential backoff. Before a retry, the move is checked for having succeeded
+ * after all (e.g., if only the server's reply was lost).
+ */
+class RenameExecutor {
+
+    /**
+     * Receives the result of each move, in plan order.
+     */
+    interface Reporter {
+        /**
+         * @param d the directory index
+         * @param i the plan index
+         * @param error {@code null} if the move succeeded, the last exception otherwise
+         * @param nanos the duration of the move, including retries
+         * @throws IOException to stop the execution
+         */
+        void report(int d, int i, IOException error, long nanos) throws IOException;
+    }
+
+    static final long DEFAULT_BACKOFF_MS = 50;
+
+    private static final byte PENDING = 0, FINISHED = 1;
+
+    private final FileMover mover;
+    private final int maxInFlight;
+    private final int maxRetries;
+    private final long backoffMs;
+
+    private final Object lock = new Object();
+    private int inFlight = 0;           // guarded by lock
+    private byte[] status;              // guarded by lock
+    private IOException[] errors;       // guarded by lock
+    private long[] durations;           // guarded by lock
+
+    /**
+     * @param mover performs the moves
+     * @param maxInFlight the maximum number of concurrent moves (1 = sequential, in the calling thread)
+     * @param maxRetries the maximum number of retries of a move failing with a transient error
+     * @param backoffMs the delay before the first retry, doubled for every further retry
+     */
+    RenameExecutor(FileMover mover, int maxInFlight, int maxRetries, long backoffMs) {
+        this.mover = mover;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.maxRetries = maxRetries;
+        this.backoffMs = backoffMs;
+    }
+
+    /**
+     * Executes all entries of the given plan in state {@link State#Planned}.
+     * Returns after all started moves are finished and reported.
+     * @param plan the plan to execute (only read)
+     * @param cancelled checked before each move, no more moves are started once it returns {@code true}
+     * (moves not started are not reported)
+     * @param reporter receives the results
+     * @throws IOException if thrown by the reporter
+     */
+    void execute(RenamePlan plan, BooleanSupplier cancelled, Reporter reporter) throws IOException {
+        // collect the moves and their dependencies (positions in the todo list):
+        int n = plan.getPlannedCount();
+        int[] todo = new int[n];
+        int[] todoDir = new int[n];
+        int[] depends = new int[n];
+        int count = 0;
+        for (int d = 0; d < plan.getDirectoryCount(); d++) {
+            Map<String, Integer> sources = null;
+            for (int i = plan.getDirectoryStart(d); i < plan.getDirectoryEnd(d); i++) {
+                if (plan.getState(i) != State.Planned)
+                    continue;
+                if (sources == null)
+                    sources = new HashMap<>();
+                Integer j = sources.get(plan.getTarget(i));
+                depends[count] = (j != null) ? j : -1;
+                sources.put(plan.getSource(i), count);
+                todo[count] = i;
+                todoDir[count] = d;
+                count++;
+            }
+        }
+
+        status = new byte[n];
+        errors = new IOException[n];
+        durations = new long[n];
+        ExecutorService pool = (maxInFlight > 1) ? newExecutor(maxInFlight) : null;
+        int submitted = 0;
+        int reported = 0;
+        try {
+            submit:
+            for (int k = 0; k < n; k++) {
+                for (;;) {
+                    reported = report(todo, todoDir, reported, submitted, reporter);
+                    synchronized (lock) {
+                        if (inFlight < maxInFlight && (depends[k] < 0 || status[depends[k]] != PENDING)) {
+                            inFlight++;
+                            break;
+                        }
+                        try {
+                            lock.wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            break submit;
+                        }
+                    }
+                }
+                if (cancelled.getAsBoolean()) {     // checked after reporting, which may cancel
+                    synchronized (lock) {
+                        inFlight--;
+                    }
+                    break;
+                }
+                int i = todo[k];
+                Path dir = plan.getDirectory(todoDir[k]);
+                Runnable task = newTask(k, dir.resolve(plan.getSource(i)), dir.resolve(plan.getTarget(i)));
+                submitted++;
+                if (pool != null)
+                    pool.execute(task);
+                else
+                    task.run();
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+            awaitIdle();
+        }
+        report(todo, todoDir, reported, submitted, reporter);
+    }
+
+    /**
+     * Reports all finished moves from position {@code reported} up to the first unfinished move.
+     * @return the position of the first move not reported
+     */
+    private int report(int[] todo, int[] todoDir, int reported, int submitted, Reporter reporter) throws IOException {
+        while (reported < submitted) {
+            IOException error;
+            long nanos;
+            synchronized (lock) {
+                if (status[reported] == PENDING)
+                    break;
+                error = errors[reported];
+                nanos = durations[reported];
+            }
+            reporter.report(todoDir[reported], todo[reported], error, nanos);
+            reported++;
+        }
+        return reported;
+    }
+
+    private Runnable newTask(int k, Path source, Path target) {
+        return () -> {
+            IOException error = new IOException("move not performed");
+            long start = System.nanoTime();
+            try {
+                error = move(source, target);
+            } catch (RuntimeException e) {
+                error = new IOException(e);
+            } finally {
+                synchronized (lock) {
+                    errors[k] = error;
+                    durations[k] = System.nanoTime() - start;
+                    status[k] = FINISHED;
+                    inFlight--;
+                    lock.notifyAll();
+                }
+            }
+        };
+    }
+
+    private void awaitIdle() {
+        boolean interrupted = false;
+        synchronized (lock) {
+            while (inFlight > 0) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Performs a single move, with retries.
+     * @return {@code null} if successful, the last exception otherwise
+     */
+    IOException move(Path source, Path target) {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                mover.move(source, target);
+                return null;
+            } catch (IOException e) {
+                if (attempt > 0 && isMoved(source, target)) {
+                    return null;    // some earlier attempt succeeded after all
+                }
+                if (attempt >= maxRetries || !isTransient(e)) {
+                    return e;
+                }
+                try {
+                    Thread.sleep(backoffMs << attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return e;
+                }
+            }
+        }
+    }
+
+    static boolean isTransient(IOException e) {
+        return !(e instanceof NoSuchFileException
+                || e instanceof FileAlreadyExistsException
+                || e instanceof AccessDeniedException
+                || e instanceof NotDirectoryException
+                || e instanceof DirectoryNotEmptyException);
+    }
+
+    /**
+     * Checks if a file was moved, i.e., the target exists and the source does not.
+     */
+    static boolean isMoved(Path source, Path target) {
+        return Files.exists(target, LinkOption.NOFOLLOW_LINKS)
+                && !Files.exists(source, LinkOption.NOFOLLOW_LINKS);
+    }
+
+    /**
+     * Creates an executor using virtual threads (Java 21+, looked up by reflection
+     * since this code targets Java 8) or else a fixed pool of daemon threads.
+     */
+    static ExecutorService newExecutor(int threads) {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "renamer-move");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package imagingbook.gopro;
+
+import imagingbook.gopro.RenamePlan.State;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An append-only log of the moves performed by a {@link RenamerEngine}, which
+ * allows an interrupted run to be resumed and a run to be undone without
+ * scanning the directory tree again (see {@link RenamerEngine#resume(Path)}
+ * and {@link RenamerEngine#undo(Path)}).
+ * <p>
+ * The journal is a UTF-8 text file with one record per line. It starts with
+ * all planned moves (grouped by directory), which are forced to disk before
+ * the first file is moved. Completed and failed moves are then appended as
+ * short records referring to the index of the planned move. These records are
+ * group-committed, i.e., collected in memory and written and forced to disk
+ * together once the group is full or its oldest record exceeds a maximum delay,
+ * so a single fsync is shared by many moves. The delay is also enforced by a
+ * background thread, so records are committed in time even if no further records
+ * arrive (e.g., while the last move in flight hangs on a network drive). A move whose record was lost in a
+ * crash is recognized later by checking the file system (source gone, target
+ * present). An incomplete last line (torn write) is ignored when reading.
+ * <pre>
+ * #gopro-renamer-journal 1
+ * D &lt;directory&gt;
+ * P &lt;source&gt; &lt;target&gt; &lt;group&gt;   (chapter group, -1 if none)
+ * C &lt;index&gt;     (completed)
+ * F &lt;index&gt;     (failed)
+ * E               (run finished)</pre>
+ * Fields are separated by tabs, tabs and line breaks in names are escaped.
+ */
+class RenameJournal implements Closeable {
+
+    static final String HEADER = "#gopro-renamer-journal 1";
+
+    static final int DEFAULT_GROUP_SIZE = 512;
+    static final long DEFAULT_MAX_DELAY_MS = 200;
+
+    private final FileChannel channel;
+    private final int[] index;          // journal index of each plan entry (-1 if not journaled)
+    private final int groupSize;
+    private final long maxDelayNanos;
+
+    private final StringBuilder group = new StringBuilder();    // guarded by this
+    private int groupCount = 0;
+    private long groupStart = 0;
+    private long commitCount = 0;
+    private IOException flushError = null;
+    private final ScheduledExecutorService flusher;     // commits groups exceeding the delay
+
+    private RenameJournal(FileChannel channel, int[] index, int groupSize, long maxDelayMs) {
+        this.channel = channel;
+        this.index = index;
+        this.groupSize = groupSize;
+        this.maxDelayNanos = maxDelayMs * 1000000L;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "journal-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1, maxDelayMs / 4);
+        flusher.scheduleWithFixedDelay(this::flushDue, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Commits the pending records if the oldest exceeds the maximum delay
+     * (called periodically by the flusher thread).
+     */
+    private synchronized void flushDue() {
+        if (groupCount > 0 && flushError == null && System.nanoTime() - groupStart >= maxDelayNanos) {
+            try {
+                commit();
+            } catch (IOException e) {
+                flushError = e;     // reported by the next record or commit
+            }
+        }
+    }
+
+    /**
+     * Creates a new journal file and writes all planned entries of the given plan.
+     * Fails if the file exists already.
+     * @param file the journal file
+     * @param plan the plan to be executed
+     * @return the new journal
+     * @throws IOException if the journal cannot be written
+     */
+    static RenameJournal create(Path file, RenamePlan plan) throws IOException {
+        return create(file, plan, DEFAULT_GROUP_SIZE, DEFAULT_MAX_DELAY_MS);
+    }
+
+    static RenameJournal create(Path file, RenamePlan plan, int groupSize, long maxDelayMs) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        int[] index = new int[plan.size()];
+        Arrays.fill(index, -1);
+        StringBuilder sb = new StringBuilder(HEADER).append('\n');
+        int count = 0;
+        for (int d = 0; d < plan.getDirectoryCount(); d++) {
+            boolean written = false;
+            for (int i = plan.getDirectoryStart(d); i < plan.getDirectoryEnd(d); i++) {
+                if (plan.getState(i) != State.Planned)
+                    continue;
+                if (!written) {
+                    sb.append("D\t");
+                    escape(plan.getDirectory(d).toAbsolutePath().toString(), sb).append('\n');
+                    written = true;
+                }
+                sb.append("P\t");
+                escape(plan.getSource(i), sb).append('\t');
+                escape(plan.getTarget(i), sb).append('\t').append(plan.getGroup(i)).append('\n');
+                index[i] = count++;
+            }
+        }
+        RenameJournal journal = new RenameJournal(channel, index, groupSize, maxDelayMs);
+        try {
+            journal.write(sb);
+            channel.force(false);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return journal;
+    }
+
+    /**
+     * Opens an existing journal for appending, to resume the run recorded in it.
+     * The indexes of the given plan (obtained from {@link #read(Path)}) are those
+     * of the journal.
+     * @param file the journal file
+     * @param plan the plan read from the journal
+     * @return the journal
+     * @throws IOException if the journal cannot be opened
+     */
+    static RenameJournal append(Path file, RenamePlan plan) throws IOException {
+        int[] index = new int[plan.size()];
+        for (int i = 0; i < index.length; i++) {
+            index[i] = i;
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return new RenameJournal(channel, index, DEFAULT_GROUP_SIZE, DEFAULT_MAX_DELAY_MS);
+    }
+
+    /**
+     * Records the successful move of a plan entry.
+     * @param i the plan index
+     * @throws IOException if the journal cannot be written
+     */
+    void completed(int i) throws IOException {
+        record('C', i);
+    }
+
+    /**
+     * Records the failed move of a plan entry.
+     * @param i the plan index
+     * @throws IOException if the journal cannot be written
+     */
+    void failed(int i) throws IOException {
+        record('F', i);
+    }
+
+    private synchronized void record(char type, int i) throws IOException {
+        if (index[i] < 0)
+            return;
+        checkFlushError();
+        if (groupCount == 0) {
+            groupStart = System.nanoTime();
+        }
+        group.append(type).append('\t').append(index[i]).append('\n');
+        groupCount++;
+        if (groupCount >= groupSize || System.nanoTime() - groupStart >= maxDelayNanos) {
+            commit();
+        }
+    }
+
+    /**
+     * Writes all pending records and forces them to disk.
+     * @throws IOException if the journal cannot be written
+     */
+    synchronized void commit() throws IOException {
+        checkFlushError();
+        if (groupCount > 0) {
+            write(group);
+            channel.force(false);
+            group.setLength(0);
+            groupCount = 0;
+            commitCount++;
+        }
+    }
+
+    private void checkFlushError() throws IOException {
+        if (flushError != null) {
+            throw new IOException("journal commit failed", flushError);
+        }
+    }
+
+    /**
+     * Marks the recorded run as finished, i.e., not interrupted.
+     * @throws IOException if the journal cannot be written
+     */
+    synchronized void finish() throws IOException {
+        group.append("E\n");
+        groupCount++;
+        commit();
+    }
+
+    /**
+     * @return the number of group commits (fsync calls) performed so far
+     */
+    synchronized long getCommitCount() {
+        return commitCount;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flusher.shutdownNow();
+        try {
+            commit();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void write(CharSequence cs) throws IOException {
+        ByteBuffer buf = StandardCharsets.UTF_8.encode(cs.toString());
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    // -------------------------------------------------------------------------
+
+    /**
+     * Reads the plan recorded in a journal. Entries recorded as completed have
+     * state {@link State#Done}, those recorded as failed {@link State#Failed},
+     * all others {@link State#Planned}. Plan indexes are the journal indexes.
+     * @param file the journal file
+     * @return the recorded plan
+     * @throws IOException if the journal cannot be read or is not a valid journal
+     */
+    static RenamePlan read(Path file) throws IOException {
+        String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        int end = content.lastIndexOf('\n') + 1;     // ignore an incomplete last line
+        RenamePlan plan = new RenamePlan();
+        Path dir = null;
+        try (BufferedReader reader = new BufferedReader(new StringReader(content.substring(0, end)))) {
+            String line = reader.readLine();
+            if (!HEADER.equals(line)) {
+                throw new IOException("not a rename journal: " + file);
+            }
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                switch (fields[0]) {
+                    case "D":
+                        dir = Paths.get(unescape(fields[1]));
+                        break;
+                    case "P":
+                        if (dir == null)
+                            throw new IOException("invalid journal record: " + line);
+                        int group = (fields.length > 3) ? Integer.parseInt(fields[3]) : -1;
+                        plan.addEntry(dir, unescape(fields[1]), unescape(fields[2]), State.Planned, group);
+                        break;
+                    case "C":
+                        plan.setState(Integer.parseInt(fields[1]), State.Done);
+                        break;
+                    case "F":
+                        plan.setState(Integer.parseInt(fields[1]), State.Failed);
+                        break;
+                    case "E":
+                        break;
+                    default:
+                        throw new IOException("invalid journal record: " + line);
+                }
+            }
+        } catch (RuntimeException e) {      // bad numbers, missing fields or indexes
+            throw new IOException("invalid journal: " + file + " (" + e + ")");
+        }
+        return plan;
+    }
+
+    // -------------------------------------------------------------------------
+
+    static StringBuilder escape(String s, StringBuilder sb) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '\\': sb.append("\\\\"); break;
+                case '\t': sb.append("\\t"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                default:   sb.append(c);
+            }
+        }
+        return sb;
+    }
+
+    static String unescape(String s) {
+        if (s.indexOf('\\') < 0)
+            return s;
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\' && i + 1 < s.length()) {
+                char e = s.charAt(++i);
+                sb.append(e == 't' ? '\t' : e == 'n' ? '\n' : e == 'r' ? '\r' : e);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
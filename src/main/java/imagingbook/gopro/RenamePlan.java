@@ -0,0 +1,557 @@
+package imagingbook.gopro;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The complete list of renaming operations found by a {@link RenamerEngine} scan,
+ * built before any file is moved. Since files are only renamed within their
+ * directory, all conflicts can be detected per directory (see {@link DirectoryPlan}),
+ * using hash indexes keyed by source and target name, in time linear in the
+ * number of files. A directory added twice (e.g., through different paths)
+ * has all its entries marked as {@link State#Duplicate}.
+ * Files belonging to the same chapter group (see {@link FileNameFormat#getGroupKey(String)})
+ * are renamed as a unit: if one of them cannot be renamed, the others are
+ * not renamed either ({@link State#Group}), and if one of them fails during
+ * execution, the others are moved back by the {@link RenamerEngine}.
+ * <p>
+ * Entries are stored in parallel arrays (directory index, source name, target
+ * name, state), grouped by directory and sorted in execution order.
+ * A plan created by a dry run can be executed later by
+ * {@link RenamerEngine#execute(RenamePlan)} without scanning the directories again.
+ * Apart from its state updates during execution, a plan is not modified after
+ * it was built.
+ */
+public class RenamePlan {
+
+    public enum State {
+        Planned,    // to be renamed
+        Collision,  // target exists or is claimed by another entry
+        Duplicate,  // source appears more than once
+        Cycle,      // entries whose targets form a cycle
+        Done,       // renamed
+        Failed,     // renaming failed
+        Group       // another file of the same chapter group cannot be renamed
+    }
+
+    private static final State[] stateValues = State.values();
+
+    private final List<Path> dirs = new ArrayList<>();
+    private final Set<Path> dirKeys = new HashSet<>();
+    private int[] dirStart = new int[16];   // index of the first entry of each directory
+
+    private String[] sources = new String[64];
+    private String[] targets = new String[64];
+    private byte[] states = new byte[64];
+    private int[] groups = new int[64];     // chapter group of each entry, -1 if none
+    private long[] sizes = new long[64];    // file size of each entry, -1 if unknown
+    private int groupCount = 0;
+    private int size = 0;
+    private int plannedCount = 0;
+    private int conflictCount = 0;
+
+    /**
+     * Adds the renaming operations of a single directory, after checking them
+     * for conflicts. Not thread-safe.
+     * @param dp the operations found in a directory
+     * @return {@code false} if the directory was added before (all its entries
+     * are then marked as {@link State#Duplicate})
+     */
+    public boolean add(DirectoryPlan dp) {
+        dp.resolve();
+        boolean duplicate = !dirKeys.add(dp.dir.toAbsolutePath().normalize());
+        int n = dp.sources.size();
+        ensureCapacity(size + n);
+        if (dirs.size() + 1 >= dirStart.length) {
+            dirStart = Arrays.copyOf(dirStart, 2 * dirStart.length);
+        }
+        dirStart[dirs.size()] = size;
+        dirs.add(dp.dir);
+        for (int k = 0; k < n; k++) {
+            State state = duplicate ? State.Duplicate : dp.getState(k);
+            sources[size] = dp.getSource(k);
+            targets[size] = dp.getTarget(k);
+            states[size] = (byte) state.ordinal();
+            groups[size] = (dp.getGroup(k) < 0) ? -1 : groupCount + dp.getGroup(k);
+            sizes[size] = dp.getSize(k);
+            count(state, 1);
+            size++;
+        }
+        groupCount += dp.getGroupCount();
+        dirStart[dirs.size()] = size;
+        return !duplicate;
+    }
+
+    /**
+     * Appends a single entry, without any checks. A new directory group is
+     * started unless the directory equals the directory of the previous entry.
+     * Used for rebuilding a plan, e.g., from a {@link RenameJournal}.
+     */
+    void addEntry(Path dir, String source, String target, State state) {
+        addEntry(dir, source, target, state, -1);
+    }
+
+    /**
+     * Like {@link #addEntry(Path, String, String, State)}, with the entry
+     * belonging to the given chapter group ({@code -1} if none).
+     */
+    void addEntry(Path dir, String source, String target, State state, int group) {
+        int d = dirs.size() - 1;
+        if (d < 0 || !dirs.get(d).equals(dir)) {
+            if (dirs.size() + 1 >= dirStart.length) {
+                dirStart = Arrays.copyOf(dirStart, 2 * dirStart.length);
+            }
+            dirStart[dirs.size()] = size;
+            dirs.add(dir);
+        }
+        ensureCapacity(size + 1);
+        sources[size] = source;
+        targets[size] = target;
+        states[size] = (byte) state.ordinal();
+        groups[size] = group;
+        groupCount = Math.max(groupCount, group + 1);
+        sizes[size] = -1;
+        count(state, 1);
+        size++;
+        dirStart[dirs.size()] = size;
+    }
+
+    /**
+     * @return the total number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of entries still to be renamed (not counting conflicts)
+     */
+    public int getPlannedCount() {
+        return plannedCount;
+    }
+
+    /**
+     * @return the number of entries that cannot be renamed because of conflicts
+     */
+    public int getConflictCount() {
+        return conflictCount;
+    }
+
+    public int getDirectoryCount() {
+        return dirs.size();
+    }
+
+    public Path getDirectory(int d) {
+        return dirs.get(d);
+    }
+
+    /**
+     * @param d a directory index
+     * @return the index of the first entry of the directory
+     */
+    public int getDirectoryStart(int d) {
+        return dirStart[d];
+    }
+
+    /**
+     * @param d a directory index
+     * @return the index after the last entry of the directory
+     */
+    public int getDirectoryEnd(int d) {
+        return dirStart[d + 1];
+    }
+
+    public String getSource(int i) {
+        return sources[i];
+    }
+
+    public String getTarget(int i) {
+        return targets[i];
+    }
+
+    public State getState(int i) {
+        return stateValues[states[i]];
+    }
+
+    /**
+     * @param i an entry index
+     * @return the chapter group of the entry (unique within the plan), -1 if it has no group
+     */
+    public int getGroup(int i) {
+        return groups[i];
+    }
+
+    /**
+     * @param i an entry index
+     * @return the size of the entry's file when it was scanned, -1 if unknown
+     */
+    public long getSize(int i) {
+        return sizes[i];
+    }
+
+    /**
+     * @return the number of chapter groups (group numbers are less than this number)
+     */
+    public int getGroupCount() {
+        return groupCount;
+    }
+
+    void setState(int i, State state) {
+        count(getState(i), -1);
+        states[i] = (byte) state.ordinal();
+        count(state, 1);
+    }
+
+    private void count(State state, int delta) {
+        switch (state) {
+            case Planned:
+                plannedCount += delta;
+                break;
+            case Collision:
+            case Duplicate:
+            case Cycle:
+            case Group:
+                conflictCount += delta;
+                break;
+            default:
+        }
+    }
+
+    private void ensureCapacity(int n) {
+        if (n > sources.length) {
+            int cap = Math.max(n, 2 * sources.length);
+            sources = Arrays.copyOf(sources, cap);
+            targets = Arrays.copyOf(targets, cap);
+            states = Arrays.copyOf(states, cap);
+            groups = Arrays.copyOf(groups, cap);
+            sizes = Arrays.copyOf(sizes, cap);
+        }
+    }
+
+    // -------------------------------------------------------------------------
+
+    /**
+     * Collects the files and renaming operations of a single directory.
+     * Conflicts are resolved when the directory is added to a {@link RenamePlan}.
+     * Different directory plans may be built concurrently.
+     */
+    public static class DirectoryPlan {
+
+        private final Path dir;
+        private final Set<String> names = new HashSet<>();     // all files in the directory
+        private final List<String> sources = new ArrayList<>();
+        private final List<String> targets = new ArrayList<>();
+        private final List<String> groupKeys = new ArrayList<>();
+        private long[] fileSizes = new long[16];
+        private State[] states = null;
+        private int[] order = null;
+        private int[] group = null;             // group index of each operation, -1 if none
+        private List<String> groupKeyList = null;
+        private List<String> warnings = null;
+
+        public DirectoryPlan(Path dir) {
+            this.dir = dir;
+        }
+
+        public Path getDirectory() {
+            return dir;
+        }
+
+        /**
+         * Registers a file that is not to be renamed (but may be in the way of some target).
+         * @param name the file name
+         */
+        public void addFile(String name) {
+            names.add(name);
+        }
+
+        /**
+         * Registers a file to be renamed.
+         * @param source the current file name
+         * @param target the new file name
+         */
+        public void addRename(String source, String target) {
+            addRename(source, target, null);
+        }
+
+        /**
+         * Registers a file to be renamed as part of a chapter group.
+         * @param source the current file name
+         * @param target the new file name
+         * @param groupKey the key of the chapter group (see {@link FileNameFormat#getGroupKey(String)}),
+         * {@code null} if the file is renamed on its own
+         */
+        public void addRename(String source, String target, String groupKey) {
+            addRename(source, target, groupKey, -1);
+        }
+
+        /**
+         * Registers a file of known size to be renamed as part of a chapter group.
+         * @param source the current file name
+         * @param target the new file name
+         * @param groupKey the key of the chapter group, {@code null} if none
+         * @param size the file size, -1 if unknown
+         */
+        public void addRename(String source, String target, String groupKey, long size) {
+            int k = sources.size();
+            if (k == fileSizes.length) {
+                fileSizes = Arrays.copyOf(fileSizes, 2 * k);
+            }
+            fileSizes[k] = size;
+            names.add(source);
+            sources.add(source);
+            targets.add(target);
+            groupKeys.add(groupKey);
+        }
+
+        /**
+         * @return the number of renaming operations
+         */
+        public int size() {
+            return sources.size();
+        }
+
+        // The following methods are only valid after resolve() and use the execution order:
+
+        String getSource(int k) {
+            return sources.get(order[k]);
+        }
+
+        String getTarget(int k) {
+            return targets.get(order[k]);
+        }
+
+        State getState(int k) {
+            return states[order[k]];
+        }
+
+        int getGroup(int k) {
+            return group[order[k]];
+        }
+
+        long getSize(int k) {
+            return fileSizes[order[k]];
+        }
+
+        int getGroupCount() {
+            return groupKeyList.size();
+        }
+
+        /**
+         * Returns the problems found in the chapter groups of this directory: sidecar
+         * files (.LRV, .THM) without a video file and missing chapters of a video
+         * (e.g., 01 and 03 present, 02 missing). Only valid after {@link #resolve()}.
+         * @return the warning messages
+         */
+        List<String> getWarnings() {
+            return warnings;
+        }
+
+        /**
+         * Checks all operations for conflicts and determines the execution order.
+         * An operation whose target is the source of another operation must be
+         * executed after the other one (chains). Operations that form a cycle are
+         * not executed, neither are operations depending on a blocked operation.
+         */
+        void resolve() {
+            if (order != null) {
+                return;
+            }
+            int n = sources.size();
+            states = new State[n];
+            Arrays.fill(states, State.Planned);
+
+            Map<String, Integer> sourceIndex = new HashMap<>(2 * n);
+            for (int i = 0; i < n; i++) {
+                Integer k = sourceIndex.putIfAbsent(sources.get(i), i);
+                if (k != null) {
+                    states[i] = State.Duplicate;
+                    states[k] = State.Duplicate;
+                }
+            }
+
+            Map<String, Integer> targetIndex = new HashMap<>(2 * n);
+            int[] dep = new int[n];     // index of the operation that must be done first, or -1
+            Arrays.fill(dep, -1);
+            for (int i = 0; i < n; i++) {
+                String target = targets.get(i);
+                Integer k = targetIndex.putIfAbsent(target, i);
+                if (k != null) {
+                    markConflict(i, State.Collision);
+                    markConflict(k, State.Collision);
+                }
+                Integer j = sourceIndex.get(target);
+                if (j == null) {
+                    if (names.contains(target)) {   // some other file has this name
+                        markConflict(i, State.Collision);
+                    }
+                } else if (j == i) {
+                    markConflict(i, State.Cycle);   // renamed to itself
+                } else {
+                    dep[i] = j;
+                }
+            }
+
+            // chapter groups:
+            Map<String, Integer> groupIndex = new HashMap<>();
+            groupKeyList = new ArrayList<>();
+            group = new int[n];
+            int[] nextInGroup = new int[n];     // circular list of the members of each group
+            for (int i = 0; i < n; i++) {
+                String key = groupKeys.get(i);
+                group[i] = -1;
+                nextInGroup[i] = i;
+                if (key != null) {
+                    Integer g = groupIndex.get(key);
+                    if (g == null) {
+                        groupIndex.put(key, groupKeyList.size());
+                        group[i] = groupKeyList.size();
+                        groupKeyList.add(key);
+                    } else {
+                        group[i] = g;
+                    }
+                }
+            }
+            int[] first = new int[groupKeyList.size()];
+            Arrays.fill(first, -1);
+            for (int i = 0; i < n; i++) {
+                int g = group[i];
+                if (g >= 0) {
+                    if (first[g] >= 0) {    // insert after the first member
+                        nextInGroup[i] = nextInGroup[first[g]];
+                        nextInGroup[first[g]] = i;
+                    } else {
+                        first[g] = i;
+                    }
+                }
+            }
+
+            // follow dependency chains (each operation has at most one dependency):
+            order = new int[n];
+            int count = 0;
+            byte[] color = new byte[n];     // 0 = new, 1 = on current chain, 2 = done
+            int[] chain = new int[n];
+            for (int i = 0; i < n; i++) {
+                int len = 0;
+                int j = i;
+                while (j >= 0 && color[j] == 0) {
+                    color[j] = 1;
+                    chain[len++] = j;
+                    j = dep[j];
+                }
+                if (j >= 0 && color[j] == 1) {      // found a cycle starting at j
+                    for (int k = len - 1; k >= 0; k--) {
+                        markConflict(chain[k], State.Cycle);
+                        if (chain[k] == j)
+                            break;
+                    }
+                }
+                // the chain is executed in reverse order:
+                for (int k = len - 1; k >= 0; k--) {
+                    int c = chain[k];
+                    int d = dep[c];
+                    if (d >= 0 && states[c] == State.Planned && states[d] != State.Planned) {
+                        markConflict(c, State.Collision);   // target remains occupied
+                    }
+                    color[c] = 2;
+                    order[count++] = c;
+                }
+            }
+
+            // a blocked operation blocks the other members of its group and the operations
+            // depending on it, each operation is blocked at most once:
+            int[] firstDependent = new int[n];
+            int[] nextDependent = new int[n];
+            Arrays.fill(firstDependent, -1);
+            for (int i = 0; i < n; i++) {
+                if (dep[i] >= 0) {
+                    nextDependent[i] = firstDependent[dep[i]];
+                    firstDependent[dep[i]] = i;
+                }
+            }
+            int[] stack = new int[n];
+            int top = 0;
+            for (int i = 0; i < n; i++) {
+                if (states[i] != State.Planned)
+                    stack[top++] = i;
+            }
+            while (top > 0) {
+                int i = stack[--top];
+                for (int j = nextInGroup[i]; j != i; j = nextInGroup[j]) {
+                    if (states[j] == State.Planned) {
+                        states[j] = State.Group;
+                        stack[top++] = j;
+                    }
+                }
+                for (int j = firstDependent[i]; j >= 0; j = nextDependent[j]) {
+                    if (states[j] == State.Planned) {
+                        states[j] = State.Collision;    // target remains occupied
+                        stack[top++] = j;
+                    }
+                }
+            }
+
+            warnings = checkGroups(first, nextInGroup);
+            names.clear();
+        }
+
+        /**
+         * Checks each video for sidecar files without a video file and for
+         * missing chapters. Group keys are expected to consist of the video and
+         * chapter number (see {@link FileNameFormat#getGroupKey(String)}).
+         */
+        private List<String> checkGroups(int[] first, int[] nextInGroup) {
+            List<String> result = new ArrayList<>();
+            Map<String, BitSet> chapters = new TreeMap<>();    // video number -> chapters with video file
+            for (int g = 0; g < first.length; g++) {
+                String key = groupKeyList.get(g);
+                boolean hasVideo = false;
+                int i = first[g];
+                do {
+                    hasVideo |= !isSidecar(sources.get(i));
+                    i = nextInGroup[i];
+                } while (i != first[g]);
+                if (!hasVideo) {
+                    StringBuilder sb = new StringBuilder();
+                    do {
+                        sb.append((sb.length() > 0) ? ", " : "").append(sources.get(i));
+                        i = nextInGroup[i];
+                    } while (i != first[g]);
+                    result.add("no video file for " + sb);
+                } else if (key.length() == 6 && FileNameScanner.isDigits(key, 0, 6)) {
+                    chapters.computeIfAbsent(key.substring(0, 4), v -> new BitSet())
+                            .set(Integer.parseInt(key.substring(4)));
+                }
+            }
+            for (Map.Entry<String, BitSet> e : chapters.entrySet()) {
+                BitSet present = e.getValue();
+                // the first chapter is 01 (00 with older cameras):
+                for (int c = present.get(0) ? 0 : 1; c < present.length(); c++) {
+                    if (!present.get(c))
+                        result.add(String.format("video %s: chapter %02d is missing", e.getKey(), c));
+                }
+            }
+            return result;
+        }
+
+        private static boolean isSidecar(String name) {
+            int n = name.length();
+            return n >= 4 && (name.regionMatches(true, n - 4, ".LRV", 0, 4)
+                    || name.regionMatches(true, n - 4, ".THM", 0, 4));
+        }
+
+        private void markConflict(int i, State state) {
+            if (states[i] == State.Planned) {
+                states[i] = state;
+            }
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package imagingbook.gopro;
+
+import imagingbook.gopro.DirectoryWalker.SymlinkPolicy;
+import imagingbook.gopro.RenamerSettings.ProcessMode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static imagingbook.gopro.JarUtils.getImplementationVersion;
+
+/**
+ * Command-line front end of the {@link RenamerEngine}. This class does not
+ * touch any AWT or Swing classes, so it runs on headless machines, e.g.,
+ * <pre>
+ * java -cp renamer.jar imagingbook.gopro.RenamerCli --apply /data/gopro</pre>
+ * or simply {@code java -jar renamer.jar --apply /data/gopro} (see {@link Launcher}).
+ * As in the GUI, files are only renamed if {@code --apply} is given.
+ * Several directories are processed together by a {@link MultiRootRenamer}.
+ * The exit code is 0 on success, 1 if any file could not be renamed (with
+ * {@code --timeline}: if any video header could not be read or videos were not
+ * recorded in order) and 2 for invalid arguments.
+ */
+public class RenamerCli {
+
+    static final int EXIT_OK = 0;
+    static final int EXIT_ERRORS = 1;
+    static final int EXIT_USAGE = 2;
+
+    private static final String usage =
+            "Usage: java -cp renamer.jar imagingbook.gopro.RenamerCli [options] <directory>...\n" +
+            "       java -cp renamer.jar imagingbook.gopro.RenamerCli [options] --resume <journal>\n" +
+            "       java -cp renamer.jar imagingbook.gopro.RenamerCli [options] --undo <journal>\n" +
+            "Options:\n" +
+            "  --apply          actually rename files (default is a dry run)\n" +
+            "  --revert         restore renamed GoPro files to their original names\n" +
+            "  --no-recursive   process the start directory only\n" +
+            "  --links <policy> follow symbolic links to directories: never, within-root or always (default)\n" +
+            "  --quiet          do not list individual files\n" +
+            "  --abs            show absolute directory paths\n" +
+            "  --parallel <n>   process directories with n threads (0 = one per processor)\n" +
+            "  --moves <n>      perform up to n file moves concurrently (for network drives)\n" +
+            "  --per-device <n> process up to n directories on the same device at a time (default 1)\n" +
+            "  --cache <file>   skip directories unchanged since the last run using this cache\n" +
+            "  --verify-cache   list all directories and check the cache\n" +
+            "  --duplicates     report files with identical contents before renaming\n" +
+            "  --watch          keep watching the directory and rename new files as they appear\n" +
+            "  --ingest <dir>   copy GoPro files to <dir> under their new names (instead of renaming)\n" +
+            "  --verify         verify copied files by checksums (with --ingest)\n" +
+            "  --view <dir>     link GoPro files into <dir> under their new names (instead of renaming)\n" +
+            "  --symlinks       use symbolic links only (with --view)\n" +
+            "  --source-of <f>  print the original file of view entry <f> (with --view)\n" +
+            "  --timeline       list the recording times of all videos and check their order\n" +
+            "  --metrics <file> write timings and move latencies as JSON after the run\n" +
+            "  --jmx            expose the metrics as a JMX MBean while running\n" +
+            "  --report <file>  stream all file events to a .csv or .ndjson file (.gz to compress)\n" +
+            "  --journal <file> record all moves in a new journal file\n" +
+            "  --resume <file>  continue the interrupted run recorded in a journal\n" +
+            "  --undo <file>    revert the moves recorded in a journal\n" +
+            "  --version        print the version and exit\n" +
+            "  --help           print this message and exit";
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * Runs the command line tool with the given arguments.
+     * @param args command line arguments
+     * @return the exit code
+     */
+    static int run(String[] args) {
+        RenamerSettings settings = new RenamerSettings();
+        List<Path> startDirs = new ArrayList<>();
+        Path resumeJournal = null;
+        Path undoJournal = null;
+        boolean watch = false;
+        boolean timeline = false;
+        Path ingestDir = null;
+        boolean verify = false;
+        Path viewDir = null;
+        boolean symlinks = false;
+        Path viewEntry = null;
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--apply":
+                    settings.setDryRun(false);
+                    break;
+                case "--revert":
+                    settings.setMode(ProcessMode.Revert);
+                    break;
+                case "--no-recursive":
+                    settings.setRecursive(false);
+                    break;
+                case "--links":
+                    SymlinkPolicy policy = (i + 1 < args.length) ? parseSymlinkPolicy(args[++i]) : null;
+                    if (policy == null) {
+                        System.err.println("--links requires never, within-root or always");
+                        return EXIT_USAGE;
+                    }
+                    settings.setSymlinkPolicy(policy);
+                    break;
+                case "--quiet":
+                    settings.setVerbose(false);
+                    break;
+                case "--abs":
+                    settings.setAbsDirs(true);
+                    break;
+                case "--parallel":
+                    Integer n = (i + 1 < args.length) ? parseCount(args[++i]) : null;
+                    if (n == null) {
+                        System.err.println("--parallel requires a non-negative number");
+                        return EXIT_USAGE;
+                    }
+                    settings.setParallelism(n);
+                    break;
+                case "--moves":
+                    Integer m = (i + 1 < args.length) ? parseCount(args[++i]) : null;
+                    if (m == null || m < 1) {
+                        System.err.println("--moves requires a positive number");
+                        return EXIT_USAGE;
+                    }
+                    settings.setMoveConcurrency(m);
+                    break;
+                case "--per-device":
+                    Integer pd = (i + 1 < args.length) ? parseCount(args[++i]) : null;
+                    if (pd == null || pd < 1) {
+                        System.err.println("--per-device requires a positive number");
+                        return EXIT_USAGE;
+                    }
+                    settings.setDeviceConcurrency(pd);
+                    break;
+                case "--cache":
+                    if (i + 1 >= args.length) {
+                        System.err.println(arg + " requires a file name");
+                        return EXIT_USAGE;
+                    }
+                    settings.setCacheFile(Paths.get(args[++i]));
+                    break;
+                case "--metrics":
+                    if (i + 1 >= args.length) {
+                        System.err.println(arg + " requires a file name");
+                        return EXIT_USAGE;
+                    }
+                    settings.setMetricsFile(Paths.get(args[++i]));
+                    break;
+                case "--report":
+                    if (i + 1 >= args.length) {
+                        System.err.println(arg + " requires a file name");
+                        return EXIT_USAGE;
+                    }
+                    settings.setReportFile(Paths.get(args[++i]));
+                    break;
+                case "--jmx":
+                    settings.setJmxEnabled(true);
+                    break;
+                case "--ingest":
+                    if (i + 1 >= args.length) {
+                        System.err.println(arg + " requires a directory");
+                        return EXIT_USAGE;
+                    }
+                    ingestDir = Paths.get(args[++i]);
+                    break;
+                case "--verify":
+                    verify = true;
+                    break;
+                case "--view":
+                case "--source-of":
+                    if (i + 1 >= args.length) {
+                        System.err.println(arg + " requires a path");
+                        return EXIT_USAGE;
+                    }
+                    if (arg.equals("--view"))
+                        viewDir = Paths.get(args[++i]);
+                    else
+                        viewEntry = Paths.get(args[++i]);
+                    break;
+                case "--symlinks":
+                    symlinks = true;
+                    break;
+                case "--duplicates":
+                    settings.setFindDuplicates(true);
+                    break;
+                case "--timeline":
+                    timeline = true;
+                    break;
+                case "--watch":
+                    watch = true;
+                    break;
+                case "--verify-cache":
+                    settings.setCacheVerify(true);
+                    break;
+                case "--journal":
+                case "--resume":
+                case "--undo":
+                    if (i + 1 >= args.length) {
+                        System.err.println(arg + " requires a file name");
+                        return EXIT_USAGE;
+                    }
+                    Path file = Paths.get(args[++i]);
+                    if (arg.equals("--journal"))
+                        settings.setJournalFile(file);
+                    else if (arg.equals("--resume"))
+                        resumeJournal = file;
+                    else
+                        undoJournal = file;
+                    break;
+                case "--version":
+                    String version = getImplementationVersion(RenamerCli.class);
+                    System.out.println(version != null ? version : "no version");
+                    return EXIT_OK;
+                case "--help":
+                    System.out.println(usage);
+                    return EXIT_OK;
+                default:
+                    if (arg.startsWith("-")) {
+                        System.err.println("Invalid argument: " + arg);
+                        System.err.println(usage);
+                        return EXIT_USAGE;
+                    }
+                    startDirs.add(Paths.get(arg));
+            }
+        }
+
+        // options of one mode must not be dropped silently by another:
+        List<String> modes = new ArrayList<>();
+        if (timeline)
+            modes.add("--timeline");
+        if (ingestDir != null)
+            modes.add("--ingest");
+        if (viewDir != null)
+            modes.add("--view");
+        if (watch)
+            modes.add("--watch");
+        if (resumeJournal != null)
+            modes.add("--resume");
+        if (undoJournal != null)
+            modes.add("--undo");
+        if (modes.size() > 1) {
+            System.err.println(String.join(" and ", modes) + " cannot be combined");
+            return EXIT_USAGE;
+        }
+        String mode = modes.isEmpty() ? null : modes.get(0);
+        if (verify && ingestDir == null) {
+            System.err.println("--verify requires --ingest");
+            return EXIT_USAGE;
+        }
+        if (symlinks && viewDir == null) {
+            System.err.println("--symlinks requires --view");
+            return EXIT_USAGE;
+        }
+        if (viewEntry != null && viewDir == null) {
+            System.err.println("--source-of requires --view");
+            return EXIT_USAGE;
+        }
+        if (mode != null) {
+            String option = (settings.getJournalFile() != null && undoJournal == null) ? "--journal"
+                    : (settings.getCacheFile() != null) ? "--cache"
+                    : settings.isFindDuplicates() ? "--duplicates"
+                    : settings.isCacheVerify() ? "--verify-cache"
+                    : null;
+            if (option != null) {
+                System.err.println(option + " cannot be used with " + mode);
+                return EXIT_USAGE;
+            }
+        }
+        if ((resumeJournal != null || undoJournal != null)
+                && (!settings.isDryRun() || settings.getMode() == ProcessMode.Revert)) {
+            System.err.println("--apply and --revert cannot be used with " + mode);
+            return EXIT_USAGE;
+        }
+
+        if (resumeJournal != null || undoJournal != null) {
+            if (!startDirs.isEmpty()) {
+                System.err.println(usage);
+                return EXIT_USAGE;
+            }
+            RenamerEngine engine = new RenamerEngine(settings, System.out::println);
+            RenamerStatistics stats = (resumeJournal != null) ?
+                    engine.resume(resumeJournal) : engine.undo(undoJournal);
+            return (stats.getErrorCount() > 0) ? EXIT_ERRORS : EXIT_OK;
+        }
+
+        if (startDirs.isEmpty()) {
+            System.err.println(usage);
+            return EXIT_USAGE;
+        }
+        for (Path dir : startDirs) {
+            if (!Files.isDirectory(dir)) {
+                System.err.println("Path is not a directory: " + dir);
+                return EXIT_USAGE;
+            }
+        }
+        if (startDirs.size() > 1) {
+            if (timeline || ingestDir != null || viewDir != null || watch) {
+                System.err.println("--timeline, --ingest, --view and --watch take a single directory");
+                return EXIT_USAGE;
+            }
+            if (settings.getJournalFile() != null || settings.getCacheFile() != null
+                    || settings.getMetricsFile() != null || settings.isJmxEnabled()) {
+                System.err.println("--journal, --cache, --metrics and --jmx take a single directory");
+                return EXIT_USAGE;
+            }
+            RenamerStatistics stats = new MultiRootRenamer(settings, System.out::println, startDirs).run();
+            return (stats.getErrorCount() > 0) ? EXIT_ERRORS : EXIT_OK;
+        }
+
+        Path startDir = startDirs.get(0);
+        settings.setStartDir(startDir);
+        if (timeline) {
+            RenamerStatistics stats = new RecordingTimeline(settings, System.out::println).run();
+            return (stats.getErrorCount() > 0 || stats.getWarningCount() > 0) ? EXIT_ERRORS : EXIT_OK;
+        }
+        if (ingestDir != null) {
+            RenamerStatistics stats = new Ingester(settings, System.out::println, ingestDir).setVerify(verify).run();
+            return (stats.getErrorCount() > 0) ? EXIT_ERRORS : EXIT_OK;
+        }
+        if (viewDir != null) {
+            ViewBuilder builder = new ViewBuilder(settings, System.out::println, viewDir)
+                    .setLinkMode(symlinks ? ViewBuilder.LinkMode.Symbolic : ViewBuilder.LinkMode.Auto);
+            if (viewEntry != null) {
+                try {
+                    System.out.println(builder.getSource(viewEntry));
+                    return EXIT_OK;
+                } catch (IOException e) {
+                    System.err.println(e.getMessage());
+                    return EXIT_ERRORS;
+                }
+            }
+            RenamerStatistics stats = builder.run();
+            return (stats.getErrorCount() > 0) ? EXIT_ERRORS : EXIT_OK;
+        }
+        if (watch) {
+            try {
+                new FolderWatcher(settings, System.out::println).run();
+            } catch (IOException e) {
+                System.err.println("Cannot watch " + startDir + ": " + e);
+                return EXIT_ERRORS;
+            }
+            return EXIT_OK;
+        }
+        RenamerStatistics stats = new RenamerEngine(settings, System.out::println).run();
+        return (stats.getErrorCount() > 0) ? EXIT_ERRORS : EXIT_OK;
+    }
+
+    private static SymlinkPolicy parseSymlinkPolicy(String s) {
+        switch (s) {
+            case "never": return SymlinkPolicy.Never;
+            case "within-root": return SymlinkPolicy.WithinRoot;
+            case "always": return SymlinkPolicy.Always;
+            default: return null;
+        }
+    }
+
+    private static Integer parseCount(String s) {
+        try {
+            int n = Integer.parseInt(s);
+            return (n >= 0) ? n : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,684 @@
+package imagingbook.gopro;
+
+import imagingbook.gopro.RenamePlan.DirectoryPlan;
+import imagingbook.gopro.RenamePlan.State;
+import imagingbook.gopro.RenamerListener.FileStatus;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.function.Consumer;
+import javax.management.JMException;
+
+/**
+ * The scanning and renaming logic of this tool, independent of any user interface.
+ * All output is sent to a {@link RenamerListener}, settings are taken
+ * from a {@link RenamerSettings} object. Typical use:
+ * <pre>
+ * RenamerSettings settings = new RenamerSettings().setStartDir(dir).setDryRun(false);
+ * RenamerStatistics stats = new RenamerEngine(settings, System.out::println).run();</pre>
+ * A run consists of two phases: first the directory tree is scanned and a complete
+ * {@link RenamePlan} is built, including the detection of name conflicts. Then
+ * (unless in dry-run mode) the plan is executed. A plan obtained from a dry run
+ * (see {@link #getPlan()}) can be executed later by {@link #execute(RenamePlan)}.
+ * If a journal file is set (see {@link RenamerSettings#setJournalFile(Path)}), all
+ * moves are recorded, such that an interrupted run can be continued by
+ * {@link #resume(Path)} and a run can be reverted exactly by {@link #undo(Path)},
+ * both without scanning the directory tree. Files may be moved concurrently
+ * (see {@link RenamerSettings#setMoveConcurrency(int)} and {@link RenameExecutor}).
+ * Files of the same chapter group (e.g., GH010527.MP4, GL010527.LRV and
+ * GH010527.THM) are renamed as a unit, i.e., if one of them fails, the others
+ * are moved back (see {@link RenamePlan}). Sidecar files without a video file
+ * and missing chapters are reported as warnings during the scan.
+ * Optionally, matched files with identical contents are reported after the scan
+ * (see {@link RenamerSettings#setFindDuplicates(boolean)} and {@link DuplicateFinder}).
+ * All file events can be streamed to a report file, regardless of the verbosity
+ * (see {@link RenamerSettings#setReportFile(Path)} and {@link ReportWriter}).
+ * <p>
+ * If {@link RenamerSettings#getParallelism()} is greater than 1, directories are
+ * scanned in parallel (see {@link ParallelWalker}), but the listener still receives
+ * all events in the same order as in sequential mode and never concurrently,
+ * and the resulting plan is the same.
+ * An engine instance performs a single run. Apart from {@link #cancel()}
+ * and {@link #getStatistics()}, its methods must not be called concurrently.
+ */
+public class RenamerEngine {
+
+    private final RenamerSettings settings;
+    private final RenamerListener listener;
+    private final FileNameFormat nameformat;
+    private final RenamerStatistics stats = new RenamerStatistics();
+    private final RenamerMetrics metrics = new RenamerMetrics(stats);
+    private volatile boolean cancelRequested = false;
+    private RenamePlan plan = null;
+    private DuplicateFinder duplicates = null;
+    private ReportWriter report = null;
+
+    public RenamerEngine(RenamerSettings settings, RenamerListener listener) {
+        this.settings = settings;
+        this.listener = listener;
+        this.nameformat = settings.getNameFormat();
+    }
+
+    /**
+     * Requests the current run to stop as soon as possible. May be called from any thread.
+     * Files already renamed are not restored.
+     */
+    public void cancel() {
+        cancelRequested = true;
+    }
+
+    /**
+     * Returns the (live) statistics of this engine. Counts may be read from
+     * any thread while the engine is running.
+     * @return the statistics of this run
+     */
+    public RenamerStatistics getStatistics() {
+        return stats;
+    }
+
+    /**
+     * Returns the (live) timings of this engine, which may be read from any
+     * thread while the engine is running.
+     * @return the metrics of this run
+     */
+    public RenamerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the plan built by {@link #run()} (or passed to {@link #execute(RenamePlan)}),
+     * {@code null} if the engine was not run yet
+     */
+    public RenamePlan getPlan() {
+        return plan;
+    }
+
+    /**
+     * Processes the start directory specified in the settings.
+     * @return the statistics of this run
+     */
+    public RenamerStatistics run() {
+        Path dir = settings.getStartDir();
+        if (!Files.isDirectory(dir)) {
+            throw new IllegalArgumentException("Path is not a directory: " + dir);
+        }
+
+        listener.log("Renaming GoPro files " + (settings.isDryRun() ? "(DRY RUN) ..." : "..."));
+        startMetrics();
+        openReport();
+        plan = scan(dir);
+        if (!settings.isDryRun() && !cancelRequested && plan.getPlannedCount() > 0) {
+            listener.log("Executing rename plan ...");
+            executePlan(plan, settings.getJournalFile(), false);
+        }
+        stats.cancelled = cancelRequested;
+        logSummary(true);
+        finishMetrics();
+        closeReport();
+        return stats;
+    }
+
+    /**
+     * Executes a plan built previously (typically by a dry run), without
+     * scanning the directories again. Files are renamed regardless of
+     * {@link RenamerSettings#isDryRun()}.
+     * @param plan the plan to execute
+     * @return the statistics of this run
+     */
+    public RenamerStatistics execute(RenamePlan plan) {
+        this.plan = plan;
+        listener.log("Executing rename plan ...");
+        startMetrics();
+        openReport();
+        executePlan(plan, settings.getJournalFile(), false);
+        return finish();
+    }
+
+    /**
+     * Executes a plan without logging a header or summary and without a journal,
+     * for repeated use by a long-running front end (see {@link FolderWatcher}).
+     * The statistics accumulate over all calls.
+     * @param plan the plan to execute
+     * @return the statistics of this engine
+     */
+    public RenamerStatistics apply(RenamePlan plan) {
+        executePlan(plan, null, false);
+        return stats;
+    }
+
+    /**
+     * Continues an interrupted run recorded in the given journal. Only the
+     * journal's moves that were not completed are checked, moves completed
+     * but not recorded before the interruption are recognized by their files.
+     * Failed moves are tried again. Further moves are appended to the same journal.
+     * @param journalFile the journal of the interrupted run
+     * @return the statistics of this run
+     */
+    public RenamerStatistics resume(Path journalFile) {
+        listener.log("Resuming journal " + journalFile + " ...");
+        startMetrics();
+        openReport();
+        try {
+            plan = RenameJournal.read(journalFile);
+        } catch (IOException e) {
+            return journalFailed("could not read journal", e);
+        }
+        int recovered = 0;
+        for (int d = 0; d < plan.getDirectoryCount(); d++) {
+            Path dir = plan.getDirectory(d);
+            for (int i = plan.getDirectoryStart(d); i < plan.getDirectoryEnd(d); i++) {
+                if (plan.getState(i) == State.Done)
+                    continue;
+                if (isMoved(dir, plan.getSource(i), plan.getTarget(i))) {
+                    plan.setState(i, State.Done);
+                    recovered++;
+                } else if (plan.getState(i) == State.Failed) {
+                    plan.setState(i, State.Planned);
+                }
+            }
+        }
+        listener.log(String.format("%d of %d moves done (%d not recorded), %d remaining",
+                plan.size() - plan.getPlannedCount(), plan.size(), recovered, plan.getPlannedCount()));
+        if (plan.getPlannedCount() > 0) {
+            executePlan(plan, journalFile, true);
+        }
+        return finish();
+    }
+
+    /**
+     * Reverts the moves recorded in the given journal, in reverse order.
+     * Every move is checked against the file system, so moves not recorded
+     * (e.g., because of a crash) are reverted as well, and moves not done or
+     * already reverted are skipped. Thus an interrupted undo can simply be repeated.
+     * If a journal file is set in the settings, the reverting moves are recorded there.
+     * @param journalFile the journal of the run to be reverted
+     * @return the statistics of this run
+     */
+    public RenamerStatistics undo(Path journalFile) {
+        listener.log("Undoing journal " + journalFile + " ...");
+        startMetrics();
+        openReport();
+        RenamePlan done;
+        try {
+            done = RenameJournal.read(journalFile);
+        } catch (IOException e) {
+            return journalFailed("could not read journal", e);
+        }
+        plan = new RenamePlan();
+        for (int d = done.getDirectoryCount() - 1; d >= 0; d--) {
+            Path dir = done.getDirectory(d);
+            for (int i = done.getDirectoryEnd(d) - 1; i >= done.getDirectoryStart(d); i--) {
+                if (isMoved(dir, done.getSource(i), done.getTarget(i))) {
+                    plan.addEntry(dir, done.getTarget(i), done.getSource(i), State.Planned);
+                }
+            }
+        }
+        listener.log(String.format("%d of %d moves to revert", plan.size(), done.size()));
+        if (plan.size() > 0) {
+            executePlan(plan, settings.getJournalFile(), false);
+        }
+        return finish();
+    }
+
+    private static boolean isMoved(Path dir, String source, String target) {
+        return RenameExecutor.isMoved(dir.resolve(source), dir.resolve(target));
+    }
+
+    private RenamerStatistics journalFailed(String msg, IOException e) {
+        listener.log("ERROR: " + msg + " (" + e + ")");
+        stats.errorCount.increment();
+        return finish();
+    }
+
+    private RenamerStatistics finish() {
+        stats.cancelled = cancelRequested;
+        logSummary(false);
+        finishMetrics();
+        closeReport();
+        return stats;
+    }
+
+    private void startMetrics() {
+        if (settings.isJmxEnabled()) {
+            try {
+                metrics.register();
+            } catch (JMException e) {
+                listener.log("WARNING: could not register metrics MBean (" + e + ")");
+            }
+        }
+    }
+
+    private void finishMetrics() {
+        metrics.unregister();
+        Path file = settings.getMetricsFile();
+        if (file != null) {
+            try {
+                Files.write(file, metrics.toJson().getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                listener.log("ERROR: could not write metrics file " + file + " (" + e + ")");
+            }
+        }
+    }
+
+    private void openReport() {
+        Path file = settings.getReportFile();
+        if (file != null) {
+            try {
+                report = ReportWriter.open(file);
+            } catch (IOException e) {
+                listener.log("ERROR: could not create report file " + file + " (" + e + ")");
+                stats.errorCount.increment();
+            }
+        }
+    }
+
+    /**
+     * Lets this engine write to a report shared with other engines, which is
+     * not closed by this engine (see {@link MultiRootRenamer}).
+     * @param report the report writer
+     */
+    void setReport(ReportWriter report) {
+        this.report = report;
+    }
+
+    private void closeReport() {
+        if (report != null && settings.getReportFile() != null) {
+            try {
+                report.close();
+            } catch (IOException e) {
+                listener.log("ERROR: could not write report file " + settings.getReportFile() + " (" + e + ")");
+            }
+            report = null;
+        }
+    }
+
+    /**
+     * Reports the outcome for a single file: writes it to the report file (if any),
+     * in the order of the listener events, and passes it to the listener if {@code show}
+     * is true.
+     */
+    private void fileEvent(RenamerListener out, Path dir, String name, String newName, FileStatus status,
+                           long size, long nanos, boolean show) {
+        ReportWriter r = report;
+        if (r != null) {
+            if (out instanceof BufferedListener)
+                ((BufferedListener) out).defer(l -> r.write(dir, name, newName, status, size, nanos));
+            else
+                r.write(dir, name, newName, status, size, nanos);
+        }
+        if (show) {
+            out.fileProcessed(dir, name, newName, status, size, nanos);
+        }
+    }
+
+    private void logSummary(boolean scanned) {
+        if (stats.cancelled) {
+            listener.log("CANCELLED!");
+        }
+        if (scanned && stats.getCheckedCount() == 0 && stats.getUnchangedCount() == 0) {
+            listener.log("Found no files to check!");
+            return;
+        }
+        listener.log("------------------------------");
+        if (scanned) {
+            listener.log("Files checked:  " + stats.getCheckedCount());
+            listener.log("Files matched:  " + stats.getMatchedCount());
+            listener.log("Name conflicts: " + stats.getConflictCount());
+            if (settings.getCacheFile() != null)
+                listener.log("Dirs unchanged: " + stats.getUnchangedCount());
+            if (settings.isFindDuplicates())
+                listener.log("Duplicates:     " + stats.getDuplicateCount());
+            if (stats.getWarningCount() > 0)
+                listener.log("Warnings:       " + stats.getWarningCount());
+            if (stats.getRepeatedCount() > 0)
+                listener.log("Dirs repeated:  " + stats.getRepeatedCount());
+            if (stats.getSkippedLinkCount() > 0)
+                listener.log("Links skipped:  " + stats.getSkippedLinkCount());
+        }
+        listener.log("Files renamed:  " + stats.getRenamedCount());
+        if (stats.getRollbackCount() > 0)
+            listener.log("Files restored: " + stats.getRollbackCount());
+        listener.log("File errors:    " + stats.getErrorCount());
+    }
+
+    private String getLabel(Path dir) {
+        if (settings.isAbsDirs()) {
+            return dir.toAbsolutePath().toString();
+        }
+        Path name = dir.getFileName();
+        return (name != null) ? name.toString() : dir.toString();
+    }
+
+    // -------------------------------------------------------------------------
+
+    /**
+     * Phase 1: walks the directory tree and builds the rename plan.
+     */
+    private RenamePlan scan(Path dir) {
+        long startNanos = System.nanoTime();
+        RenamePlan plan = new RenamePlan();
+        if (settings.isFindDuplicates()) {
+            duplicates = new DuplicateFinder();
+        }
+        DirectoryWalker walker = new DirectoryWalker(settings.isRecursive(), settings.getSymlinkPolicy());
+        Path cacheFile = settings.getCacheFile();
+        DirectoryCache cache = null;
+        if (cacheFile != null) {
+            cache = DirectoryCache.load(cacheFile, (nameformat instanceof FormatClassifier) ?
+                    ((FormatClassifier) nameformat).getKey() : nameformat.getClass().getName())
+                    .setVerify(settings.isCacheVerify());
+            walker.setCache(cache);
+        }
+        int parallelism = settings.getParallelism();
+        metrics.attachWalker(walker);
+        if (settings.isRecursive() && parallelism > 1) {
+            // directory plans are added in the same order as the buffered output:
+            new ParallelWalker(walker, parallelism, listener).walk(dir,
+                    out -> new Visitor(out, dp -> out.defer(l -> addToPlan(plan, dp, l))));
+        }
+        else {
+            walker.walk(dir, new Visitor(listener, dp -> addToPlan(plan, dp, listener)));
+        }
+        stats.attributeReadCount.add(walker.getAttributeReadCount());
+        metrics.detachWalker();
+        if (cache != null) {
+            if (cache.getStaleCount() > 0) {
+                listener.log("WARNING: " + cache.getStaleCount() +
+                        " directories changed without a new time stamp, the directory cache is not safe here!");
+            }
+            if (!cancelRequested) {
+                try {
+                    cache.save(cacheFile);
+                } catch (IOException e) {
+                    listener.log("ERROR: could not save directory cache " + cacheFile + " (" + e + ")");
+                }
+            }
+        }
+        if (duplicates != null && !cancelRequested) {
+            reportDuplicates(dir);
+        }
+        metrics.scanNanos.add(System.nanoTime() - startNanos);
+        return plan;
+    }
+
+    /**
+     * Compares the contents of all matched files and reports files that are
+     * identical (e.g., chapters copied twice from the same camera card).
+     */
+    private void reportDuplicates(Path startDir) {
+        listener.log("Checking " + duplicates.size() + " files for duplicates ...");
+        List<List<Path>> groups = duplicates.findDuplicates(settings.getParallelism(), (file, e) -> {
+            stats.errorCount.increment();
+            listener.log("ERROR: could not read file " + file + " (" + e + ")");
+        });
+        for (List<Path> group : groups) {
+            StringBuilder sb = new StringBuilder("DUPLICATE: ");
+            for (int k = 0; k < group.size(); k++) {
+                Path file = group.get(k);
+                sb.append((k > 0) ? " = " : "").append(settings.isAbsDirs() ?
+                        file.toAbsolutePath() : startDir.relativize(file));
+            }
+            listener.log(sb.toString());
+            stats.duplicateCount.add(group.size() - 1);
+        }
+        listener.log(String.format("%d files sampled, %d hashed completely, %.1f MB read",
+                duplicates.getSampledCount(), duplicates.getHashedCount(), duplicates.getByteCount() * 1e-6));
+    }
+
+    private void addToPlan(RenamePlan plan, DirectoryPlan dp, RenamerListener out) {
+        long t = System.nanoTime();
+        boolean added = plan.add(dp);
+        metrics.planningNanos.add(System.nanoTime() - t);
+        if (!added) {
+            stats.conflictCount.add(dp.size());
+            out.log("CONFLICT: directory visited more than once, skipping " + dp.getDirectory());
+        }
+    }
+
+    /**
+     * Checks all files of the walked directory tree and collects the matching files
+     * of each directory in a {@link DirectoryPlan}. Conflicts within the directory are
+     * resolved and reported as soon as its files are done. In parallel mode, a new
+     * visitor is used for every directory.
+     */
+    private class Visitor implements DirectoryWalker.Visitor {
+
+        private final RenamerListener out;
+        private final Consumer<DirectoryPlan> planSink;
+        private DirectoryPlan dp = null;
+        private long dirStartNanos = 0;
+        private int fileCount = 0;
+
+        Visitor(RenamerListener out, Consumer<DirectoryPlan> planSink) {
+            this.out = out;
+            this.planSink = planSink;
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir) {
+            if (cancelRequested)
+                return FileVisitResult.TERMINATE;
+            stats.directoryCount.increment();
+            out.directoryEntered(dir, getLabel(dir));
+            dp = new DirectoryPlan(dir);
+            dirStartNanos = System.nanoTime();
+            fileCount = 0;
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            if (cancelRequested)
+                return FileVisitResult.TERMINATE;
+            stats.checkedCount.increment();
+            fileCount++;
+            String fname = file.getFileName().toString();
+            FileNameFormat format = nameformat.classify(fname);
+            if (format != null) {
+                stats.matchedCount.increment();
+                dp.addRename(fname, format.mapFileName(fname), format.getGroupKey(fname), attrs.size());
+                if (duplicates != null)
+                    duplicates.add(file, attrs.size());
+            } else {
+                dp.addFile(fname);
+                fileEvent(out, dp.getDirectory(), fname, null, FileStatus.Ignored, attrs.size(), -1,
+                        settings.isVerbose());
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitFiles(Path dir) {
+            long t = System.nanoTime();
+            dp.resolve();
+            metrics.planningNanos.add(System.nanoTime() - t);
+            for (int k = 0; k < dp.size(); k++) {
+                if (dp.getState(k) != State.Planned) {
+                    stats.conflictCount.increment();
+                    fileEvent(out, dir, dp.getSource(k), dp.getTarget(k), FileStatus.Conflict, dp.getSize(k), -1, true);
+                }
+                else {
+                    fileEvent(out, dir, dp.getSource(k), dp.getTarget(k), FileStatus.Matched, dp.getSize(k), -1,
+                            settings.isDryRun() && settings.isVerbose());
+                }
+            }
+            for (String warning : dp.getWarnings()) {
+                stats.warningCount.increment();
+                out.log("WARNING: " + warning);
+            }
+            planSink.accept(dp);
+            metrics.directoryScanned(dir, System.nanoTime() - dirStartNanos, fileCount, dp.size());
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public void visitDirectoryRepeated(Path dir) {
+            stats.repeatedCount.increment();
+            out.log("WARNING: skipping " + dir + " (already processed, link loop or repeated mount)");
+        }
+
+        @Override
+        public void visitLinkSkipped(Path link) {
+            stats.skippedLinkCount.increment();
+            if (settings.isVerbose())
+                out.log("   not following link " + link);
+        }
+
+        @Override
+        public FileVisitResult visitDirectoryUnchanged(Path dir) {
+            if (cancelRequested)
+                return FileVisitResult.TERMINATE;
+            stats.unchangedCount.increment();
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public int getPendingCount(Path dir) {
+            return dp.size();
+        }
+
+        @Override
+        public FileVisitResult visitDirectoryFailed(Path dir, IOException e) {
+            out.log("ERROR: could not list directory " + dir + " (" + e + ")");
+            return FileVisitResult.CONTINUE;
+        }
+    }
+
+    // -------------------------------------------------------------------------
+
+    /**
+     * Phase 2: renames all files of the plan that are free of conflicts.
+     * @param journalFile the journal to be written, {@code null} for no journal
+     * @param append if {@code true}, the journal exists and was read for this plan
+     */
+    private void executePlan(RenamePlan plan, Path journalFile, boolean append) {
+        RenameJournal journal = null;
+        try {
+            if (journalFile != null) {
+                journal = append ?
+                        RenameJournal.append(journalFile, plan) :
+                        RenameJournal.create(journalFile, plan);
+            }
+            executePlan(plan, journal);
+            if (journal != null && !cancelRequested) {
+                journal.finish();
+            }
+        } catch (IOException e) {
+            listener.log("ERROR: journal " + journalFile + " failed, stopping (" + e + ")");
+            stats.errorCount.increment();
+        } finally {
+            if (journal != null) {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    listener.log("ERROR: could not close journal " + journalFile + " (" + e + ")");
+                    stats.errorCount.increment();
+                }
+            }
+        }
+    }
+
+    private void executePlan(RenamePlan plan, RenameJournal journal) throws IOException {
+        RenameExecutor executor = new RenameExecutor(metrics.timed(settings.getFileMover()),
+                settings.getMoveConcurrency(), settings.getMoveRetries(), RenameExecutor.DEFAULT_BACKOFF_MS);
+        // number of planned moves of each chapter group not reported yet:
+        int[] pending = new int[plan.getGroupCount()];
+        boolean[] groupFailed = new boolean[plan.getGroupCount()];
+        for (int i = 0; i < plan.size(); i++) {
+            if (plan.getGroup(i) >= 0 && plan.getState(i) == State.Planned)
+                pending[plan.getGroup(i)]++;
+        }
+        int[] entered = {-1};   // index of the last directory reported
+        long startNanos = System.nanoTime();
+        try {
+            executor.execute(plan, () -> cancelRequested, (d, i, error, nanos) -> {
+                Path dir = plan.getDirectory(d);
+                if (entered[0] != d) {
+                    listener.directoryEntered(dir, getLabel(dir));
+                    entered[0] = d;
+                }
+                fileMoved(plan, i, dir, error, nanos);
+                if (journal != null) {
+                    if (error == null)
+                        journal.completed(i);
+                    else
+                        journal.failed(i);
+                }
+                int g = plan.getGroup(i);
+                if (g >= 0) {
+                    groupFailed[g] |= (error != null);
+                    if (--pending[g] == 0 && groupFailed[g]) {
+                        rollbackGroup(plan, d, g, journal);
+                    }
+                }
+            });
+            // moves not started (after cancelling) remain planned, their groups must not be split:
+            for (int d = 0; d < plan.getDirectoryCount(); d++) {
+                for (int i = plan.getDirectoryStart(d); i < plan.getDirectoryEnd(d); i++) {
+                    int g = plan.getGroup(i);
+                    if (g >= 0 && pending[g] > 0) {
+                        pending[g] = 0;
+                        rollbackGroup(plan, d, g, journal);
+                    }
+                }
+            }
+        } finally {
+            metrics.movingNanos.add(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Moves the renamed files of a chapter group back, after another file of the
+     * group could not be renamed (or was not renamed because the run was cancelled).
+     * Files that cannot be moved back remain renamed.
+     */
+    private void rollbackGroup(RenamePlan plan, int d, int g, RenameJournal journal) throws IOException {
+        Path dir = plan.getDirectory(d);
+        for (int j = plan.getDirectoryStart(d); j < plan.getDirectoryEnd(d); j++) {
+            if (plan.getGroup(j) != g || plan.getState(j) != State.Done)
+                continue;
+            String source = plan.getSource(j);
+            String target = plan.getTarget(j);
+            try {
+                settings.getFileMover().move(dir.resolve(target), dir.resolve(source));
+            } catch (IOException e) {
+                stats.errorCount.increment();
+                listener.log("ERROR: could not restore " + source + " (" + e + ")");
+                continue;
+            }
+            plan.setState(j, State.Failed);
+            stats.renamedCount.decrement();
+            stats.rollbackCount.increment();
+            listener.log("   restored " + source + " (chapter group incomplete)");
+            if (journal != null)
+                journal.failed(j);
+        }
+    }
+
+    /**
+     * Records the result of moving the given plan entry.
+     * @param plan the rename plan
+     * @param i the index of the plan entry
+     * @param dir the directory containing the file
+     * @param error {@code null} if the file was properly renamed
+     * @param nanos the duration of the move
+     */
+    private void fileMoved(RenamePlan plan, int i, Path dir, IOException error, long nanos) {
+        String oldname = plan.getSource(i);
+        String newname = plan.getTarget(i);
+        if (error != null) {
+            plan.setState(i, State.Failed);
+            stats.errorCount.increment();
+            fileEvent(listener, dir, oldname, newname, FileStatus.Error, plan.getSize(i), nanos, true);
+            return;
+        }
+        plan.setState(i, State.Done);
+        stats.renamedCount.increment();
+        fileEvent(listener, dir, oldname, newname, FileStatus.Renamed, plan.getSize(i), nanos, settings.isVerbose());
+    }
+}
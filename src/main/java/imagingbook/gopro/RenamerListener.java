@@ -0,0 +1,74 @@
+package imagingbook.gopro;
+
+import java.nio.file.Path;
+
+/**
+ * Receives the output of a {@link RenamerEngine} run.
+ * Only {@link #log(String)} must be implemented, the default implementations
+ * of the remaining methods format the engine's events as plain text lines.
+ */
+public interface RenamerListener {
+
+    public enum FileStatus {
+        Ignored,    // name does not match the file name format
+        Matched,    // name matches, but file was not renamed (dry run)
+        Renamed,    // file was renamed
+        Error,      // file could not be renamed
+        Conflict    // file cannot be renamed because of a name conflict
+    }
+
+    /**
+     * Receives a line of text output.
+     * @param msg the message
+     */
+    public void log(String msg);
+
+    /**
+     * Called when the engine starts processing a new directory.
+     * @param dir the directory
+     * @param label the directory name to display
+     */
+    public default void directoryEntered(Path dir, String label) {
+        log("Directory: " + label);
+    }
+
+    /**
+     * Called for every file checked by the engine. Ignored, matched and renamed files are
+     * only reported in verbose mode.
+     * @param dir the directory containing the file
+     * @param name the current file name
+     * @param newName the mapped file name ({@code null} if the file is ignored)
+     * @param status the outcome for this file
+     */
+    public default void fileProcessed(Path dir, String name, String newName, FileStatus status) {
+        switch (status) {
+            case Ignored:
+                log("    ignoring " + name);
+                break;
+            case Matched:
+            case Renamed:
+                log("   renaming " + name + " -> " + newName);
+                break;
+            case Error:
+                log("ERROR: could not rename file " + name);
+                break;
+            case Conflict:
+                log("CONFLICT: cannot rename " + name + " -> " + newName);
+                break;
+        }
+    }
+
+    /**
+     * Called by the {@link RenamerEngine} instead of {@link #fileProcessed(Path, String, String, FileStatus)},
+     * with additional information. The default implementation ignores this information.
+     * @param dir the directory containing the file
+     * @param name the current file name
+     * @param newName the mapped file name ({@code null} if the file is ignored)
+     * @param status the outcome for this file
+     * @param size the file size, -1 if unknown
+     * @param nanos the duration of the move (renamed and failed files only), -1 otherwise
+     */
+    public default void fileProcessed(Path dir, String name, String newName, FileStatus status, long size, long nanos) {
+        fileProcessed(dir, name, newName, status);
+    }
+}
@@ -0,0 +1,418 @@
+package imagingbook.gopro;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Timings of a {@link RenamerEngine} run, for finding out where the time goes
+ * (e.g., on slow network shares): the time spent in each phase (scanning, with
+ * its parts listing, classification and planning, and moving), a latency histogram
+ * of the file moves, and the slowest directories. Like {@link RenamerStatistics},
+ * metrics are updated concurrently and may be read at any time, also through JMX
+ * (see {@link #register()}). After a run, all metrics can be written as JSON
+ * (see {@link #toJson()}).
+ * <p>
+ * Listing time is the time spent reading directories and file attributes,
+ * classification the time spent matching and mapping file names, planning the
+ * time spent resolving conflicts. Move latencies are collected in buckets of
+ * powers of 2 (in nanoseconds), so percentiles are accurate within a factor of 2.
+ */
+public class RenamerMetrics implements RenamerMetricsMBean {
+
+    static final String OBJECT_NAME = "imagingbook.gopro:type=RenamerMetrics";
+    static final int SLOWEST_DIRECTORIES = 10;
+    private static final AtomicInteger instanceCount = new AtomicInteger();
+
+    private final RenamerStatistics stats;
+    private volatile DirectoryWalker walker = null;
+
+    final LongAdder scanNanos = new LongAdder();
+    final LongAdder listingNanos = new LongAdder();
+    final LongAdder classificationNanos = new LongAdder();
+    final LongAdder planningNanos = new LongAdder();
+    final LongAdder movingNanos = new LongAdder();
+
+    private final AtomicLongArray moveBuckets = new AtomicLongArray(64);
+    private final LongAdder moveCount = new LongAdder();
+    private final LongAdder moveNanos = new LongAdder();
+    private final AtomicLong moveMaxNanos = new AtomicLong();
+
+    private final PriorityQueue<DirectoryTime> slowest = new PriorityQueue<>();    // guarded by itself
+    private ObjectName objectName = null;
+
+    /**
+     * The scan time of a single directory.
+     */
+    static class DirectoryTime implements Comparable<DirectoryTime> {
+        final Path dir;
+        final long nanos;
+        final int files;
+        final int matched;
+
+        DirectoryTime(Path dir, long nanos, int files, int matched) {
+            this.dir = dir;
+            this.nanos = nanos;
+            this.files = files;
+            this.matched = matched;
+        }
+
+        @Override
+        public int compareTo(DirectoryTime other) {
+            return Long.compare(nanos, other.nanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s: %.1f ms, %d files, %d matched", dir, nanos * 1e-6, files, matched);
+        }
+    }
+
+    /**
+     * @param stats the statistics of the same run (for the file counts)
+     */
+    public RenamerMetrics(RenamerStatistics stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Attaches the walker of the current scan, whose listing and classification
+     * times are then included live. Its times are added permanently by {@link #detachWalker()}.
+     */
+    void attachWalker(DirectoryWalker walker) {
+        this.walker = walker;
+    }
+
+    void detachWalker() {
+        DirectoryWalker w = walker;
+        if (w != null) {
+            listingNanos.add(w.getListingNanos());
+            classificationNanos.add(w.getVisitNanos());
+            walker = null;
+        }
+    }
+
+    /**
+     * Records the scan time of a directory.
+     * @param dir the directory
+     * @param nanos the time from entering the directory until its plan was built
+     * @param files the number of files checked
+     * @param matched the number of files matched
+     */
+    void directoryScanned(Path dir, long nanos, int files, int matched) {
+        synchronized (slowest) {
+            if (slowest.size() < SLOWEST_DIRECTORIES) {
+                slowest.add(new DirectoryTime(dir, nanos, files, matched));
+            } else if (nanos > slowest.peek().nanos) {
+                slowest.poll();
+                slowest.add(new DirectoryTime(dir, nanos, files, matched));
+            }
+        }
+    }
+
+    /**
+     * Records the duration of a single file move (successful or not).
+     * @param nanos the duration in nanoseconds
+     */
+    void moveTimed(long nanos) {
+        moveBuckets.incrementAndGet(bucket(nanos));
+        moveCount.increment();
+        moveNanos.add(nanos);
+        moveMaxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Returns a file mover recording the duration of each move of the given mover.
+     * @param mover the file mover
+     * @return the timed file mover
+     */
+    FileMover timed(FileMover mover) {
+        return (source, target) -> {
+            long t = System.nanoTime();
+            try {
+                mover.move(source, target);
+            } finally {
+                moveTimed(System.nanoTime() - t);
+            }
+        };
+    }
+
+    /**
+     * @return the histogram bucket of a duration: bucket b holds durations in [2^(b-1), 2^b) ns
+     */
+    static int bucket(long nanos) {
+        return Math.min(63, 64 - Long.numberOfLeadingZeros(Math.max(0, nanos)));
+    }
+
+    /**
+     * @return the number of moves in each histogram bucket (see {@link #bucket(long)})
+     */
+    public long[] getMoveHistogram() {
+        long[] counts = new long[moveBuckets.length()];
+        for (int b = 0; b < counts.length; b++) {
+            counts[b] = moveBuckets.get(b);
+        }
+        return counts;
+    }
+
+    /**
+     * Returns an upper bound of the move latency at the given quantile, i.e.,
+     * the upper end of the histogram bucket containing it (at most the maximum).
+     * @param q the quantile (0..1)
+     * @return the latency in nanoseconds, 0 if there were no moves
+     */
+    public long getMoveLatencyNanos(double q) {
+        long[] counts = getMoveHistogram();
+        long total = 0;
+        for (long c : counts)
+            total += c;
+        if (total == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        long sum = 0;
+        for (int b = 0; b < counts.length; b++) {
+            sum += counts[b];
+            if (sum >= rank)
+                return Math.min(moveMaxNanos.get(), (b == 0) ? 0 : (1L << b) - 1);
+        }
+        return moveMaxNanos.get();
+    }
+
+    // -------------------------------------------------------------------------
+
+    /**
+     * Registers this object with the platform MBean server. If another run is
+     * registered already, a numbered name is used.
+     * @throws JMException if registration fails
+     */
+    void register() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(name)) {
+            name = new ObjectName(OBJECT_NAME + ",name=run" + instanceCount.incrementAndGet());
+        }
+        server.registerMBean(this, name);
+        objectName = name;
+    }
+
+    /**
+     * Removes this object from the platform MBean server, if registered.
+     */
+    void unregister() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                // already gone
+            }
+            objectName = null;
+        }
+    }
+
+    ObjectName getObjectName() {
+        return objectName;
+    }
+
+    // -------------------------------------------------------------------------
+
+    private static long millis(long nanos) {
+        return nanos / 1000000;
+    }
+
+    @Override
+    public long getDirectoryCount() {
+        return stats.getDirectoryCount();
+    }
+
+    @Override
+    public long getCheckedCount() {
+        return stats.getCheckedCount();
+    }
+
+    @Override
+    public long getMatchedCount() {
+        return stats.getMatchedCount();
+    }
+
+    @Override
+    public long getConflictCount() {
+        return stats.getConflictCount();
+    }
+
+    @Override
+    public long getRenamedCount() {
+        return stats.getRenamedCount();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return stats.getErrorCount();
+    }
+
+    @Override
+    public long getScanMillis() {
+        return millis(scanNanos.sum());
+    }
+
+    @Override
+    public long getListingMillis() {
+        DirectoryWalker w = walker;
+        return millis(listingNanos.sum() + ((w != null) ? w.getListingNanos() : 0));
+    }
+
+    @Override
+    public long getClassificationMillis() {
+        DirectoryWalker w = walker;
+        return millis(classificationNanos.sum() + ((w != null) ? w.getVisitNanos() : 0));
+    }
+
+    @Override
+    public long getPlanningMillis() {
+        return millis(planningNanos.sum());
+    }
+
+    @Override
+    public long getMovingMillis() {
+        return millis(movingNanos.sum());
+    }
+
+    @Override
+    public long getMoveCount() {
+        return moveCount.sum();
+    }
+
+    @Override
+    public double getMovesPerSecond() {
+        long nanos = movingNanos.sum();
+        return (nanos > 0) ? getMoveCount() / (nanos * 1e-9) : 0;
+    }
+
+    @Override
+    public double getMoveLatencyMeanMillis() {
+        long n = moveCount.sum();
+        return (n > 0) ? moveNanos.sum() * 1e-6 / n : 0;
+    }
+
+    @Override
+    public double getMoveLatencyMedianMillis() {
+        return getMoveLatencyNanos(0.5) * 1e-6;
+    }
+
+    @Override
+    public double getMoveLatency99Millis() {
+        return getMoveLatencyNanos(0.99) * 1e-6;
+    }
+
+    @Override
+    public double getMoveLatencyMaxMillis() {
+        return moveMaxNanos.get() * 1e-6;
+    }
+
+    /**
+     * @return the slowest directories, slowest first
+     */
+    List<DirectoryTime> getSlowest() {
+        List<DirectoryTime> list;
+        synchronized (slowest) {
+            list = new ArrayList<>(slowest);
+        }
+        list.sort(Collections.reverseOrder());
+        return list;
+    }
+
+    @Override
+    public String[] getSlowestDirectories() {
+        List<DirectoryTime> list = getSlowest();
+        String[] result = new String[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i).toString();
+        }
+        return result;
+    }
+
+    @Override
+    public String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n");
+        sb.append("  \"counts\": {");
+        sb.append("\"directories\": ").append(getDirectoryCount());
+        sb.append(", \"checked\": ").append(getCheckedCount());
+        sb.append(", \"matched\": ").append(getMatchedCount());
+        sb.append(", \"conflicts\": ").append(getConflictCount());
+        sb.append(", \"renamed\": ").append(getRenamedCount());
+        sb.append(", \"errors\": ").append(getErrorCount());
+        sb.append(", \"cancelled\": ").append(stats.isCancelled()).append("},\n");
+        sb.append("  \"phasesMs\": {");
+        sb.append("\"scan\": ").append(getScanMillis());
+        sb.append(", \"listing\": ").append(getListingMillis());
+        sb.append(", \"classification\": ").append(getClassificationMillis());
+        sb.append(", \"planning\": ").append(getPlanningMillis());
+        sb.append(", \"moving\": ").append(getMovingMillis()).append("},\n");
+        sb.append("  \"moves\": {");
+        sb.append("\"count\": ").append(getMoveCount());
+        sb.append(", \"perSecond\": ").append(format(getMovesPerSecond()));
+        sb.append(", \"meanMs\": ").append(format(getMoveLatencyMeanMillis()));
+        sb.append(", \"medianMs\": ").append(format(getMoveLatencyMedianMillis()));
+        sb.append(", \"p99Ms\": ").append(format(getMoveLatency99Millis()));
+        sb.append(", \"maxMs\": ").append(format(getMoveLatencyMaxMillis()));
+        sb.append(", \"histogram\": [");
+        long[] counts = getMoveHistogram();
+        boolean first = true;
+        for (int b = 0; b < counts.length; b++) {
+            if (counts[b] == 0)
+                continue;
+            sb.append(first ? "" : ", ");
+            sb.append("{\"belowMs\": ").append(format((1L << b) * 1e-6)).append(", \"count\": ").append(counts[b]).append('}');
+            first = false;
+        }
+        sb.append("]},\n");
+        sb.append("  \"slowestDirectories\": [");
+        first = true;
+        for (DirectoryTime dt : getSlowest()) {
+            sb.append(first ? "\n" : ",\n");
+            sb.append("    {\"path\": ").append(quote(dt.dir.toString()));
+            sb.append(", \"ms\": ").append(format(dt.nanos * 1e-6));
+            sb.append(", \"files\": ").append(dt.files);
+            sb.append(", \"matched\": ").append(dt.matched).append('}');
+            first = false;
+        }
+        sb.append(first ? "]\n" : "\n  ]\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private static String format(double x) {
+        return String.format(Locale.ROOT, "%.3f", x);
+    }
+
+    static String quote(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20)
+                        sb.append(String.format("\\u%04x", (int) c));
+                    else
+                        sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,39 @@
+package imagingbook.gopro;
+
+/**
+ * The JMX management interface of {@link RenamerMetrics}, registered while a
+ * {@link RenamerEngine} runs (see {@link RenamerSettings#setJmxEnabled(boolean)}).
+ * All times are in milliseconds.
+ */
+public interface RenamerMetricsMBean {
+
+    public long getDirectoryCount();
+    public long getCheckedCount();
+    public long getMatchedCount();
+    public long getConflictCount();
+    public long getRenamedCount();
+    public long getErrorCount();
+
+    public long getScanMillis();
+    public long getListingMillis();
+    public long getClassificationMillis();
+    public long getPlanningMillis();
+    public long getMovingMillis();
+
+    public long getMoveCount();
+    public double getMovesPerSecond();
+    public double getMoveLatencyMeanMillis();
+    public double getMoveLatencyMedianMillis();
+    public double getMoveLatency99Millis();
+    public double getMoveLatencyMaxMillis();
+
+    /**
+     * @return the slowest directories scanned so far, with their scan times
+     */
+    public String[] getSlowestDirectories();
+
+    /**
+     * @return all metrics as a JSON object
+     */
+    public String toJson();
+}
@@ -0,0 +1,374 @@
+package imagingbook.gopro;
+
+import imagingbook.gopro.DirectoryWalker.SymlinkPolicy;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Settings for a single run of the {@link RenamerEngine}.
+ * Setters return {@code this}, so settings can be chained, e.g.,
+ * <pre>
+ * new RenamerSettings().setStartDir(dir).setDryRun(false).setMode(ProcessMode.Revert)</pre>
+ * The default values are those of the GUI's initial check boxes.
+ */
+public class RenamerSettings {
+
+    public enum ProcessMode {
+        Rename, Revert
+    }
+
+    private Path startDir = Paths.get(System.getProperty("user.dir"));
+    private boolean recursive = true;
+    private boolean verbose   = true;
+    private boolean dryRun    = true;
+    private boolean absDirs   = false;
+    private int parallelism   = 1;
+    private ProcessMode mode  = ProcessMode.Rename;
+    private FileNameFormat nameFormat = null;
+    private Path journalFile = null;
+    private int moveConcurrency = 1;
+    private int moveRetries = 3;
+    private FileMover fileMover = FileMover.DEFAULT;
+    private Path cacheFile = null;
+    private boolean cacheVerify = false;
+    private boolean findDuplicates = false;
+    private Path metricsFile = null;
+    private Path reportFile = null;
+    private boolean jmxEnabled = false;
+    private int deviceConcurrency = 1;
+    private SymlinkPolicy symlinkPolicy = SymlinkPolicy.Always;
+
+    public Path getStartDir() {
+        return startDir;
+    }
+
+    public RenamerSettings setStartDir(Path startDir) {
+        this.startDir = startDir;
+        return this;
+    }
+
+    public boolean isRecursive() {
+        return recursive;
+    }
+
+    public RenamerSettings setRecursive(boolean recursive) {
+        this.recursive = recursive;
+        return this;
+    }
+
+    public boolean isVerbose() {
+        return verbose;
+    }
+
+    public RenamerSettings setVerbose(boolean verbose) {
+        this.verbose = verbose;
+        return this;
+    }
+
+    public boolean isDryRun() {
+        return dryRun;
+    }
+
+    public RenamerSettings setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+        return this;
+    }
+
+    public boolean isAbsDirs() {
+        return absDirs;
+    }
+
+    public RenamerSettings setAbsDirs(boolean absDirs) {
+        this.absDirs = absDirs;
+        return this;
+    }
+
+    /**
+     * Returns the number of threads used for processing directories.
+     * A value of 1 (the default) means sequential processing.
+     * @return the number of threads
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads used for processing directories in recursive mode.
+     * A value of 0 means to use one thread per available processor.
+     * @param parallelism the number of threads (&ge; 0)
+     * @return this settings object
+     */
+    public RenamerSettings setParallelism(int parallelism) {
+        if (parallelism < 0) {
+            throw new IllegalArgumentException("parallelism must not be negative: " + parallelism);
+        }
+        this.parallelism = (parallelism == 0) ? Runtime.getRuntime().availableProcessors() : parallelism;
+        return this;
+    }
+
+    public ProcessMode getMode() {
+        return mode;
+    }
+
+    public RenamerSettings setMode(ProcessMode mode) {
+        this.mode = mode;
+        return this;
+    }
+
+    /**
+     * Returns the file name format used for matching and mapping file names.
+     * Unless set explicitly, this is a {@link FormatClassifier} for all formats
+     * registered in {@link FileNameFormats} in {@link ProcessMode#Rename} mode,
+     * and for their inverses in {@link ProcessMode#Revert} mode.
+     * @return the file name format
+     */
+    public FileNameFormat getNameFormat() {
+        if (nameFormat != null) {
+            return nameFormat;
+        }
+        return FileNameFormats.getClassifier(mode);
+    }
+
+    /**
+     * Sets a custom file name format, which overrides the default format
+     * associated with the process mode. Pass {@code null} to restore the default.
+     * @param nameFormat the file name format
+     * @return this settings object
+     */
+    public RenamerSettings setNameFormat(FileNameFormat nameFormat) {
+        this.nameFormat = nameFormat;
+        return this;
+    }
+
+    public Path getJournalFile() {
+        return journalFile;
+    }
+
+    /**
+     * Sets the file for recording all moves in a {@link RenameJournal}, which
+     * allows the run to be resumed or undone later. The file must not exist.
+     * No journal is written if {@code null} (the default) or in dry-run mode.
+     * @param journalFile the journal file
+     * @return this settings object
+     */
+    public RenamerSettings setJournalFile(Path journalFile) {
+        this.journalFile = journalFile;
+        return this;
+    }
+
+    /**
+     * Returns the maximum number of file moves performed concurrently.
+     * A value of 1 (the default) means sequential moves.
+     * @return the number of concurrent moves
+     */
+    public int getMoveConcurrency() {
+        return moveConcurrency;
+    }
+
+    /**
+     * Sets the maximum number of file moves performed concurrently, which
+     * speeds up renaming on network file systems (see {@link RenameExecutor}).
+     * @param moveConcurrency the number of concurrent moves (&ge; 1)
+     * @return this settings object
+     */
+    public RenamerSettings setMoveConcurrency(int moveConcurrency) {
+        if (moveConcurrency < 1) {
+            throw new IllegalArgumentException("move concurrency must be at least 1: " + moveConcurrency);
+        }
+        this.moveConcurrency = moveConcurrency;
+        return this;
+    }
+
+    /**
+     * Returns the maximum number of start directories on the same device (file store)
+     * processed at the same time by a {@link MultiRootRenamer}.
+     * @return the number of concurrent roots per device
+     */
+    public int getDeviceConcurrency() {
+        return deviceConcurrency;
+    }
+
+    /**
+     * Sets the maximum number of start directories on the same device processed at
+     * the same time (default 1), see {@link MultiRootRenamer}. Directories on different
+     * devices are always processed in parallel.
+     * @param deviceConcurrency the number of concurrent roots per device (&ge; 1)
+     * @return this settings object
+     */
+    public RenamerSettings setDeviceConcurrency(int deviceConcurrency) {
+        if (deviceConcurrency < 1) {
+            throw new IllegalArgumentException("device concurrency must be at least 1: " + deviceConcurrency);
+        }
+        this.deviceConcurrency = deviceConcurrency;
+        return this;
+    }
+
+    public SymlinkPolicy getSymlinkPolicy() {
+        return symlinkPolicy;
+    }
+
+    /**
+     * Sets which symbolic links to directories are followed (default is
+     * {@link SymlinkPolicy#Always}). Regardless of this policy, every directory
+     * is processed only once (see {@link DirectoryWalker}).
+     * @param symlinkPolicy the symbolic link policy
+     * @return this settings object
+     */
+    public RenamerSettings setSymlinkPolicy(SymlinkPolicy symlinkPolicy) {
+        this.symlinkPolicy = symlinkPolicy;
+        return this;
+    }
+
+    public int getMoveRetries() {
+        return moveRetries;
+    }
+
+    /**
+     * Sets the number of retries for a move failing with a transient error (default 3).
+     * @param moveRetries the number of retries (&ge; 0)
+     * @return this settings object
+     */
+    public RenamerSettings setMoveRetries(int moveRetries) {
+        if (moveRetries < 0) {
+            throw new IllegalArgumentException("move retries must not be negative: " + moveRetries);
+        }
+        this.moveRetries = moveRetries;
+        return this;
+    }
+
+    public FileMover getFileMover() {
+        return fileMover;
+    }
+
+    /**
+     * Sets the implementation of file moves, {@link FileMover#DEFAULT} unless set.
+     * @param fileMover the file mover
+     * @return this settings object
+     */
+    public RenamerSettings setFileMover(FileMover fileMover) {
+        this.fileMover = fileMover;
+        return this;
+    }
+
+    public Path getCacheFile() {
+        return cacheFile;
+    }
+
+    /**
+     * Sets the file of the {@link DirectoryCache}, which allows to skip directories
+     * unchanged since the previous run. The file is created if it does not exist.
+     * No cache is used if {@code null} (the default).
+     * @param cacheFile the cache file
+     * @return this settings object
+     */
+    public RenamerSettings setCacheFile(Path cacheFile) {
+        this.cacheFile = cacheFile;
+        return this;
+    }
+
+    public boolean isCacheVerify() {
+        return cacheVerify;
+    }
+
+    /**
+     * In cache verify mode, all directories are listed and compared to the
+     * cache, without skipping any directory (see {@link DirectoryCache#setVerify(boolean)}).
+     * @param cacheVerify {@code true} for verify mode
+     * @return this settings object
+     */
+    public RenamerSettings setCacheVerify(boolean cacheVerify) {
+        this.cacheVerify = cacheVerify;
+        return this;
+    }
+
+    public boolean isFindDuplicates() {
+        return findDuplicates;
+    }
+
+    /**
+     * Sets whether matched files are checked for identical contents (see {@link DuplicateFinder})
+     * after scanning, before any file is renamed. Duplicates are reported only.
+     * @param findDuplicates {@code true} for checking duplicates
+     * @return this settings object
+     */
+    public RenamerSettings setFindDuplicates(boolean findDuplicates) {
+        this.findDuplicates = findDuplicates;
+        return this;
+    }
+
+    public Path getMetricsFile() {
+        return metricsFile;
+    }
+
+    /**
+     * Sets the file to which the {@link RenamerMetrics} of a run are written
+     * as JSON when the run is finished. No file is written if {@code null} (the default).
+     * @param metricsFile the metrics file (replaced if it exists)
+     * @return this settings object
+     */
+    public RenamerSettings setMetricsFile(Path metricsFile) {
+        this.metricsFile = metricsFile;
+        return this;
+    }
+
+    public Path getReportFile() {
+        return reportFile;
+    }
+
+    /**
+     * Sets the file to which all file events of a run are written while it runs
+     * (see {@link ReportWriter}), e.g., "report.csv" or "report.ndjson.gz".
+     * No report is written if {@code null} (the default).
+     * @param reportFile the report file (replaced if it exists)
+     * @return this settings object
+     */
+    public RenamerSettings setReportFile(Path reportFile) {
+        this.reportFile = reportFile;
+        return this;
+    }
+
+    public boolean isJmxEnabled() {
+        return jmxEnabled;
+    }
+
+    /**
+     * Sets whether the {@link RenamerMetrics} of a run are registered as a JMX MBean
+     * while the engine is running (off by default, since starting the platform
+     * MBean server takes some time).
+     * @param jmxEnabled {@code true} for registering the metrics
+     * @return this settings object
+     */
+    public RenamerSettings setJmxEnabled(boolean jmxEnabled) {
+        this.jmxEnabled = jmxEnabled;
+        return this;
+    }
+
+    /**
+     * @return a new settings object with the same values
+     */
+    RenamerSettings copy() {
+        RenamerSettings s = new RenamerSettings();
+        s.startDir = startDir;
+        s.recursive = recursive;
+        s.verbose = verbose;
+        s.dryRun = dryRun;
+        s.absDirs = absDirs;
+        s.parallelism = parallelism;
+        s.mode = mode;
+        s.nameFormat = nameFormat;
+        s.journalFile = journalFile;
+        s.moveConcurrency = moveConcurrency;
+        s.moveRetries = moveRetries;
+        s.fileMover = fileMover;
+        s.cacheFile = cacheFile;
+        s.cacheVerify = cacheVerify;
+        s.findDuplicates = findDuplicates;
+        s.metricsFile = metricsFile;
+        s.reportFile = reportFile;
+        s.jmxEnabled = jmxEnabled;
+        s.deviceConcurrency = deviceConcurrency;
+        s.symlinkPolicy = symlinkPolicy;
+        return s;
+    }
+}
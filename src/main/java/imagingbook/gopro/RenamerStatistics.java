@@ -0,0 +1,161 @@
+package imagingbook.gopro;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * File counts collected during a single run of the {@link RenamerEngine}.
+ * Counts may be updated concurrently by several threads (in parallel mode)
+ * and read by other threads at any time, e.g., for displaying progress.
+ */
+public class RenamerStatistics {
+
+    final LongAdder directoryCount = new LongAdder();
+    final LongAdder checkedCount = new LongAdder();
+    final LongAdder matchedCount = new LongAdder();
+    final LongAdder renamedCount = new LongAdder();
+    final LongAdder errorCount   = new LongAdder();
+    final LongAdder conflictCount = new LongAdder();
+    final LongAdder attributeReadCount = new LongAdder();
+    final LongAdder unchangedCount = new LongAdder();
+    final LongAdder duplicateCount = new LongAdder();
+    final LongAdder warningCount = new LongAdder();
+    final LongAdder rollbackCount = new LongAdder();
+    final LongAdder repeatedCount = new LongAdder();
+    final LongAdder skippedLinkCount = new LongAdder();
+    volatile boolean cancelled = false;
+
+    /**
+     * @return the number of directories visited
+     */
+    public long getDirectoryCount() {
+        return directoryCount.sum();
+    }
+
+    /**
+     * @return the number of (non-hidden) files checked
+     */
+    public long getCheckedCount() {
+        return checkedCount.sum();
+    }
+
+    /**
+     * @return the number of files whose name matched the file name format
+     */
+    public long getMatchedCount() {
+        return matchedCount.sum();
+    }
+
+    /**
+     * @return the number of files actually renamed (always 0 for dry runs)
+     */
+    public long getRenamedCount() {
+        return renamedCount.sum();
+    }
+
+    /**
+     * @return the number of files that could not be renamed
+     */
+    public long getErrorCount() {
+        return errorCount.sum();
+    }
+
+    /**
+     * @return the number of matched files that cannot be renamed because of name conflicts
+     */
+    public long getConflictCount() {
+        return conflictCount.sum();
+    }
+
+    /**
+     * @return the number of file attribute reads performed while walking the directory tree
+     */
+    public long getAttributeReadCount() {
+        return attributeReadCount.sum();
+    }
+
+    /**
+     * @return the number of directories skipped because they are unchanged
+     * according to the {@link DirectoryCache}
+     */
+    public long getUnchangedCount() {
+        return unchangedCount.sum();
+    }
+
+    /**
+     * @return the number of matched files with the same contents as another matched
+     * file (not counting the first file of each group), only if duplicates are checked
+     * (see {@link RenamerSettings#setFindDuplicates(boolean)})
+     */
+    public long getDuplicateCount() {
+        return duplicateCount.sum();
+    }
+
+    /**
+     * @return the number of problems found in chapter groups, i.e., sidecar files
+     * without a video file and missing chapters
+     */
+    public long getWarningCount() {
+        return warningCount.sum();
+    }
+
+    /**
+     * @return the number of files moved back because another file of their chapter
+     * group could not be renamed
+     */
+    public long getRollbackCount() {
+        return rollbackCount.sum();
+    }
+
+    /**
+     * @return the number of directories skipped because they were processed before,
+     * i.e., reached again through a link loop, another symbolic link or another mount point
+     */
+    public long getRepeatedCount() {
+        return repeatedCount.sum();
+    }
+
+    /**
+     * @return the number of symbolic links to directories not followed because of
+     * the {@link DirectoryWalker.SymlinkPolicy}
+     */
+    public long getSkippedLinkCount() {
+        return skippedLinkCount.sum();
+    }
+
+    /**
+     * @return {@code true} if the run was cancelled before completion
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Adds the counts of another run to this statistics, e.g., for the total
+     * of several start directories (see {@link MultiRootRenamer}).
+     * @param other the statistics to add
+     */
+    void add(RenamerStatistics other) {
+        directoryCount.add(other.getDirectoryCount());
+        checkedCount.add(other.getCheckedCount());
+        matchedCount.add(other.getMatchedCount());
+        renamedCount.add(other.getRenamedCount());
+        errorCount.add(other.getErrorCount());
+        conflictCount.add(other.getConflictCount());
+        attributeReadCount.add(other.getAttributeReadCount());
+        unchangedCount.add(other.getUnchangedCount());
+        duplicateCount.add(other.getDuplicateCount());
+        warningCount.add(other.getWarningCount());
+        rollbackCount.add(other.getRollbackCount());
+        repeatedCount.add(other.getRepeatedCount());
+        skippedLinkCount.add(other.getSkippedLinkCount());
+        cancelled |= other.isCancelled();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("dirs=%d checked=%d matched=%d conflicts=%d renamed=%d errors=%d%s",
+                getDirectoryCount(), getCheckedCount(), getMatchedCount(), getConflictCount(),
+                getRenamedCount(), getErrorCount(),
+                cancelled ? " (cancelled)" : "");
+    }
+}
@@ -0,0 +1,175 @@
+package imagingbook.gopro;
+
+import imagingbook.gopro.RenamerListener.FileStatus;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes a report of all files seen by a {@link RenamerEngine} run, one record per
+ * event (file ignored, matched, in conflict, renamed or failed), as the events occur.
+ * Records are written through a buffer and never kept in memory, so reports of
+ * arbitrarily large trees take constant memory. Each record holds the directory,
+ * the file name, the new name, the status, the file size in bytes and the duration
+ * of the move in microseconds (the latter two are empty or {@code null} if unknown).
+ * <p>
+ * Two formats are supported: CSV (with a header line, fields quoted as in RFC 4180)
+ * and NDJSON (one JSON object per line). The format is chosen by the file name
+ * (see {@link #open(Path)}), a trailing ".gz" compresses the report with gzip.
+ * <p>
+ * Write errors do not interrupt the run: the first error stops the report and
+ * is thrown by {@link #close()}.
+ */
+public class ReportWriter implements Closeable {
+
+    public enum Format {CSV, NDJSON}
+
+    static final String CSV_HEADER = "directory,name,new_name,status,size,micros";
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Writer out;
+    private final Format format;
+    private final StringBuilder sb = new StringBuilder(256);
+    private Path lastDir = null;            // the directory of the previous record ...
+    private String lastDirField = null;     // ... and its quoted form
+    private long count = 0;
+    private IOException error = null;
+
+    /**
+     * Creates a report writer. The writer should be buffered.
+     * @param out the writer receiving the report (closed by {@link #close()})
+     * @param format the report format
+     */
+    public ReportWriter(Writer out, Format format) {
+        this.out = out;
+        this.format = format;
+        if (format == Format.CSV) {
+            append(CSV_HEADER + "\n");
+        }
+    }
+
+    /**
+     * Creates a report file, replacing an existing file. Names ending with ".csv"
+     * (or ".csv.gz") produce CSV, all other names NDJSON (e.g., ".ndjson" or ".jsonl").
+     * Names ending with ".gz" are compressed.
+     * @param file the report file
+     * @return a new report writer
+     * @throws IOException if the file cannot be created
+     */
+    public static ReportWriter open(Path file) throws IOException {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        boolean gzip = name.endsWith(".gz");
+        if (gzip) {
+            name = name.substring(0, name.length() - 3);
+        }
+        Format format = name.endsWith(".csv") ? Format.CSV : Format.NDJSON;
+        OutputStream os = Files.newOutputStream(file);
+        try {
+            if (gzip) {
+                os = new GZIPOutputStream(os, BUFFER_SIZE);
+            }
+        } catch (IOException e) {
+            os.close();
+            throw e;
+        }
+        return new ReportWriter(new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), BUFFER_SIZE), format);
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * @return the number of records written
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Writes a single record.
+     * @param dir the directory containing the file
+     * @param name the file name
+     * @param newName the new file name, {@code null} if none
+     * @param status the outcome for this file
+     * @param size the file size, -1 if unknown
+     * @param nanos the duration of the move, -1 if none
+     */
+    public synchronized void write(Path dir, String name, String newName, FileStatus status, long size, long nanos) {
+        if (error != null)
+            return;
+        if (dir != lastDir) {
+            lastDir = dir;
+            lastDirField = (format == Format.CSV) ? csv(dir.toString()) : RenamerMetrics.quote(dir.toString());
+        }
+        sb.setLength(0);
+        if (format == Format.CSV) {
+            sb.append(lastDirField).append(',').append(csv(name)).append(',');
+            if (newName != null)
+                sb.append(csv(newName));
+            sb.append(',').append(status).append(',');
+            if (size >= 0)
+                sb.append(size);
+            sb.append(',');
+            if (nanos >= 0)
+                sb.append(nanos / 1000);
+        } else {
+            sb.append("{\"directory\":").append(lastDirField);
+            sb.append(",\"name\":").append(RenamerMetrics.quote(name));
+            sb.append(",\"newName\":").append((newName != null) ? RenamerMetrics.quote(newName) : "null");
+            sb.append(",\"status\":\"").append(status).append('"');
+            sb.append(",\"size\":").append((size >= 0) ? Long.toString(size) : "null");
+            sb.append(",\"micros\":").append((nanos >= 0) ? Long.toString(nanos / 1000) : "null");
+            sb.append('}');
+        }
+        sb.append('\n');
+        append(sb);
+        count++;
+    }
+
+    private void append(CharSequence s) {
+        try {
+            out.append(s);
+        } catch (IOException e) {
+            error = e;
+        }
+    }
+
+    /**
+     * Quotes a CSV field if it contains a separator, quote or line break.
+     */
+    static String csv(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return '"' + s.replace("\"", "\"\"") + '"';
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Flushes and closes the report.
+     * @throws IOException if a record could not be written or the report could not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            out.close();
+        } catch (IOException e) {
+            if (error == null)
+                error = e;
+        }
+        if (error != null)
+            throw error;
+    }
+}
@@ -0,0 +1,203 @@
+package imagingbook.gopro;
+
+import imagingbook.gopro.RenamerListener.FileStatus;
+
+import java.util.Arrays;
+
+/**
+ * A bounded, column-oriented store for the results of {@link RenamerEngine} runs.
+ * Each row consists of a kind, a directory label, a file name and a new file name,
+ * kept in parallel arrays of fixed size. When the capacity is exhausted, the oldest
+ * rows are dropped (ring buffer). Rows can be filtered by kind; the filtered rows are
+ * found through an index of row sequence numbers, which is kept up to date while
+ * rows are appended. This class is not thread-safe.
+ */
+public class ResultStore {
+
+    public enum Kind {
+        Ignored, Matched, Renamed, Error, Conflict,     // same order as FileStatus
+        Directory, Message;
+
+        static Kind of(FileStatus status) {
+            return values()[status.ordinal()];
+        }
+    }
+
+    public enum Filter {
+        All, Renamed, Errors;
+
+        boolean accepts(Kind kind) {
+            switch (this) {
+                case Renamed:
+                    return kind == Kind.Renamed || kind == Kind.Matched;
+                case Errors:
+                    return kind == Kind.Error || kind == Kind.Conflict;
+                default:
+                    return true;
+            }
+        }
+    }
+
+    /**
+     * A single result row, used for passing rows between threads.
+     * Rows are not retained by the store, only their fields are copied.
+     */
+    public static class Entry {
+        final Kind kind;
+        final String dir;
+        final String name;
+        final String newName;
+
+        public Entry(Kind kind, String dir, String name, String newName) {
+            this.kind = kind;
+            this.dir = dir;
+            this.name = name;
+            this.newName = newName;
+        }
+    }
+
+    private static final Kind[] kindValues = Kind.values();
+
+    private final int capacity;
+    private final byte[] kinds;
+    private final String[] dirs;
+    private final String[] names;
+    private final String[] newNames;
+
+    private long first = 0;     // sequence number of the oldest row
+    private long next = 0;      // sequence number of the next row to be appended
+
+    private Filter filter = Filter.All;
+    private long[] index = new long[64];    // sequence numbers of rows accepted by the filter
+    private int indexStart = 0;
+    private int indexEnd = 0;
+
+    /**
+     * Creates a new store.
+     * @param capacity the maximum number of rows kept
+     */
+    public ResultStore(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.kinds = new byte[capacity];
+        this.dirs = new String[capacity];
+        this.names = new String[capacity];
+        this.newNames = new String[capacity];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of rows dropped since the store was created or cleared
+     */
+    public long getDroppedCount() {
+        return first;
+    }
+
+    public void add(Entry e) {
+        add(e.kind, e.dir, e.name, e.newName);
+    }
+
+    public void add(Kind kind, String dir, String name, String newName) {
+        if (next - first == capacity) {     // drop the oldest row
+            if (indexStart < indexEnd && index[indexStart] == first) {
+                indexStart++;
+            }
+            first++;
+        }
+        int slot = (int) (next % capacity);
+        kinds[slot] = (byte) kind.ordinal();
+        dirs[slot] = dir;
+        names[slot] = name;
+        newNames[slot] = newName;
+        if (filter != Filter.All && filter.accepts(kind)) {
+            addToIndex(next);
+        }
+        next++;
+    }
+
+    public void clear() {
+        first = 0;
+        next = 0;
+        indexStart = 0;
+        indexEnd = 0;
+        Arrays.fill(dirs, null);
+        Arrays.fill(names, null);
+        Arrays.fill(newNames, null);
+    }
+
+    public Filter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Selects which rows are visible. Rebuilding the index takes time
+     * proportional to the number of rows stored.
+     * @param filter the new filter
+     */
+    public void setFilter(Filter filter) {
+        this.filter = filter;
+        indexStart = 0;
+        indexEnd = 0;
+        if (filter != Filter.All) {
+            for (long seq = first; seq < next; seq++) {
+                if (filter.accepts(kindValues[kinds[(int) (seq % capacity)]])) {
+                    addToIndex(seq);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of visible rows
+     */
+    public int size() {
+        return (filter == Filter.All) ? (int) (next - first) : indexEnd - indexStart;
+    }
+
+    public Kind getKind(int row) {
+        return kindValues[kinds[slot(row)]];
+    }
+
+    public String getDir(int row) {
+        return dirs[slot(row)];
+    }
+
+    public String getName(int row) {
+        return names[slot(row)];
+    }
+
+    public String getNewName(int row) {
+        return newNames[slot(row)];
+    }
+
+    // -------------------------------------------------------------------------
+
+    private int slot(int row) {
+        if (row < 0 || row >= size()) {
+            throw new IndexOutOfBoundsException("row " + row + ", size " + size());
+        }
+        long seq = (filter == Filter.All) ? first + row : index[indexStart + row];
+        return (int) (seq % capacity);
+    }
+
+    private void addToIndex(long seq) {
+        if (indexEnd == index.length) {
+            int n = indexEnd - indexStart;
+            if (indexStart > index.length / 2) {    // enough room at the front
+                System.arraycopy(index, indexStart, index, 0, n);
+            } else {
+                long[] newIndex = new long[Math.min(2 * index.length, capacity + 1)];
+                System.arraycopy(index, indexStart, newIndex, 0, n);
+                index = newIndex;
+            }
+            indexStart = 0;
+            indexEnd = n;
+        }
+        index[indexEnd++] = seq;
+    }
+}
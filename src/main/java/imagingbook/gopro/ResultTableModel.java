@@ -0,0 +1,96 @@
+package imagingbook.gopro;
+
+import imagingbook.gopro.ResultStore.Entry;
+import imagingbook.gopro.ResultStore.Filter;
+import imagingbook.gopro.ResultStore.Kind;
+
+import javax.swing.table.AbstractTableModel;
+import java.util.List;
+
+/**
+ * Table model backed by a {@link ResultStore}. Since {@link javax.swing.JTable}
+ * only renders the visible rows, the cost of displaying results does not depend
+ * on the number of rows stored. Must only be used on the Event Dispatch Thread.
+ */
+public class ResultTableModel extends AbstractTableModel {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String[] columnNames = {"Status", "Directory", "File", "New name"};
+
+    private final ResultStore store;
+
+    public ResultTableModel(int capacity) {
+        this.store = new ResultStore(capacity);
+    }
+
+    /**
+     * Appends a batch of rows and notifies the table once.
+     * @param entries the new rows
+     */
+    public void addAll(List<Entry> entries) {
+        int oldSize = store.size();
+        long oldDropped = store.getDroppedCount();
+        for (Entry e : entries) {
+            store.add(e);
+        }
+        int newSize = store.size();
+        if (store.getDroppedCount() != oldDropped) {
+            fireTableDataChanged();     // rows were removed at the top
+        }
+        else if (newSize > oldSize) {
+            fireTableRowsInserted(oldSize, newSize - 1);
+        }
+    }
+
+    public void clear() {
+        store.clear();
+        fireTableDataChanged();
+    }
+
+    public Filter getFilter() {
+        return store.getFilter();
+    }
+
+    public void setFilter(Filter filter) {
+        store.setFilter(filter);
+        fireTableDataChanged();
+    }
+
+    /**
+     * @return the number of rows dropped because the capacity was exceeded
+     */
+    public long getDroppedCount() {
+        return store.getDroppedCount();
+    }
+
+    @Override
+    public int getRowCount() {
+        return store.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columnNames[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Kind kind = store.getKind(row);
+        switch (column) {
+            case 0:
+                return (kind == Kind.Message) ? "" : kind.name();
+            case 1:
+                return store.getDir(row);
+            case 2:
+                return store.getName(row);
+            default:
+                return store.getNewName(row);
+        }
+    }
+}
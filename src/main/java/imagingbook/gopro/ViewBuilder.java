@@ -0,0 +1,367 @@
+package imagingbook.gopro;
+
+import imagingbook.gopro.RenamerListener.FileStatus;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Builds a "view" of a source directory (e.g., a camera card that must not be
+ * modified, or a write-once archive volume) in which every GoPro file appears
+ * under its new name as a link to the original file, so that chapters are listed
+ * in the right order without moving or copying any data. The directory structure
+ * below the source directory is kept, files not matching the file name format
+ * are left out.
+ * <p>
+ * Files are linked by hard links where possible (i.e., if the view is on the same
+ * file store as the source), and by symbolic links otherwise (see {@link LinkMode}).
+ * An existing view is updated incrementally: links that are still correct are kept,
+ * links to files that were removed or renamed are deleted (together with directories
+ * left empty), and only missing links are created. The entries created are listed in
+ * a manifest file ({@value #MANIFEST}) in the view directory, and only entries listed
+ * there are ever deleted, so files in the view that were not created by this class are
+ * kept, even if their names look like mapped names. A hard link is not deleted if it
+ * is the last link to its data (i.e., the original file was deleted).
+ * The original file of any view entry can be found by {@link #getSource(Path)}.
+ */
+public class ViewBuilder {
+
+    /** The name of the file listing the entries created in the view directory. */
+    public static final String MANIFEST = ".gopro-view";
+
+    public enum LinkMode {
+        /** Hard links where possible, symbolic links otherwise. */
+        Auto,
+        /** Hard links only (source and view must be on the same file store). */
+        Hard,
+        /** Symbolic links (to the absolute paths of the original files) only. */
+        Symbolic
+    }
+
+    private final RenamerSettings settings;
+    private final RenamerListener listener;
+    private final FileNameFormat nameformat;
+    private final Path view;
+    private LinkMode linkMode = LinkMode.Auto;
+
+    private final RenamerStatistics stats = new RenamerStatistics();
+    private final LongAdder keptCount = new LongAdder();
+    private final LongAdder removedCount = new LongAdder();
+
+    /**
+     * @param settings the source directory is taken from {@link RenamerSettings#getStartDir()}
+     * @param listener receives the output
+     * @param view the view directory (created if necessary)
+     */
+    public ViewBuilder(RenamerSettings settings, RenamerListener listener, Path view) {
+        this.settings = settings;
+        this.listener = listener;
+        this.nameformat = settings.getNameFormat();
+        this.view = view;
+    }
+
+    public LinkMode getLinkMode() {
+        return linkMode;
+    }
+
+    /**
+     * Sets the kind of links created (default is {@link LinkMode#Auto}).
+     * @param linkMode the link mode
+     * @return this view builder
+     */
+    public ViewBuilder setLinkMode(LinkMode linkMode) {
+        this.linkMode = linkMode;
+        return this;
+    }
+
+    /**
+     * @return the number of correct links found in the existing view
+     */
+    public long getKeptCount() {
+        return keptCount.sum();
+    }
+
+    /**
+     * @return the number of outdated links deleted from the existing view
+     */
+    public long getRemovedCount() {
+        return removedCount.sum();
+    }
+
+    /**
+     * Creates or updates the view.
+     * @return the statistics of this run (links created are counted as renamed)
+     */
+    public RenamerStatistics run() {
+        Path source = settings.getStartDir();
+        if (!Files.isDirectory(source)) {
+            throw new IllegalArgumentException("Path is not a directory: " + source);
+        }
+        listener.log("Linking GoPro files into view " + view + (settings.isDryRun() ? " (DRY RUN) ..." : " ..."));
+
+        // the view entries required, in listing order (view entry -> original file):
+        Map<Path, Path> required = new LinkedHashMap<>();
+        Path absView = view.toAbsolutePath().normalize();
+        DirectoryWalker walker = new DirectoryWalker(settings.isRecursive(), settings.getSymlinkPolicy());
+        walker.walk(source, new DirectoryWalker.Visitor() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir) {
+                if (dir.toAbsolutePath().normalize().equals(absView))
+                    return FileVisitResult.SKIP_SUBTREE;        // view inside the source directory
+                stats.directoryCount.increment();
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                stats.checkedCount.increment();
+                String name = file.getFileName().toString();
+                FileNameFormat format = nameformat.classify(name);
+                if (format != null) {
+                    stats.matchedCount.increment();
+                    Path rel = source.relativize(file.getParent());
+                    required.put(view.resolve(rel.toString()).resolve(format.mapFileName(name)),
+                            file.toAbsolutePath());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        // compare with the existing view:
+        Set<String> created = readManifest();
+        Set<String> manifest = new TreeSet<>();     // the entries created by this and earlier runs
+        List<Path> outdated = new ArrayList<>();
+        Map<Path, Path> missing = new LinkedHashMap<>(required);
+        if (Files.isDirectory(view)) {
+            new DirectoryWalker(true).walk(view, new DirectoryWalker.Visitor() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir) {
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path entry, BasicFileAttributes attrs) {
+                    Path original = required.get(entry);
+                    boolean own = created.contains(getKey(entry));
+                    if (original != null && isLinkTo(entry, original)) {
+                        missing.remove(entry);
+                        keptCount.increment();
+                        if (own)
+                            manifest.add(getKey(entry));
+                    } else if (own) {
+                        if (Files.isSymbolicLink(entry) || getLinkCount(entry) > 1) {
+                            outdated.add(entry);
+                        } else {
+                            stats.warningCount.increment();
+                            listener.log("WARNING: keeping " + entry + ", the original file was deleted");
+                            manifest.add(getKey(entry));
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+
+        TreeSet<Path> emptied = new TreeSet<>();
+        for (Path entry : outdated) {
+            if (!settings.isDryRun()) {
+                try {
+                    Files.delete(entry);
+                } catch (IOException e) {
+                    stats.errorCount.increment();
+                    listener.log("ERROR: could not delete " + entry + " (" + e + ")");
+                    manifest.add(getKey(entry));
+                    continue;
+                }
+                for (Path dir = entry.getParent(); dir != null && dir.startsWith(view) && !dir.equals(view);
+                     dir = dir.getParent()) {
+                    emptied.add(dir);
+                }
+            }
+            removedCount.increment();
+            if (settings.isVerbose())
+                listener.log("   removing " + view.relativize(entry));
+        }
+        for (Path dir : emptied.descendingSet()) {      // sub-directories first
+            try {
+                Files.delete(dir);
+            } catch (DirectoryNotEmptyException | NoSuchFileException ignored) {
+            } catch (IOException e) {
+                listener.log("WARNING: could not delete " + dir + " (" + e + ")");
+            }
+        }
+
+        // create the missing links, directory by directory:
+        Path lastDir = null;
+        boolean hard = linkMode != LinkMode.Symbolic;
+        for (Map.Entry<Path, Path> e : missing.entrySet()) {
+            Path entry = e.getKey();
+            Path original = e.getValue();
+            if (!original.getParent().equals(lastDir)) {
+                lastDir = original.getParent();
+                listener.directoryEntered(lastDir, getLabel(lastDir));
+            }
+            String name = original.getFileName().toString();
+            String newName = entry.getFileName().toString();
+            if (settings.isDryRun()) {
+                if (settings.isVerbose())
+                    listener.fileProcessed(lastDir, name, newName, FileStatus.Matched);
+                continue;
+            }
+            if (Files.exists(entry, LinkOption.NOFOLLOW_LINKS)) {      // not created by this class
+                stats.conflictCount.increment();
+                listener.fileProcessed(lastDir, name, newName, FileStatus.Conflict);
+                continue;
+            }
+            try {
+                Files.createDirectories(entry.getParent());
+                hard = createLink(entry, original, hard);
+                manifest.add(getKey(entry));
+                stats.renamedCount.increment();
+                if (settings.isVerbose())
+                    listener.fileProcessed(lastDir, name, newName, FileStatus.Renamed);
+            } catch (IOException | UnsupportedOperationException ex) {
+                stats.errorCount.increment();
+                listener.fileProcessed(lastDir, name, newName, FileStatus.Error);
+                listener.log("       (" + ex + ")");
+            }
+        }
+
+        if (!settings.isDryRun() && Files.isDirectory(view)) {
+            try {
+                writeManifest(manifest);
+            } catch (IOException e) {
+                stats.errorCount.increment();
+                listener.log("ERROR: could not write " + view.resolve(MANIFEST) + " (" + e + ")");
+            }
+        }
+
+        listener.log("------------------------------");
+        listener.log("Files checked:  " + stats.getCheckedCount());
+        listener.log("Files matched:  " + stats.getMatchedCount());
+        listener.log("Links kept:     " + getKeptCount());
+        listener.log("Links removed:  " + getRemovedCount());
+        listener.log("Links created:  " + stats.getRenamedCount());
+        listener.log("File errors:    " + stats.getErrorCount());
+        return stats;
+    }
+
+    /**
+     * Creates a single link, a hard link if {@code hard} is true (falling back to a
+     * symbolic link in {@link LinkMode#Auto}, e.g., if the view is on another file store).
+     * @return whether hard links should be tried for the next files
+     */
+    private boolean createLink(Path entry, Path original, boolean hard) throws IOException {
+        if (hard) {
+            try {
+                Files.createLink(entry, original);
+                return true;
+            } catch (IOException | UnsupportedOperationException e) {
+                if (linkMode == LinkMode.Hard)
+                    throw e;
+            }
+        }
+        Files.createSymbolicLink(entry, original);
+        return false;
+    }
+
+    /**
+     * Checks if a view entry is a (hard or symbolic) link to the given file.
+     */
+    private static boolean isLinkTo(Path entry, Path original) {
+        try {
+            if (Files.isSymbolicLink(entry))
+                return Files.readSymbolicLink(entry).equals(original);
+            return Files.isSameFile(entry, original);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the number of hard links of a file, or 1 (i.e., the file must be kept)
+     * if this is unknown.
+     */
+    private static int getLinkCount(Path file) {
+        try {
+            return (Integer) Files.getAttribute(file, "unix:nlink", LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+            return 1;
+        }
+    }
+
+    /**
+     * Returns the manifest key of a view entry, i.e., its path relative to the view
+     * directory, with '/' as separator.
+     */
+    private String getKey(Path entry) {
+        return view.relativize(entry).toString().replace(File.separatorChar, '/');
+    }
+
+    private Set<String> readManifest() {
+        Path file = view.resolve(MANIFEST);
+        if (!Files.exists(file))
+            return Collections.emptySet();
+        try {
+            return new HashSet<>(Files.readAllLines(file, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            listener.log("WARNING: could not read " + file + ", no links are removed (" + e + ")");
+            return Collections.emptySet();
+        }
+    }
+
+    private void writeManifest(Set<String> keys) throws IOException {
+        Path file = view.resolve(MANIFEST);
+        Path tmp = view.resolve(MANIFEST + ".tmp");
+        Files.write(tmp, keys, StandardCharsets.UTF_8);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Finds the original file of a view entry (reverse mapping). For symbolic links,
+     * this is the link target, otherwise the original name is derived from the
+     * entry's name and position in the view.
+     * @param entry a file in the view
+     * @return the original file
+     * @throws IOException if the entry is not a file of this view
+     */
+    public Path getSource(Path entry) throws IOException {
+        if (Files.isSymbolicLink(entry)) {
+            return Files.readSymbolicLink(entry);
+        }
+        Path rel = view.toAbsolutePath().normalize().relativize(entry.toAbsolutePath().normalize());
+        FileNameFormat inverse = nameformat.getInverse();
+        String name = entry.getFileName().toString();
+        if (rel.startsWith("..") || inverse == null || !inverse.matchFileName(name)) {
+            throw new IOException("not an entry of view " + view + ": " + entry);
+        }
+        Path dir = settings.getStartDir().resolve(rel.toString()).getParent();
+        return dir.resolve(inverse.mapFileName(name)).toAbsolutePath();
+    }
+
+    private String getLabel(Path dir) {
+        if (settings.isAbsDirs()) {
+            return dir.toAbsolutePath().toString();
+        }
+        Path name = dir.getFileName();
+        return (name != null) ? name.toString() : dir.toString();
+    }
+}
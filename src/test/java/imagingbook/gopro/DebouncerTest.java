@@ -0,0 +1,59 @@
+package imagingbook.gopro;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class DebouncerTest {
+
+    private final Map<String, Long> sizes = new HashMap<>();
+    private final Debouncer<String> debouncer =
+            new Debouncer<>(100, key -> sizes.getOrDefault(key, -1L));
+
+    @Test
+    public void testQuietPeriod() {
+        sizes.put("a", 10L);
+        debouncer.touch("a", 0);
+        debouncer.touch("a", 50);
+        assertTrue(debouncer.poll(100).isEmpty());      // last event only 50 ms ago
+        assertTrue(debouncer.poll(150).isEmpty());      // first size check
+        assertTrue(debouncer.poll(200).isEmpty());      // size stable for 50 ms only
+        assertEquals(Collections.singletonList("a"), debouncer.poll(250));
+        assertEquals(0, debouncer.size());
+    }
+
+    @Test
+    public void testGrowingFile() {
+        sizes.put("a", 10L);
+        debouncer.touch("a", 0);
+        assertTrue(debouncer.poll(100).isEmpty());
+        sizes.put("a", 20L);                            // written without events
+        assertTrue(debouncer.poll(200).isEmpty());
+        assertTrue(debouncer.poll(250).isEmpty());
+        List<String> ready = debouncer.poll(300);
+        assertEquals(Collections.singletonList("a"), ready);
+    }
+
+    @Test
+    public void testNewEventRestartsQuietPeriod() {
+        sizes.put("a", 10L);
+        debouncer.touch("a", 0);
+        assertTrue(debouncer.poll(100).isEmpty());
+        debouncer.touch("a", 150);
+        assertTrue(debouncer.poll(200).isEmpty());
+        assertTrue(debouncer.poll(249).isEmpty());
+        assertEquals(1, debouncer.poll(250).size());
+    }
+
+    @Test
+    public void testVanishedFileDropped() {
+        debouncer.touch("gone", 0);
+        assertTrue(debouncer.poll(100).isEmpty());
+        assertEquals(0, debouncer.size());
+    }
+}
@@ -0,0 +1,126 @@
+package imagingbook.gopro;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DirectoryCacheTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final FileTime past = FileTime.fromMillis(System.currentTimeMillis() - 60000);
+
+    private static void touch(Path dir, String... names) throws IOException {
+        Files.createDirectories(dir);
+        for (String name : names) {
+            Files.createFile(dir.resolve(name));
+        }
+        Files.setLastModifiedTime(dir, past);     // avoid racy time stamps
+    }
+
+    private Path makeTree() throws IOException {
+        Path root = tmp.newFolder("data").toPath();
+        touch(root.resolve("day1"), "GH010527.MP4");
+        touch(root.resolve("day2/sub"), "y.txt");
+        touch(root.resolve("day2"), "x.txt");
+        touch(root, "notes.txt");
+        return root;
+    }
+
+    @Test
+    public void testSkipUnchanged() throws IOException {
+        Path root = makeTree();
+        Path cacheFile = tmp.getRoot().toPath().resolve("cache.bin");
+        RenamerSettings settings = new RenamerSettings().setStartDir(root).setCacheFile(cacheFile);
+
+        RenamerStatistics stats = new RenamerEngine(settings, msg -> { }).run();
+        assertEquals(4, stats.getCheckedCount());
+        assertEquals(0, stats.getUnchangedCount());
+        assertTrue(Files.exists(cacheFile));
+
+        // day1 is listed again, since it has a file to be renamed:
+        stats = new RenamerEngine(settings, msg -> { }).run();
+        assertEquals(1, stats.getCheckedCount());
+        assertEquals(1, stats.getMatchedCount());
+        assertEquals(3, stats.getUnchangedCount());
+
+        Files.createFile(root.resolve("day2/sub/GH010999.MP4"));
+        stats = new RenamerEngine(settings, msg -> { }).run();
+        assertEquals(3, stats.getCheckedCount());
+        assertEquals(2, stats.getMatchedCount());
+        assertEquals(2, stats.getUnchangedCount());
+    }
+
+    @Test
+    public void testRacyTimeStamp() throws IOException {
+        Path root = makeTree();
+        Files.createFile(root.resolve("day2/z.txt"));   // day2 was modified just now
+        Path cacheFile = tmp.getRoot().toPath().resolve("cache.bin");
+        RenamerSettings settings = new RenamerSettings().setStartDir(root).setCacheFile(cacheFile);
+        new RenamerEngine(settings, msg -> { }).run();
+        RenamerStatistics stats = new RenamerEngine(settings, msg -> { }).run();
+        assertEquals(2, stats.getUnchangedCount());     // root and day2/sub
+    }
+
+    @Test
+    public void testVerify() throws IOException {
+        Path root = makeTree();
+        Path cacheFile = tmp.getRoot().toPath().resolve("cache.bin");
+        RenamerSettings settings = new RenamerSettings().setStartDir(root).setCacheFile(cacheFile);
+        new RenamerEngine(settings, msg -> { }).run();
+
+        // change day2 without changing its time stamp:
+        Files.createFile(root.resolve("day2/GH010999.MP4"));
+        Files.setLastModifiedTime(root.resolve("day2"), past);
+        List<String> lines = new ArrayList<>();
+        RenamerStatistics stats = new RenamerEngine(settings.setCacheVerify(true), lines::add).run();
+        assertEquals(5, stats.getCheckedCount());
+        assertEquals(2, stats.getMatchedCount());
+        assertTrue(lines.contains("WARNING: 1 directories changed without a new time stamp, " +
+                "the directory cache is not safe here!"));
+    }
+
+    @Test
+    public void testSaveLoadAndEvict() throws IOException {
+        Path cacheFile = tmp.getRoot().toPath().resolve("cache.bin");
+        DirectoryCache cache = DirectoryCache.create("fmt");
+        List<String> noDirs = Collections.emptyList();
+        for (int i = 0; i < 10; i++) {
+            cache.store(Paths.get("dir" + i), 1000 + i, 1000000, 3, 2, 0, noDirs, null);
+        }
+        cache.store(Paths.get("racy"), 1000000, 1000000, 3, 2, 0, noDirs, null);
+        assertEquals(10, cache.size());
+        cache.save(cacheFile);
+
+        DirectoryCache loaded = DirectoryCache.load(cacheFile, "fmt");
+        assertEquals(10, loaded.size());
+        assertNotNull(loaded.lookup(Paths.get("dir3"), 1003));
+        assertNull(loaded.lookup(Paths.get("dir3"), 1004));
+        assertEquals(0, DirectoryCache.load(cacheFile, "other").size());
+
+        // entries seen in the current walk are kept:
+        loaded.setMaxEntries(4);
+        loaded.lookup(Paths.get("dir5"), 1005);
+        loaded.save(cacheFile);
+        assertEquals(4, loaded.size());
+        assertNotNull(loaded.lookup(Paths.get("dir5"), 1005));
+
+        // unseen entries are evicted after maxAge walks:
+        for (int k = 0; k < DirectoryCache.DEFAULT_MAX_AGE; k++) {
+            DirectoryCache.load(cacheFile, "fmt").save(cacheFile);
+        }
+        assertEquals(0, DirectoryCache.load(cacheFile, "fmt").size());
+    }
+}
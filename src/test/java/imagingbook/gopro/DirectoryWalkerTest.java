@@ -0,0 +1,157 @@
+package imagingbook.gopro;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DirectoryWalkerTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static List<String> walk(Path root, DirectoryWalker walker) {
+        List<String> visited = new ArrayList<>();
+        walker.walk(root, new DirectoryWalker.Visitor() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir) {
+                visited.add("D:" + root.relativize(dir));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                visited.add("F:" + root.relativize(file));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return visited;
+    }
+
+    @Test
+    public void testPreOrder() throws IOException {
+        Path root = tmp.getRoot().toPath();
+        Files.createDirectories(root.resolve("a/b"));
+        Files.createDirectories(root.resolve("c"));
+        Files.createDirectories(root.resolve(".hidden"));
+        Files.createFile(root.resolve("a/b/f3"));
+        Files.createFile(root.resolve("a/f2"));
+        Files.createFile(root.resolve("c/f4"));
+        Files.createFile(root.resolve("f1"));
+        Files.createFile(root.resolve(".f0"));
+
+        DirectoryWalker walker = new DirectoryWalker(true);
+        List<String> visited = walk(root, walker);
+        // listing order within a directory is unspecified:
+        assertEquals("D:", visited.get(0));
+        assertEquals("F:f1", visited.get(1));
+        int a = visited.indexOf("D:a"), c = visited.indexOf("D:c");
+        assertTrue(a > 0 && c > 0);
+        List<String> aTree = Arrays.asList("D:a", "F:a/f2", "D:a/b", "F:a/b/f3");
+        List<String> cTree = Arrays.asList("D:c", "F:c/f4");
+        if (a < c) {
+            assertEquals(aTree, visited.subList(2, 6));
+            assertEquals(cTree, visited.subList(6, 8));
+        } else {
+            assertEquals(cTree, visited.subList(2, 4));
+            assertEquals(aTree, visited.subList(4, 8));
+        }
+        assertEquals(8, visited.size());
+
+        assertEquals(4, walker.getDirectoryCount());
+        assertEquals(9, walker.getEntryCount());
+        // one attribute read per non-hidden entry:
+        assertEquals(7, walker.getAttributeReadCount());
+    }
+
+    @Test
+    public void testNonRecursive() throws IOException {
+        Path root = tmp.getRoot().toPath();
+        Files.createDirectories(root.resolve("a"));
+        Files.createFile(root.resolve("a/f2"));
+        Files.createFile(root.resolve("f1"));
+        assertEquals(Arrays.asList("D:", "F:f1"), walk(root, new DirectoryWalker(false)));
+    }
+
+    @Test
+    public void testDeepTree() throws IOException {
+        Path root = tmp.getRoot().toPath();
+        Path dir = root;
+        for (int i = 0; i < 500; i++) {
+            dir = dir.resolve("d");
+        }
+        Files.createDirectories(dir);
+        Files.createFile(dir.resolve("f"));
+        List<String> visited = walk(root, new DirectoryWalker(true));
+        assertEquals(502, visited.size());
+        assertTrue(visited.get(501).endsWith("/f"));
+    }
+
+    private static int[] walkLinks(Path root, DirectoryWalker.SymlinkPolicy policy) {
+        return walkLinks(root, policy, null);
+    }
+
+    private static int[] walkLinks(Path root, DirectoryWalker.SymlinkPolicy policy, DirectoryCache cache) {
+        int[] counts = new int[3];      // walked, repeated, links skipped
+        DirectoryWalker walker = new DirectoryWalker(true, policy);
+        walker.setCache(cache);
+        walker.walk(root, new DirectoryWalker.Visitor() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir) {
+                counts[0]++;
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public void visitDirectoryRepeated(Path dir) {
+                counts[1]++;
+            }
+
+            @Override
+            public void visitLinkSkipped(Path link) {
+                counts[2]++;
+            }
+        });
+        return counts;
+    }
+
+    @Test
+    public void testSymbolicLinks() throws IOException {
+        Path root = tmp.newFolder("root").toPath();
+        Path outside = tmp.newFolder("outside").toPath();
+        Files.createDirectories(root.resolve("a"));
+        Files.createFile(root.resolve("a/f1"));
+        Files.createSymbolicLink(root.resolve("b"), root.resolve("a"));     // same directory twice
+        Files.createSymbolicLink(root.resolve("c"), outside);
+        Files.createSymbolicLink(root.resolve("a/loop"), root);            // link loop
+
+        // root, a (or b) and c, each once:
+        assertArrayEquals(new int[] {3, 2, 0}, walkLinks(root, DirectoryWalker.SymlinkPolicy.Always));
+        // c is outside:
+        assertArrayEquals(new int[] {2, 2, 1}, walkLinks(root, DirectoryWalker.SymlinkPolicy.WithinRoot));
+        // b, c and loop are links:
+        assertArrayEquals(new int[] {2, 0, 3}, walkLinks(root, DirectoryWalker.SymlinkPolicy.Never));
+
+        // root unchanged according to the cache, its sub-directories are checked the same way:
+        DirectoryCache cache = DirectoryCache.create("fmt");
+        long mtime = Files.getLastModifiedTime(root).toMillis();
+        cache.store(root, mtime, mtime + 60000, 3, 0, 0, Arrays.asList("a", "b", "c"), null);
+        assertArrayEquals(new int[] {2, 2, 0}, walkLinks(root, DirectoryWalker.SymlinkPolicy.Always, cache));
+        assertArrayEquals(new int[] {1, 0, 3}, walkLinks(root, DirectoryWalker.SymlinkPolicy.Never, cache));
+    }
+}
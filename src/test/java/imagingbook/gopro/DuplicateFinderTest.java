@@ -0,0 +1,104 @@
+package imagingbook.gopro;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DuplicateFinderTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final int LARGE = 3 * DuplicateFinder.SAMPLE_COUNT * DuplicateFinder.SAMPLE_SIZE + 12345;
+
+    private static byte[] randomBytes(int n, long seed) {
+        byte[] b = new byte[n];
+        new Random(seed).nextBytes(b);
+        return b;
+    }
+
+    private static Path write(Path dir, String name, byte[] content) throws IOException {
+        Files.createDirectories(dir);
+        return Files.write(dir.resolve(name), content);
+    }
+
+    private static DuplicateFinder register(Path... files) throws IOException {
+        DuplicateFinder finder = new DuplicateFinder();
+        for (Path f : files) {
+            finder.add(f, Files.size(f));
+        }
+        return finder;
+    }
+
+    @Test
+    public void testFindDuplicates() throws IOException {
+        Path root = tmp.getRoot().toPath();
+        byte[] video = randomBytes(LARGE, 1);
+        byte[] modified = video.clone();
+        modified[DuplicateFinder.SAMPLE_SIZE + 1] ^= 1;     // not in any sample
+        Path a = write(root.resolve("card1"), "GH010527.MP4", video);
+        Path b = write(root.resolve("card2"), "GH010527.MP4", video);
+        Path c = write(root.resolve("card3"), "GH010527.MP4", modified);
+        Path d = write(root.resolve("card1"), "GH010528.MP4", randomBytes(LARGE + 1, 2));
+        Path e = write(root.resolve("card1"), "GL010527.LRV", randomBytes(1000, 3));
+        Path f = write(root.resolve("card2"), "GL010527.LRV", randomBytes(1000, 3));
+
+        DuplicateFinder finder = register(a, b, c, d, e, f, a);
+        assertEquals(6, finder.size());
+        List<Path> failed = new ArrayList<>();
+        List<List<Path>> groups = finder.findDuplicates(2, (file, ex) -> failed.add(file));
+        assertTrue(failed.isEmpty());
+        assertEquals(Arrays.asList(Arrays.asList(a, b), Arrays.asList(e, f)), groups);
+        assertEquals(3, finder.getSampledCount());      // d has a unique size
+        assertEquals(5, finder.getHashedCount());       // a, b, c and the small files
+    }
+
+    @Test
+    public void testSampledReadsOnly() throws IOException {
+        Path root = tmp.getRoot().toPath();
+        Path a = write(root, "GH010527.MP4", randomBytes(LARGE, 1));
+        Path b = write(root, "GH010528.MP4", randomBytes(LARGE, 2));
+        DuplicateFinder finder = register(a, b);
+        assertTrue(finder.findDuplicates(1, (file, ex) -> fail()).isEmpty());
+        assertEquals(0, finder.getHashedCount());
+        assertEquals(2L * DuplicateFinder.SAMPLE_COUNT * DuplicateFinder.SAMPLE_SIZE, finder.getByteCount());
+    }
+
+    @Test
+    public void testUnreadableFile() throws IOException {
+        Path root = tmp.getRoot().toPath();
+        Path a = write(root, "GH010527.MP4", randomBytes(100, 1));
+        Path b = write(root, "GH010528.MP4", randomBytes(100, 1));
+        DuplicateFinder finder = register(a, b);
+        Files.delete(b);
+        List<Path> failed = new ArrayList<>();
+        assertTrue(finder.findDuplicates(1, (file, ex) -> failed.add(file)).isEmpty());
+        assertEquals(Arrays.asList(b), failed);
+    }
+
+    @Test
+    public void testEngineReportsDuplicates() throws IOException {
+        Path root = tmp.getRoot().toPath();
+        byte[] video = randomBytes(LARGE, 1);
+        write(root.resolve("card1"), "GH010527.MP4", video);
+        write(root.resolve("card2"), "GH010527.MP4", video);
+        write(root.resolve("card2"), "notes.txt", video);       // not matched
+        List<String> lines = new ArrayList<>();
+        RenamerSettings settings = new RenamerSettings().setStartDir(root).setFindDuplicates(true);
+        RenamerStatistics stats = new RenamerEngine(settings, lines::add).run();
+        assertEquals(1, stats.getDuplicateCount());
+        String sep = root.getFileSystem().getSeparator();
+        assertTrue(lines.contains("DUPLICATE: card1" + sep + "GH010527.MP4 = card2" + sep + "GH010527.MP4"));
+        assertTrue(lines.contains("Duplicates:     1"));
+    }
+}
@@ -0,0 +1,46 @@
+package imagingbook.gopro;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class FileKeySetTest {
+
+    @Test
+    public void testAddContains() {
+        FileKeySet set = new FileKeySet();
+        assertTrue(set.add(0, 0));
+        assertFalse(set.add(0, 0));
+        assertTrue(set.add(0, 1));
+        assertTrue(set.add(1, 0));
+        assertTrue(set.add(-1, Long.MAX_VALUE));
+        assertFalse(set.add(1, 0));
+        assertTrue(set.contains(-1, Long.MAX_VALUE));
+        assertFalse(set.contains(2, 0));
+        assertEquals(4, set.size());
+        set.clear();
+        assertEquals(0, set.size());
+        assertFalse(set.contains(0, 0));
+    }
+
+    @Test
+    public void testGrowth() {
+        FileKeySet set = new FileKeySet();
+        Set<String> reference = new HashSet<>();
+        Random random = new Random(17);
+        for (int i = 0; i < 200000; i++) {
+            long dev = random.nextInt(4);
+            long ino = random.nextInt(150000);      // some keys repeat
+            assertEquals(reference.add(dev + ":" + ino), set.add(dev, ino));
+        }
+        assertEquals(reference.size(), set.size());
+        for (String key : reference) {
+            String[] parts = key.split(":");
+            assertTrue(set.contains(Long.parseLong(parts[0]), Long.parseLong(parts[1])));
+        }
+    }
+}
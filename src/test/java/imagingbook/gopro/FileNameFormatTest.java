@@ -2,15 +2,12 @@ package imagingbook.gopro;
 
 import org.junit.Test;
 
-import java.io.File;
-
 import static org.junit.Assert.*;
 
 public class FileNameFormatTest {
 
     @Test
     public void testStripFileExtension() {
-        GoProFileRenamer renamer = new GoProFileRenamer();
         assertEquals("GH010527", FileNameFormat.stripFileExtension("GH010527.MP4"));
         assertEquals("GH010527", FileNameFormat.stripFileExtension("GH010527.foo"));
         assertEquals("GH010527", FileNameFormat.stripFileExtension("GH010527"));
@@ -58,4 +55,33 @@ public class FileNameFormatTest {
         assertEquals("GX010446.MP4", renamer.mapFileName("044601-GX010446.MP4"));
         assertEquals("GL010446.MP4", renamer.mapFileName("044601-GL010446.MP4"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testLegacyFormat() {
+        FileNameFormat format = new FileNameFormat.LegacyGoproFormat();
+        assertTrue(format.matchFileName("GOPR0527.MP4"));
+        assertTrue(format.matchFileName("GP010527.MP4"));
+        assertFalse(format.matchFileName("GOPX0527.MP4"));
+        assertFalse(format.matchFileName("GH010527.MP4"));
+        assertEquals("052700-GOPR0527.MP4", format.mapFileName("GOPR0527.MP4"));
+        assertEquals("052703-GP030527.THM", format.mapFileName("GP030527.THM"));
+
+        FileNameFormat inverse = format.getInverse();
+        assertTrue(inverse.matchFileName("052700-GOPR0527.MP4"));
+        assertTrue(inverse.matchFileName("052703-GP030527.THM"));
+        assertFalse(inverse.matchFileName("052701-GOPR0527.MP4"));
+        assertFalse(inverse.matchFileName("052803-GP030527.THM"));
+        assertEquals("GOPR0527.MP4", inverse.mapFileName("052700-GOPR0527.MP4"));
+    }
+
+    @Test
+    public void testSphericalFormat() {
+        FileNameFormat format = new FileNameFormat.SphericalGoproFormat();
+        assertTrue(format.matchFileName("GS010527.360"));
+        assertFalse(format.matchFileName("GH010527.360"));
+        assertEquals("052701-GS010527.360", format.mapFileName("GS010527.360"));
+        assertTrue(format.getInverse().matchFileName("052701-GS010527.360"));
+        assertFalse(format.getInverse().matchFileName("052701-GH010527.MP4"));
+        assertEquals("GS010527.360", format.getInverse().mapFileName("052701-GS010527.360"));
+    }
+}
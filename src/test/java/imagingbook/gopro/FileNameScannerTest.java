@@ -0,0 +1,123 @@
+package imagingbook.gopro;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the character-level matching in {@link FileNameScanner} with the
+ * original regex-based implementation on many random file names.
+ */
+public class FileNameScannerTest {
+
+    private static final String alphabet = "GHLXS0123456789-.aM";
+    private static final int N = 200000;
+
+    // the original (regex-based) implementations:
+
+    private static boolean matchOriginalRegex(String fName) {
+        String rName = FileNameFormat.stripFileExtension(fName);
+        return FileNameFormat.OriginalGoproFormat.pat.matcher(rName).matches();
+    }
+
+    private static boolean matchRenamedRegex(String fName) {
+        String rName = FileNameFormat.stripFileExtension(fName);
+        if (!FileNameFormat.RenamedGoproFormat.pat.matcher(rName).matches())
+            return false;
+        String videoNo = rName.substring(0, 4);
+        if (!videoNo.equals(rName.substring(11, 15)))
+            return false;
+        String chapNo = fName.substring(4, 6);
+        return chapNo.equals(rName.substring(9, 11));
+    }
+
+    private static String mapOriginalConcat(String fName) {
+        return fName.substring(4, 8) + fName.substring(2, 4) + "-" + fName;
+    }
+
+    // random names, most of them close to valid GoPro names:
+
+    private static String randomName(Random rnd) {
+        StringBuilder sb = new StringBuilder();
+        switch (rnd.nextInt(4)) {
+            case 0:     // completely random
+                int n = rnd.nextInt(20);
+                for (int i = 0; i < n; i++) {
+                    sb.append(alphabet.charAt(rnd.nextInt(alphabet.length())));
+                }
+                return sb.toString();
+            case 1:     // original name
+                sb.append(String.format("G%c%02d%04d", "HLXS".charAt(rnd.nextInt(4)), rnd.nextInt(100), rnd.nextInt(10000)));
+                break;
+            default:    // renamed name (mostly consistent)
+                int video = rnd.nextInt(10000), chap = rnd.nextInt(100);
+                int video2 = rnd.nextInt(5) == 0 ? rnd.nextInt(10000) : video;
+                int chap2 = rnd.nextInt(5) == 0 ? rnd.nextInt(100) : chap;
+                sb.append(String.format("%04d%02d-G%c%02d%04d", video, chap, "HLXS".charAt(rnd.nextInt(4)), chap2, video2));
+        }
+        if (rnd.nextInt(4) > 0) {
+            sb.append(rnd.nextBoolean() ? ".MP4" : ".LRV");
+        }
+        // mutate some characters:
+        int mutations = rnd.nextInt(3) == 0 ? 1 + rnd.nextInt(2) : 0;
+        for (int i = 0; i < mutations && sb.length() > 0; i++) {
+            int pos = rnd.nextInt(sb.length());
+            switch (rnd.nextInt(3)) {
+                case 0:
+                    sb.setCharAt(pos, alphabet.charAt(rnd.nextInt(alphabet.length())));
+                    break;
+                case 1:
+                    sb.deleteCharAt(pos);
+                    break;
+                default:
+                    sb.insert(pos, alphabet.charAt(rnd.nextInt(alphabet.length())));
+            }
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testMatchOriginalSameAsRegex() {
+        Random rnd = new Random(17);
+        FileNameFormat format = new FileNameFormat.OriginalGoproFormat();
+        int matches = 0;
+        for (int i = 0; i < N; i++) {
+            String name = randomName(rnd);
+            boolean expected = matchOriginalRegex(name);
+            assertEquals(name, expected, format.matchFileName(name));
+            assertEquals(name, expected, FileNameScanner.matchOriginal(new StringBuilder(name)));
+            if (expected) {
+                assertEquals(mapOriginalConcat(name), format.mapFileName(name));
+                matches++;
+            }
+        }
+        assertTrue(matches > N / 10);
+    }
+
+    @Test
+    public void testMatchRenamedSameAsRegex() {
+        Random rnd = new Random(23);
+        FileNameFormat format = new FileNameFormat.RenamedGoproFormat();
+        int matches = 0;
+        for (int i = 0; i < N; i++) {
+            String name = randomName(rnd);
+            boolean expected = matchRenamedRegex(name);
+            assertEquals(name, expected, format.matchFileName(name));
+            if (expected) {
+                matches++;
+            }
+        }
+        assertTrue(matches > N / 10);
+    }
+
+    @Test
+    public void testBaseLength() {
+        assertEquals(8, FileNameScanner.baseLength("GH010527.MP4"));
+        assertEquals(8, FileNameScanner.baseLength("GH010527"));
+        assertEquals(7, FileNameScanner.baseLength("foo.bar.txt"));
+        assertEquals(0, FileNameScanner.baseLength(".MP4"));
+        assertEquals(0, FileNameScanner.baseLength(""));
+    }
+}
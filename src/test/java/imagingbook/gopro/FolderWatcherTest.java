@@ -0,0 +1,53 @@
+package imagingbook.gopro;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class FolderWatcherTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static boolean waitFor(Path file) throws InterruptedException {
+        for (int i = 0; i < 200 && !Files.exists(file); i++) {
+            Thread.sleep(50);
+        }
+        return Files.exists(file);
+    }
+
+    @Test
+    public void testRenameNewFiles() throws IOException, InterruptedException {
+        Path root = tmp.getRoot().toPath();
+        Files.createFile(root.resolve("GH010527.MP4"));      // present at startup
+        RenamerSettings settings = new RenamerSettings().setStartDir(root).setDryRun(false).setVerbose(false);
+        FolderWatcher watcher = new FolderWatcher(settings, msg -> { }, 100);
+        Thread thread = new Thread(() -> {
+            try {
+                watcher.run();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        try {
+            assertTrue(waitFor(root.resolve("052701-GH010527.MP4")));
+            Path card = Files.createDirectory(root.resolve("card"));
+            Files.write(card.resolve("GX020446.MP4"), new byte[1000]);
+            Files.createFile(root.resolve("notes.txt"));
+            assertTrue(waitFor(card.resolve("044602-GX020446.MP4")));
+            assertTrue(Files.exists(root.resolve("notes.txt")));
+        } finally {
+            watcher.stop();
+            thread.join(5000);
+        }
+        assertFalse(thread.isAlive());
+        assertEquals(2, watcher.getStatistics().getRenamedCount());
+    }
+}
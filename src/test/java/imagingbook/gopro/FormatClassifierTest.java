@@ -0,0 +1,136 @@
+package imagingbook.gopro;
+
+import imagingbook.gopro.RenamerSettings.ProcessMode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FormatClassifierTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testRegistry() {
+        List<FileNameFormat> formats = FileNameFormats.getFormats();
+        assertEquals(3, formats.size());
+        assertTrue(formats.get(0) instanceof FileNameFormat.OriginalGoproFormat);
+        assertSame(FileNameFormats.getClassifier(ProcessMode.Rename), FileNameFormats.getClassifier(ProcessMode.Rename));
+        assertNotEquals(FileNameFormats.getClassifier(ProcessMode.Rename).getKey(),
+                FileNameFormats.getClassifier(ProcessMode.Revert).getKey());
+    }
+
+    @Test
+    public void testClassify() {
+        FormatClassifier c = FileNameFormats.getClassifier(ProcessMode.Rename);
+        assertTrue(c.classify("GH010527.MP4") instanceof FileNameFormat.OriginalGoproFormat);
+        assertTrue(c.classify("GOPR0527.MP4") instanceof FileNameFormat.LegacyGoproFormat);
+        assertTrue(c.classify("GP010527.LRV") instanceof FileNameFormat.LegacyGoproFormat);
+        assertTrue(c.classify("GS010527.360") instanceof FileNameFormat.SphericalGoproFormat);
+        for (String name : new String[] {"notes.txt", "GH01052.MP4", "GOPRO527.MP4", "052701-GH010527.MP4",
+                "GH0105270.MP4", "GÄ010527.MP4", "", ".MP4", "G"}) {
+            assertNull(name, c.classify(name));
+        }
+        assertEquals("044600-GOPR0446.MP4", c.mapFileName("GOPR0446.MP4"));
+        assertEquals("044601-GX010446.MP4", c.mapFileName("GX010446.MP4"));
+    }
+
+    @Test
+    public void testClassifyInverse() {
+        FormatClassifier c = FileNameFormats.getClassifier(ProcessMode.Revert);
+        assertTrue(c.classify("052701-GH010527.MP4") instanceof FileNameFormat.RenamedGoproFormat);
+        assertTrue(c.classify("052700-GOPR0527.MP4") instanceof FileNameFormat.RenamedLegacyGoproFormat);
+        assertTrue(c.classify("052701-GS010527.360") instanceof FileNameFormat.RenamedSphericalGoproFormat);
+        assertNull(c.classify("052801-GH010527.MP4"));  // inconsistent video numbers
+        assertNull(c.classify("GH010527.MP4"));
+        assertEquals("GP020446.MP4", c.mapFileName("044602-GP020446.MP4"));
+    }
+
+    @Test
+    public void testSameResultAsFormats() {
+        // the classifier must agree with trying each format in turn
+        FormatClassifier c = FileNameFormats.getClassifier(ProcessMode.Rename);
+        String[] names = {"GH010527.MP4", "GL990001.LRV", "GX010527", "GOPR0001.JPG", "GP010001.THM",
+                "GS000000.360", "GHX10527.MP4", "gh010527.mp4", "GOPR00001.MP4", "GP01.MP4", "GSX10527.360"};
+        for (String name : names) {
+            FileNameFormat expected = null;
+            for (FileNameFormat f : FileNameFormats.getFormats()) {
+                if (f.matchFileName(name)) {
+                    expected = f;
+                    break;
+                }
+            }
+            assertSame(name, expected, c.classify(name));
+        }
+    }
+
+    @Test
+    public void testUnpatternedAndOverlappingFormats() {
+        FileNameFormat dsc = new FileNameFormat() {     // no name patterns
+            @Override
+            public boolean matchFileName(String fName) {
+                return fName.startsWith("DSC");
+            }
+
+            @Override
+            public String mapFileName(String fName) {
+                return "x" + fName;
+            }
+        };
+        FileNameFormat any = new FileNameFormat() {     // overlaps with the GoPro format
+            @Override
+            public boolean matchFileName(String fName) {
+                return true;
+            }
+
+            @Override
+            public String mapFileName(String fName) {
+                return fName;
+            }
+
+            @Override
+            public List<String> getNamePatterns() {
+                return Collections.singletonList("G#[ABC]####");
+            }
+        };
+        FormatClassifier c = new FormatClassifier(Arrays.asList(new FileNameFormat.OriginalGoproFormat(), dsc, any));
+        assertSame(dsc, c.classify("DSC01234.ARW"));
+        assertTrue(c.classify("GH010527.MP4") instanceof FileNameFormat.OriginalGoproFormat);
+        assertSame(any, c.classify("G1B1234.MP4"));
+        assertNull(c.classify("G1D1234.MP4"));      // not matching the pattern
+    }
+
+    @Test
+    public void testCompactTrie() {
+        // digits form a single character class, so the renamed pattern needs few nodes
+        FormatClassifier c = new FormatClassifier(Collections.singletonList(new FileNameFormat.RenamedGoproFormat()));
+        assertTrue(c.getNodeCount() < 40);
+    }
+
+    @Test
+    public void testRenameAndRevertAllFormats() throws IOException {
+        Path root = tmp.getRoot().toPath();
+        String[] names = {"GH010527.MP4", "GOPR0528.MP4", "GP010528.MP4", "GS010529.360"};
+        for (String name : names) {
+            Files.createFile(root.resolve(name));
+        }
+        RenamerSettings settings = new RenamerSettings().setStartDir(root).setDryRun(false);
+        assertEquals(4, new RenamerEngine(settings, msg -> { }).run().getRenamedCount());
+        assertTrue(Files.exists(root.resolve("052800-GOPR0528.MP4")));
+        assertTrue(Files.exists(root.resolve("052901-GS010529.360")));
+        settings.setMode(ProcessMode.Revert);
+        assertEquals(4, new RenamerEngine(settings, msg -> { }).run().getRenamedCount());
+        for (String name : names) {
+            assertTrue(name, Files.exists(root.resolve(name)));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package imagingbook.gopro;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IngesterTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static byte[] randomBytes(int n, long seed) {
+        byte[] data = new byte[n];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private Path makeCard() throws IOException {
+        Path card = tmp.newFolder("DCIM").toPath();
+        Path dir = Files.createDirectories(card.resolve("100GOPRO"));
+        Files.write(dir.resolve("GH010527.MP4"), randomBytes(3 * Ingester.BUFFER_SIZE + 17, 1));
+        Files.write(dir.resolve("GL010527.LRV"), randomBytes(1000, 2));
+        Files.write(dir.resolve("notes.txt"), randomBytes(10, 3));
+        Files.setLastModifiedTime(dir.resolve("GH010527.MP4"), FileTime.fromMillis(1500000000000L));
+        return card;
+    }
+
+    @Test
+    public void testIngest() throws IOException {
+        Path card = makeCard();
+        Path archive = tmp.getRoot().toPath().resolve("archive");
+        for (boolean verify : new boolean[] {false, true}) {
+            Path dest = archive.resolve("verify-" + verify);
+            RenamerSettings settings = new RenamerSettings().setStartDir(card).setDryRun(false).setParallelism(2);
+            Ingester ingester = new Ingester(settings, msg -> { }, dest).setVerify(verify);
+            RenamerStatistics stats = ingester.run();
+            assertEquals(3, stats.getCheckedCount());
+            assertEquals(2, stats.getRenamedCount());
+            assertEquals(0, stats.getErrorCount());
+            assertEquals(3 * Ingester.BUFFER_SIZE + 17 + 1000, ingester.getByteCount());
+
+            Path copy = dest.resolve("100GOPRO/052701-GH010527.MP4");
+            assertArrayEquals(Files.readAllBytes(card.resolve("100GOPRO/GH010527.MP4")), Files.readAllBytes(copy));
+            assertEquals(1500000000000L, Files.getLastModifiedTime(copy).toMillis());
+            assertTrue(Files.exists(dest.resolve("100GOPRO/052701-GL010527.LRV")));
+            assertFalse(Files.exists(dest.resolve("100GOPRO/notes.txt")));
+            assertTrue(Files.exists(card.resolve("100GOPRO/GH010527.MP4")));
+        }
+    }
+
+    @Test
+    public void testExistingTargets() throws IOException {
+        Path card = makeCard();
+        Path dest = tmp.getRoot().toPath().resolve("archive");
+        RenamerSettings settings = new RenamerSettings().setStartDir(card).setDryRun(false);
+        new Ingester(settings, msg -> { }, dest).run();
+
+        // same sizes: already copied, skipped
+        Ingester ingester = new Ingester(settings, msg -> { }, dest);
+        RenamerStatistics stats = ingester.run();
+        assertEquals(0, stats.getRenamedCount());
+        assertEquals(2, ingester.getSkippedCount());
+        assertEquals(0, ingester.getByteCount());
+
+        // same size, different contents: skipped without, conflict with verification
+        Path lrv = dest.resolve("100GOPRO/052701-GL010527.LRV");
+        byte[] other = randomBytes(1000, 4);
+        Files.write(lrv, other);
+        assertEquals(0, new Ingester(settings, msg -> { }, dest).run().getConflictCount());
+        ingester = new Ingester(settings, msg -> { }, dest).setVerify(true);
+        stats = ingester.run();
+        assertEquals(1, stats.getConflictCount());
+        assertEquals(1, ingester.getSkippedCount());
+        assertArrayEquals(other, Files.readAllBytes(lrv));
+
+        // different size: conflict, not overwritten
+        Files.write(dest.resolve("100GOPRO/052701-GL010527.LRV"), new byte[5]);
+        stats = new Ingester(settings, msg -> { }, dest).run();
+        assertEquals(1, stats.getConflictCount());
+        assertEquals(5, Files.size(dest.resolve("100GOPRO/052701-GL010527.LRV")));
+    }
+
+    @Test
+    public void testDryRun() throws IOException {
+        Path card = makeCard();
+        Path dest = tmp.getRoot().toPath().resolve("archive");
+        RenamerStatistics stats = new Ingester(new RenamerSettings().setStartDir(card), msg -> { }, dest).run();
+        assertEquals(2, stats.getMatchedCount());
+        assertFalse(Files.exists(dest));
+    }
+}
@@ -0,0 +1,65 @@
+package imagingbook.gopro;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link FileMover} simulating a network file system: every move takes
+ * (at least) a fixed latency. Transient failures can be injected for
+ * particular files. Also records the maximum number of concurrent moves.
+ */
+public class LatencyFileMover implements FileMover {
+
+    private final long latencyMs;
+    private final Map<String, AtomicInteger> failures = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final AtomicInteger moveCount = new AtomicInteger();
+
+    public LatencyFileMover(long latencyMs) {
+        this.latencyMs = latencyMs;
+    }
+
+    /**
+     * Lets the next moves of the given file fail with a (transient) {@link IOException}.
+     * @param name the source file name
+     * @param count the number of failing attempts
+     * @return this file mover
+     */
+    public LatencyFileMover failTimes(String name, int count) {
+        failures.put(name, new AtomicInteger(count));
+        return this;
+    }
+
+    @Override
+    public void move(Path source, Path target) throws IOException {
+        int n = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(n, Math::max);
+        moveCount.incrementAndGet();
+        try {
+            Thread.sleep(latencyMs);
+            AtomicInteger f = failures.get(source.getFileName().toString());
+            if (f != null && f.getAndDecrement() > 0) {
+                throw new IOException("simulated network error: " + source);
+            }
+            Files.move(source, target);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    public int getMoveCount() {
+        return moveCount.get();
+    }
+}
@@ -0,0 +1,77 @@
+package imagingbook.gopro;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Starts the {@link Launcher} in a separate JVM, as a script would, and checks
+ * that the command line path does not load any GUI classes. The measured startup
+ * times are printed, so regressions show in the test output.
+ */
+public class LauncherTest {
+
+    private static final Pattern GUI_CLASS = Pattern.compile("\\b(java\\.awt|javax\\.swing|javax\\.imageio|sun\\.awt)\\.");
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static class Result {
+        int exitCode;
+        List<String> lines = new ArrayList<>();
+        long millis;
+    }
+
+    private static Result launch(String... args) throws IOException, InterruptedException {
+        List<String> cmd = new ArrayList<>(Arrays.asList(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-verbose:class", "-cp", System.getProperty("java.class.path"), Launcher.class.getName()));
+        cmd.addAll(Arrays.asList(args));
+        Result result = new Result();
+        long start = System.nanoTime();
+        Process p = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8))) {
+            for (String line = r.readLine(); line != null; line = r.readLine())
+                result.lines.add(line);
+        }
+        result.exitCode = p.waitFor();
+        result.millis = (System.nanoTime() - start) / 1000000;
+        return result;
+    }
+
+    @Test
+    public void testHeadlessStartup() throws Exception {
+        Path dir = tmp.newFolder("videos").toPath();
+        Files.createFile(dir.resolve("GH010527.MP4"));
+        Result result = launch("--quiet", dir.toString());
+        System.out.println("LauncherTest: dry run of 1 file took " + result.millis + " ms (including JVM startup)");
+        assertEquals(RenamerCli.EXIT_OK, result.exitCode);
+        assertTrue(result.lines.contains("Files matched:  1"));
+        List<String> guiClasses = result.lines.stream().filter(s -> GUI_CLASS.matcher(s).find())
+                .collect(Collectors.toList());
+        assertEquals("GUI classes loaded: " + guiClasses, 0, guiClasses.size());
+    }
+
+    @Test
+    public void testVersion() throws Exception {
+        Result result = launch("--version");
+        System.out.println("LauncherTest: --version took " + result.millis + " ms (including JVM startup)");
+        assertEquals(RenamerCli.EXIT_OK, result.exitCode);
+        assertFalse(result.lines.stream().anyMatch(s -> GUI_CLASS.matcher(s).find()));
+    }
+}
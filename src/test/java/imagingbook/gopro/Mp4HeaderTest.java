@@ -0,0 +1,171 @@
+package imagingbook.gopro;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class Mp4HeaderTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    // ---- building synthetic MP4 files ----
+
+    private static byte[] box(String type, byte[]... content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        int size = 8;
+        for (byte[] c : content)
+            size += c.length;
+        out.writeInt(size);
+        out.writeBytes(type);
+        for (byte[] c : content)
+            out.write(c);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] mvhd(int version, long creation, int timescale, long duration) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(version << 24);
+        if (version == 1) {
+            out.writeLong(creation);
+            out.writeLong(creation);
+            out.writeInt(timescale);
+            out.writeLong(duration);
+        } else {
+            out.writeInt((int) creation);
+            out.writeInt((int) creation);
+            out.writeInt(timescale);
+            out.writeInt((int) duration);
+        }
+        out.write(new byte[80]);    // rate, volume, matrix etc.
+        return box("mvhd", bytes.toByteArray());
+    }
+
+    private static byte[] trak(String handlerType, byte[] name, String format) throws IOException {
+        ByteArrayOutputStream hdlr = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(hdlr);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeBytes(handlerType);
+        out.write(new byte[12]);
+        out.write(name);
+        ByteArrayOutputStream stsd = new ByteArrayOutputStream();
+        out = new DataOutputStream(stsd);
+        out.writeInt(0);
+        out.writeInt(1);
+        out.writeInt(16);
+        out.writeBytes(format);
+        out.write(new byte[8]);
+        return box("trak", box("tkhd", new byte[84]),
+                box("mdia", box("hdlr", hdlr.toByteArray()),
+                        box("minf", box("stbl", box("stsd", stsd.toByteArray())))));
+    }
+
+    private static final long creation1904 = LocalDateTime.of(2023, 5, 1, 10, 30, 0)
+            .toEpochSecond(ZoneOffset.UTC) + Mp4Header.EPOCH_OFFSET;
+
+    /**
+     * Writes an MP4 file with a (sparse) media data box of the given size, followed by the movie box.
+     */
+    static Path writeMp4(Path file, long mdatSize, long creation, boolean largeSize) throws IOException {
+        byte[] counted = "\tGoPro AVC".getBytes(StandardCharsets.US_ASCII);
+        byte[] moov = box("moov", mvhd(largeSize ? 1 : 0, creation, 1000, 61500),
+                trak("vide", counted, "avc1"),
+                trak("meta", "GoPro MET\0".getBytes(StandardCharsets.US_ASCII), "gpmd"));
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.wrap(box("ftyp", "mp41".getBytes(StandardCharsets.US_ASCII), new byte[4])));
+            ByteBuffer mdat = ByteBuffer.allocate(16);
+            if (largeSize) {
+                mdat.putInt(1).put("mdat".getBytes(StandardCharsets.US_ASCII)).putLong(mdatSize + 16);
+            } else {
+                mdat.putInt((int) (mdatSize + 8)).put("mdat".getBytes(StandardCharsets.US_ASCII));
+            }
+            mdat.flip();
+            long pos = ch.position() + mdat.remaining() + mdatSize;
+            ch.write(mdat);
+            ch.write(ByteBuffer.wrap(moov), pos);      // leaves a hole for the media data
+        }
+        return file;
+    }
+
+    // ---- tests ----
+
+    @Test
+    public void testReadHeader() throws IOException {
+        Path file = writeMp4(tmp.getRoot().toPath().resolve("GH010527.MP4"), 100000, creation1904, false);
+        Mp4Header header = Mp4Header.read(file);
+        assertEquals(LocalDateTime.of(2023, 5, 1, 10, 30, 0), header.getCreationTime());
+        assertEquals(61.5, header.getDuration(), 1e-9);
+        assertEquals(LocalDateTime.of(2023, 5, 1, 10, 31, 1, 500000000), header.getEndTime());
+        assertEquals(2, header.getTracks().size());
+        assertEquals("vide", header.getTracks().get(0).getHandlerType());
+        assertEquals("GoPro AVC", header.getTracks().get(0).getHandlerName());
+        assertEquals("avc1", header.getTracks().get(0).getSampleFormat());
+        assertEquals("GoPro MET", header.getTracks().get(1).getHandlerName());
+        assertTrue(header.hasTelemetry());
+    }
+
+    @Test
+    public void testLargeFile() throws IOException {
+        // 5 GB of (sparse) media data, with 64-bit box sizes:
+        Path file = writeMp4(tmp.getRoot().toPath().resolve("GX010446.MP4"), 5L << 30, creation1904, true);
+        Mp4Header header = Mp4Header.read(file);
+        assertEquals(LocalDateTime.of(2023, 5, 1, 10, 30, 0), header.getCreationTime());
+        assertEquals(61.5, header.getDuration(), 1e-9);
+    }
+
+    @Test(expected = IOException.class)
+    public void testNoMovieBox() throws IOException {
+        Path file = tmp.getRoot().toPath().resolve("GH010001.THM");
+        Files.write(file, new byte[] {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0, 0, 0, 0, 0, 0});
+        Mp4Header.read(file);
+    }
+
+    @Test
+    public void testTruncatedMovieHeader() throws IOException {
+        Path file = tmp.getRoot().toPath().resolve("GH010529.MP4");
+        byte[] version1 = new byte[] {1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0};     // version 1, but only 12 bytes
+        Files.write(file, box("moov", box("mvhd", version1), trak("vide", new byte[1], "avc1")));
+        try {
+            Mp4Header.read(file);
+            fail("truncated mvhd box not detected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("invalid mvhd box"));
+        }
+    }
+
+    @Test
+    public void testTimeline() throws IOException {
+        Path dir = tmp.getRoot().toPath();
+        writeMp4(dir.resolve("GH010527.MP4"), 100, creation1904, false);
+        writeMp4(dir.resolve("GH020527.MP4"), 100, creation1904 + 60, false);
+        writeMp4(dir.resolve("GH010528.MP4"), 100, creation1904 - 3600, false);   // clock was reset
+        Files.createFile(dir.resolve("GL010527.LRV"));
+        Files.write(dir.resolve("GH030527.MP4"), box("moov", box("mvhd", new byte[4])));     // damaged chapter
+        List<String> lines = new ArrayList<>();
+        RenamerStatistics stats = new RecordingTimeline(new RenamerSettings().setStartDir(dir), lines::add).run();
+        assertEquals(1, stats.getWarningCount());
+        assertEquals(1, stats.getErrorCount());
+        assertEquals(4, stats.getMatchedCount());
+        assertTrue(lines.contains("WARNING: video 0528 was recorded 3600 s before video 0527, camera clock reset?"));
+        assertTrue(lines.stream().anyMatch(s -> s.startsWith("ERROR: could not read MP4 header of GH030527.MP4")));
+    }
+}
@@ -0,0 +1,100 @@
+package imagingbook.gopro;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MultiRootRenamerTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Path makeRoot(String name, String... files) throws IOException {
+        Path root = tmp.getRoot().toPath().resolve(name);
+        Files.createDirectories(root);
+        for (String f : files)
+            Files.createFile(root.resolve(f));
+        return root;
+    }
+
+    @Test
+    public void testDevicesInParallel() throws IOException {
+        Path card = makeRoot("card", "GH010527.MP4");
+        Path disk = makeRoot("disk", "GH010528.MP4", "GH020528.MP4");
+        // each move waits for a move on the other device:
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        FileMover mover = (source, target) -> {
+            if (source.getFileName().toString().startsWith("GH01")) {
+                try {
+                    barrier.await(10, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new IOException(e);
+                }
+            }
+            Files.move(source, target);
+        };
+        RenamerSettings settings = new RenamerSettings().setDryRun(false).setFileMover(mover);
+        List<String> output = new ArrayList<>();
+        MultiRootRenamer renamer = new MultiRootRenamer(settings, output::add, Arrays.asList(card, disk));
+        renamer.setDeviceResolver(root -> root.getFileName().toString());
+        RenamerStatistics stats = renamer.run();
+
+        assertEquals(0, stats.getErrorCount());
+        assertEquals(3, stats.getRenamedCount());
+        assertEquals(1, renamer.getStatistics(0).getRenamedCount());
+        assertEquals(2, renamer.getStatistics(1).getRenamedCount());
+        assertTrue(Files.exists(card.resolve("052701-GH010527.MP4")));
+
+        // output in the order of the roots:
+        int a = output.indexOf("   renaming GH010527.MP4 -> 052701-GH010527.MP4");
+        int b = output.indexOf("   renaming GH010528.MP4 -> 052801-GH010528.MP4");
+        assertTrue(a >= 0 && b > a);
+        assertTrue(output.get(0).contains("2 roots on 2 devices"));
+        assertTrue(output.contains("Total files renamed:  3"));
+    }
+
+    @Test
+    public void testSameDeviceSequential() throws IOException {
+        Path root1 = makeRoot("a", "GH010527.MP4", "GH020527.MP4");
+        Path root2 = makeRoot("b", "GH010528.MP4", "GH020528.MP4");
+        LatencyFileMover mover = new LatencyFileMover(20);
+        RenamerSettings settings = new RenamerSettings().setDryRun(false).setVerbose(false).setFileMover(mover);
+        MultiRootRenamer renamer = new MultiRootRenamer(settings, msg -> { }, Arrays.asList(root1, root2));
+        renamer.setDeviceResolver(root -> "disk");
+        assertEquals(4, renamer.run().getRenamedCount());
+        assertEquals(1, mover.getMaxInFlight());
+    }
+
+    @Test
+    public void testNestedRoots() throws IOException {
+        Path outer = makeRoot("outer", "GH010527.MP4");
+        Path inner = makeRoot("outer/inner", "GH010528.MP4");
+        RenamerSettings settings = new RenamerSettings().setDryRun(false).setVerbose(false);
+        MultiRootRenamer renamer = new MultiRootRenamer(settings, msg -> { }, Arrays.asList(inner, outer, outer));
+        assertEquals(Arrays.asList(outer.toAbsolutePath().normalize()), renamer.getRoots());
+        assertEquals(2, renamer.run().getRenamedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testJournalRejected() throws IOException {
+        RenamerSettings settings = new RenamerSettings().setJournalFile(tmp.getRoot().toPath().resolve("j"));
+        new MultiRootRenamer(settings, msg -> { }, Arrays.asList(makeRoot("a"), makeRoot("b")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMetricsRejected() throws IOException {
+        RenamerSettings settings = new RenamerSettings().setJmxEnabled(true);
+        new MultiRootRenamer(settings, msg -> { }, Arrays.asList(makeRoot("a"), makeRoot("b")));
+    }
+}
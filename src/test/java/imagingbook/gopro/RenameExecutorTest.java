@@ -0,0 +1,104 @@
+package imagingbook.gopro;
+
+import imagingbook.gopro.RenamePlan.DirectoryPlan;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RenameExecutorTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Path makeTree(int dirs, int files) throws IOException {
+        Path root = tmp.newFolder("data").toPath();
+        for (int d = 0; d < dirs; d++) {
+            Path dir = Files.createDirectories(root.resolve("day" + d));
+            for (int f = 0; f < files; f++) {
+                Files.createFile(dir.resolve(String.format("GH%02d%04d.MP4", f + 1, d)));
+            }
+        }
+        return root;
+    }
+
+    @Test
+    public void testConcurrentSpeedup() throws IOException {
+        Path root = makeTree(4, 10);
+        RenamerSettings settings = new RenamerSettings().setStartDir(root).setDryRun(false);
+
+        LatencyFileMover slow = new LatencyFileMover(20);
+        long t0 = System.nanoTime();
+        List<String> sequential = new ArrayList<>();
+        RenamerStatistics stats = new RenamerEngine(settings.setFileMover(slow), sequential::add).run();
+        long sequentialTime = System.nanoTime() - t0;
+        assertEquals(40, stats.getRenamedCount());
+        assertEquals(1, slow.getMaxInFlight());
+
+        new RenamerEngine(settings.setMode(RenamerSettings.ProcessMode.Revert)
+                .setFileMover(FileMover.DEFAULT), msg -> { }).run();
+
+        LatencyFileMover fast = new LatencyFileMover(20);
+        t0 = System.nanoTime();
+        List<String> concurrent = new ArrayList<>();
+        stats = new RenamerEngine(settings.setMode(RenamerSettings.ProcessMode.Rename)
+                .setFileMover(fast).setMoveConcurrency(16), concurrent::add).run();
+        long concurrentTime = System.nanoTime() - t0;
+        assertEquals(40, stats.getRenamedCount());
+        assertTrue(fast.getMaxInFlight() > 1 && fast.getMaxInFlight() <= 16);
+        assertTrue(concurrentTime < sequentialTime / 2);
+        assertEquals(sequential, concurrent);       // results are reported in plan order
+    }
+
+    @Test
+    public void testRetryTransientError() throws IOException {
+        Path root = makeTree(1, 3);
+        LatencyFileMover mover = new LatencyFileMover(0).failTimes("GH020000.MP4", 2);
+        RenamerSettings settings = new RenamerSettings().setStartDir(root).setDryRun(false)
+                .setFileMover(mover).setMoveConcurrency(4);
+        RenamerStatistics stats = new RenamerEngine(settings, msg -> { }).run();
+        assertEquals(3, stats.getRenamedCount());
+        assertEquals(0, stats.getErrorCount());
+        assertEquals(5, mover.getMoveCount());
+
+        Files.createFile(root.resolve("day0/GH040000.MP4"));
+        mover.failTimes("GH040000.MP4", 5);
+        stats = new RenamerEngine(settings.setMoveRetries(2), msg -> { }).run();
+        assertEquals(0, stats.getRenamedCount());
+        assertEquals(1, stats.getErrorCount());
+    }
+
+    @Test
+    public void testChainOrder() throws IOException {
+        Path dir = tmp.getRoot().toPath();
+        for (String name : new String[] {"a", "b", "c"}) {
+            Files.write(dir.resolve(name), name.getBytes());
+        }
+        DirectoryPlan dp = new DirectoryPlan(dir);
+        dp.addRename("a", "b");
+        dp.addRename("b", "c");
+        dp.addRename("c", "d");
+        RenamePlan plan = new RenamePlan();
+        plan.add(dp);
+        RenamerSettings settings = new RenamerSettings().setFileMover(new LatencyFileMover(10)).setMoveConcurrency(8);
+        RenamerStatistics stats = new RenamerEngine(settings, msg -> { }).execute(plan);
+        assertEquals(3, stats.getRenamedCount());
+        assertEquals("a", new String(Files.readAllBytes(dir.resolve("b"))));
+        assertEquals("c", new String(Files.readAllBytes(dir.resolve("d"))));
+        assertFalse(Files.exists(dir.resolve("a")));
+    }
+
+    @Test
+    public void testIsTransient() {
+        assertTrue(RenameExecutor.isTransient(new IOException("connection reset")));
+        assertFalse(RenameExecutor.isTransient(new java.nio.file.NoSuchFileException("x")));
+        assertFalse(RenameExecutor.isTransient(new java.nio.file.FileAlreadyExistsException("x")));
+    }
+}
@@ -0,0 +1,180 @@
+package imagingbook.gopro;
+
+import imagingbook.gopro.RenamePlan.DirectoryPlan;
+import imagingbook.gopro.RenamePlan.State;
+import imagingbook.gopro.RenamerListener.FileStatus;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.*;
+
+public class RenameJournalTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static void touch(Path dir, String... names) throws IOException {
+        Files.createDirectories(dir);
+        for (String name : names) {
+            Files.createFile(dir.resolve(name));
+        }
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        Path journalFile = tmp.getRoot().toPath().resolve("journal.txt");
+        DirectoryPlan dp = new DirectoryPlan(tmp.getRoot().toPath().resolve("a\tb"));
+        dp.addRename("GH010527.MP4", "052701-GH010527.MP4");
+        dp.addRename("GH020527.MP4", "X");
+        dp.addRename("GH030527.MP4", "X");      // collision, not journaled
+        dp.addRename("back\\slash", "new\nline");
+        RenamePlan plan = new RenamePlan();
+        plan.add(dp);
+
+        try (RenameJournal journal = RenameJournal.create(journalFile, plan, 2, 10000)) {
+            journal.completed(0);
+            assertEquals(0, journal.getCommitCount());
+            journal.failed(3);
+            assertEquals(1, journal.getCommitCount());     // group of 2 committed
+            journal.completed(1);                          // collision, ignored
+        }
+        RenamePlan read = RenameJournal.read(journalFile);
+        assertEquals(2, read.size());
+        assertEquals(dp.getDirectory().toAbsolutePath(), read.getDirectory(0));
+        assertEquals("GH010527.MP4", read.getSource(0));
+        assertEquals(State.Done, read.getState(0));
+        assertEquals("back\\slash", read.getSource(1));
+        assertEquals("new\nline", read.getTarget(1));
+        assertEquals(State.Failed, read.getState(1));
+    }
+
+    @Test
+    public void testMaxDelayWithoutFurtherRecords() throws IOException, InterruptedException {
+        Path journalFile = tmp.getRoot().toPath().resolve("journal.txt");
+        DirectoryPlan dp = new DirectoryPlan(tmp.getRoot().toPath());
+        dp.addRename("GH010527.MP4", "052701-GH010527.MP4");
+        dp.addRename("GH020527.MP4", "052702-GH020527.MP4");
+        RenamePlan plan = new RenamePlan();
+        plan.add(dp);
+        try (RenameJournal journal = RenameJournal.create(journalFile, plan, 512, 50)) {
+            journal.completed(0);       // the next move hangs, no further records arrive
+            for (int k = 0; k < 100 && journal.getCommitCount() == 0; k++) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, journal.getCommitCount());
+            assertEquals(State.Done, RenameJournal.read(journalFile).getState(0));
+        }
+    }
+
+    @Test
+    public void testTornRecordIgnored() throws IOException {
+        Path journalFile = tmp.getRoot().toPath().resolve("journal.txt");
+        DirectoryPlan dp = new DirectoryPlan(tmp.getRoot().toPath());
+        dp.addRename("GH010527.MP4", "052701-GH010527.MP4");
+        RenamePlan plan = new RenamePlan();
+        plan.add(dp);
+        RenameJournal.create(journalFile, plan).close();
+        Files.write(journalFile, "C\t0".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        assertEquals(State.Planned, RenameJournal.read(journalFile).getState(0));
+    }
+
+    @Test(expected = IOException.class)
+    public void testCreateExisting() throws IOException {
+        RenameJournal.create(tmp.newFile().toPath(), new RenamePlan());
+    }
+
+    @Test
+    public void testResumeAndUndo() throws IOException {
+        Path root = tmp.newFolder("data").toPath();
+        Path journalFile = tmp.getRoot().toPath().resolve("journal.txt");
+        touch(root, "GH010527.MP4", "GH020527.MP4", "GL010527.LRV");
+        touch(root.resolve("day1"), "GX010446.MP4", "GX020446.MP4");
+        RenamerSettings settings = new RenamerSettings().setStartDir(root).setDryRun(false)
+                .setJournalFile(journalFile);
+
+        // interrupt the run after the second renamed file:
+        RenamerEngine[] engine = new RenamerEngine[1];
+        int[] count = {0};
+        engine[0] = new RenamerEngine(settings, new RenamerListener() {
+            @Override
+            public void log(String msg) { }
+            @Override
+            public void fileProcessed(Path dir, String name, String newName, FileStatus status) {
+                if (status == FileStatus.Renamed && ++count[0] == 2)
+                    engine[0].cancel();
+            }
+        });
+        RenamerStatistics stats = engine[0].run();
+        assertTrue(stats.isCancelled());
+        // GH010527.MP4 is restored, since GL010527.LRV of the same group was not started:
+        assertEquals(1, stats.getRenamedCount());
+        assertEquals(1, stats.getRollbackCount());
+        assertTrue(Files.exists(root.resolve("GH010527.MP4")));
+
+        stats = new RenamerEngine(settings, msg -> { }).resume(journalFile);
+        assertEquals(4, stats.getRenamedCount());
+        assertEquals(0, stats.getErrorCount());
+        assertTrue(Files.exists(root.resolve("052702-GH020527.MP4")));
+        assertTrue(Files.exists(root.resolve("day1/044602-GX020446.MP4")));
+
+        stats = new RenamerEngine(settings.setJournalFile(null), msg -> { }).undo(journalFile);
+        assertEquals(5, stats.getRenamedCount());
+        assertTrue(Files.exists(root.resolve("GH010527.MP4")));
+        assertTrue(Files.exists(root.resolve("day1/GX020446.MP4")));
+
+        stats = new RenamerEngine(settings, msg -> { }).undo(journalFile);    // nothing left to undo
+        assertEquals(0, stats.getRenamedCount());
+    }
+
+    @Test
+    public void testResumeUnrecordedMove() throws IOException {
+        Path root = tmp.newFolder("data").toPath();
+        Path journalFile = tmp.getRoot().toPath().resolve("journal.txt");
+        touch(root, "GH010527.MP4", "GH020527.MP4");
+        RenamerSettings settings = new RenamerSettings().setStartDir(root);
+        RenamerEngine dryRun = new RenamerEngine(settings, msg -> { });
+        dryRun.run();
+        RenameJournal.create(journalFile, dryRun.getPlan()).close();    // crashed before any record was committed
+        Files.move(root.resolve("GH010527.MP4"), root.resolve("052701-GH010527.MP4"));
+
+        RenamerStatistics stats = new RenamerEngine(settings, msg -> { }).resume(journalFile);
+        assertEquals(1, stats.getRenamedCount());
+        assertEquals(0, stats.getErrorCount());
+        assertTrue(Files.exists(root.resolve("052702-GH020527.MP4")));
+    }
+
+    @Test
+    public void testResumeGroupFailure() throws IOException {
+        Path root = tmp.newFolder("data").toPath();
+        Path journalFile = tmp.getRoot().toPath().resolve("journal.txt");
+        touch(root, "GH010527.MP4", "GL010527.LRV", "GH020527.MP4");
+        RenamerSettings settings = new RenamerSettings().setStartDir(root);
+        RenamerEngine dryRun = new RenamerEngine(settings, msg -> { });
+        dryRun.run();
+        RenameJournal.create(journalFile, dryRun.getPlan()).close();
+        Files.move(root.resolve("GH010527.MP4"), root.resolve("052701-GH010527.MP4"));
+
+        RenamePlan read = RenameJournal.read(journalFile);
+        assertEquals(2, read.getGroupCount());
+        for (int i = 0; i < read.size(); i++) {
+            assertEquals(dryRun.getPlan().getGroup(i), read.getGroup(i));
+        }
+
+        // the other member of the recovered move's chapter group fails:
+        settings.setDryRun(false).setMoveRetries(0)
+                .setFileMover(new LatencyFileMover(0).failTimes("GL010527.LRV", 1));
+        RenamerStatistics stats = new RenamerEngine(settings, msg -> { }).resume(journalFile);
+        assertEquals(1, stats.getErrorCount());
+        assertEquals(1, stats.getRollbackCount());
+        assertTrue(Files.exists(root.resolve("GH010527.MP4")));
+        assertTrue(Files.exists(root.resolve("GL010527.LRV")));
+        assertTrue(Files.exists(root.resolve("052702-GH020527.MP4")));
+    }
+}
@@ -0,0 +1,138 @@
+package imagingbook.gopro;
+
+import imagingbook.gopro.RenamePlan.DirectoryPlan;
+import imagingbook.gopro.RenamePlan.State;
+import org.junit.Test;
+
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class RenamePlanTest {
+
+    private static State stateOf(RenamePlan plan, String source) {
+        for (int i = 0; i < plan.size(); i++) {
+            if (plan.getSource(i).equals(source))
+                return plan.getState(i);
+        }
+        throw new AssertionError("no entry for " + source);
+    }
+
+    @Test
+    public void testCollisions() {
+        DirectoryPlan dp = new DirectoryPlan(Paths.get("a"));
+        dp.addRename("GH010527.MP4", "052701-GH010527.MP4");
+        dp.addFile("052701-GH010527.MP4");          // target exists already
+        dp.addRename("GH020527.MP4", "X.MP4");
+        dp.addRename("GH030527.MP4", "X.MP4");      // target claimed twice
+        dp.addRename("GH040527.MP4", "052704-GH040527.MP4");
+        RenamePlan plan = new RenamePlan();
+        assertTrue(plan.add(dp));
+        assertEquals(State.Collision, stateOf(plan, "GH010527.MP4"));
+        assertEquals(State.Collision, stateOf(plan, "GH020527.MP4"));
+        assertEquals(State.Collision, stateOf(plan, "GH030527.MP4"));
+        assertEquals(State.Planned, stateOf(plan, "GH040527.MP4"));
+        assertEquals(1, plan.getPlannedCount());
+        assertEquals(3, plan.getConflictCount());
+    }
+
+    @Test
+    public void testChainOrder() {
+        DirectoryPlan dp = new DirectoryPlan(Paths.get("a"));
+        dp.addRename("a", "b");
+        dp.addRename("b", "c");
+        dp.addRename("c", "d");
+        RenamePlan plan = new RenamePlan();
+        plan.add(dp);
+        assertEquals(3, plan.getPlannedCount());
+        assertEquals("c", plan.getSource(0));       // the end of the chain goes first
+        assertEquals("b", plan.getSource(1));
+        assertEquals("a", plan.getSource(2));
+    }
+
+    @Test
+    public void testCycles() {
+        DirectoryPlan dp = new DirectoryPlan(Paths.get("a"));
+        dp.addRename("p", "q");
+        dp.addRename("q", "p");                     // p -> q -> p
+        dp.addRename("s", "s");                     // renamed to itself
+        dp.addRename("x", "y");                     // depends on a blocked entry
+        dp.addRename("y", "z");
+        dp.addFile("z");
+        RenamePlan plan = new RenamePlan();
+        plan.add(dp);
+        assertEquals(0, plan.getPlannedCount());
+        assertEquals(State.Cycle, stateOf(plan, "p"));
+        assertEquals(State.Cycle, stateOf(plan, "q"));
+        assertEquals(State.Cycle, stateOf(plan, "s"));
+        assertEquals(State.Collision, stateOf(plan, "y"));
+        assertEquals(State.Collision, stateOf(plan, "x"));
+    }
+
+    @Test
+    public void testDuplicateDirectory() {
+        RenamePlan plan = new RenamePlan();
+        DirectoryPlan dp1 = new DirectoryPlan(Paths.get("a"));
+        dp1.addRename("GH010527.MP4", "052701-GH010527.MP4");
+        DirectoryPlan dp2 = new DirectoryPlan(Paths.get("a/../a"));
+        dp2.addRename("GH010527.MP4", "052701-GH010527.MP4");
+        assertTrue(plan.add(dp1));
+        assertFalse(plan.add(dp2));
+        assertEquals(2, plan.getDirectoryCount());
+        assertEquals(State.Planned, plan.getState(0));
+        assertEquals(State.Duplicate, plan.getState(1));
+    }
+
+    private static void addGoPro(DirectoryPlan dp, String... names) {
+        FileNameFormat format = new FileNameFormat.OriginalGoproFormat();
+        for (String name : names) {
+            dp.addRename(name, format.mapFileName(name), format.getGroupKey(name));
+        }
+    }
+
+    @Test
+    public void testChapterGroups() {
+        DirectoryPlan dp = new DirectoryPlan(Paths.get("a"));
+        addGoPro(dp, "GH010527.MP4", "GL010527.LRV", "GH010527.THM", "GH020527.MP4", "GL020527.LRV");
+        dp.addFile("052702-GL020527.LRV");          // blocks the whole chapter 02
+        RenamePlan plan = new RenamePlan();
+        plan.add(dp);
+        assertEquals(State.Planned, stateOf(plan, "GH010527.MP4"));
+        assertEquals(State.Planned, stateOf(plan, "GH010527.THM"));
+        assertEquals(State.Collision, stateOf(plan, "GL020527.LRV"));
+        assertEquals(State.Group, stateOf(plan, "GH020527.MP4"));
+        assertEquals(3, plan.getPlannedCount());
+        assertEquals(2, plan.getConflictCount());
+        assertEquals(2, plan.getGroupCount());
+        assertEquals(plan.getGroup(0), plan.getGroup(1));
+        assertTrue(dp.getWarnings().isEmpty());
+    }
+
+    @Test
+    public void testChapterWarnings() {
+        DirectoryPlan dp = new DirectoryPlan(Paths.get("a"));
+        addGoPro(dp, "GH010527.MP4", "GH030527.MP4", "GH050527.MP4", "GL060527.LRV", "GH060527.THM", "GH020528.MP4");
+        dp.addRename("notes.txt", "x.txt");         // not grouped
+        dp.resolve();
+        assertEquals(Arrays.asList(
+                "no video file for GL060527.LRV, GH060527.THM",
+                "video 0527: chapter 02 is missing",
+                "video 0527: chapter 04 is missing",
+                "video 0528: chapter 01 is missing"), dp.getWarnings());
+    }
+
+    @Test
+    public void testGroupsInDuplicateDirectory() {
+        RenamePlan plan = new RenamePlan();
+        for (int k = 0; k < 2; k++) {
+            DirectoryPlan dp = new DirectoryPlan(Paths.get("a"));
+            addGoPro(dp, "GH010527.MP4", "GL010527.LRV");
+            plan.add(dp);
+        }
+        assertEquals(2, plan.getGroupCount());
+        assertEquals(0, plan.getGroup(0));
+        assertEquals(1, plan.getGroup(2));
+        assertEquals(2, plan.getPlannedCount());
+    }
+}
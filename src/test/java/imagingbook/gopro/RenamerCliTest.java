@@ -0,0 +1,73 @@
+package imagingbook.gopro;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class RenamerCliTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private int run(String... args) {
+        return RenamerCli.run(args);
+    }
+
+    @Test
+    public void testModeOptionsWithoutMode() throws IOException {
+        String dir = tmp.newFolder("videos").toString();
+        assertEquals(RenamerCli.EXIT_USAGE, run("--verify", dir));
+        assertEquals(RenamerCli.EXIT_USAGE, run("--symlinks", dir));
+        assertEquals(RenamerCli.EXIT_USAGE, run("--symlinks", "--ingest", tmp.getRoot().toString(), dir));
+        assertEquals(RenamerCli.EXIT_USAGE, run("--source-of", "x", dir));
+    }
+
+    @Test
+    public void testScanOptionsWithOtherModes() throws IOException {
+        String dir = tmp.newFolder("videos").toString();
+        String other = tmp.getRoot().toPath().resolve("out").toString();
+        String file = tmp.getRoot().toPath().resolve("file").toString();
+        for (String[] mode : new String[][] {{"--ingest", other}, {"--view", other}, {"--watch"}, {"--timeline"}}) {
+            for (String[] option : new String[][] {{"--journal", file}, {"--cache", file}, {"--duplicates"}, {"--verify-cache"}}) {
+                String[] args = new String[mode.length + option.length + 1];
+                System.arraycopy(mode, 0, args, 0, mode.length);
+                System.arraycopy(option, 0, args, mode.length, option.length);
+                args[args.length - 1] = dir;
+                assertEquals(String.join(" ", args), RenamerCli.EXIT_USAGE, run(args));
+            }
+        }
+        assertFalse(Files.exists(tmp.getRoot().toPath().resolve("out")));
+        assertFalse(Files.exists(tmp.getRoot().toPath().resolve("file")));
+    }
+
+    @Test
+    public void testJournalModes() {
+        String journal = tmp.getRoot().toPath().resolve("journal.txt").toString();
+        assertEquals(RenamerCli.EXIT_USAGE, run("--apply", "--resume", journal));
+        assertEquals(RenamerCli.EXIT_USAGE, run("--revert", "--undo", journal));
+        assertEquals(RenamerCli.EXIT_USAGE, run("--journal", journal, "--resume", journal));
+        assertEquals(RenamerCli.EXIT_USAGE, run("--cache", journal, "--undo", journal));
+        assertEquals(RenamerCli.EXIT_USAGE, run("--resume", journal, "--undo", journal));
+    }
+
+    @Test
+    public void testCombinedModes() throws IOException {
+        String dir = tmp.newFolder("videos").toString();
+        assertEquals(RenamerCli.EXIT_USAGE, run("--timeline", "--watch", dir));
+        assertEquals(RenamerCli.EXIT_USAGE, run("--view", tmp.getRoot().toString(), "--timeline", dir));
+    }
+
+    @Test
+    public void testTimelineExitCode() throws IOException {
+        Path dir = tmp.newFolder("videos").toPath();
+        assertEquals(RenamerCli.EXIT_OK, run("--quiet", "--timeline", dir.toString()));
+        Files.write(dir.resolve("GH010527.MP4"), new byte[] {1, 2, 3});     // no MP4 header
+        assertEquals(RenamerCli.EXIT_ERRORS, run("--quiet", "--timeline", dir.toString()));
+    }
+}
@@ -0,0 +1,203 @@
+package imagingbook.gopro;
+
+import imagingbook.gopro.RenamePlan.State;
+import imagingbook.gopro.RenamerSettings.ProcessMode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RenamerEngineTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static void touch(Path dir, String... names) throws IOException {
+        Files.createDirectories(dir);
+        for (String name : names) {
+            Files.createFile(dir.resolve(name));
+        }
+    }
+
+    @Test
+    public void testDryRun() throws IOException {
+        Path root = tmp.getRoot().toPath();
+        touch(root, "GH010527.MP4", "GH020527.MP4", "notes.txt");
+        List<String> lines = new ArrayList<>();
+        RenamerStatistics stats = new RenamerEngine(new RenamerSettings().setStartDir(root), lines::add).run();
+        assertEquals(3, stats.getCheckedCount());
+        assertEquals(2, stats.getMatchedCount());
+        assertEquals(0, stats.getRenamedCount());
+        assertTrue(Files.exists(root.resolve("GH010527.MP4")));
+        assertTrue(lines.contains("   renaming GH020527.MP4 -> 052702-GH020527.MP4"));
+        assertTrue(lines.contains("    ignoring notes.txt"));
+    }
+
+    @Test
+    public void testRenameAndRevert() throws IOException {
+        Path root = tmp.getRoot().toPath();
+        Path sub = root.resolve("day1");
+        touch(root, "GH010527.MP4", ".hidden");
+        touch(sub, "GX020446.MP4", "GL020446.LRV");
+
+        RenamerSettings settings = new RenamerSettings().setStartDir(root).setDryRun(false).setVerbose(false);
+        RenamerStatistics stats = new RenamerEngine(settings, msg -> { }).run();
+        assertEquals(3, stats.getRenamedCount());
+        assertEquals(0, stats.getErrorCount());
+        assertTrue(Files.exists(root.resolve("052701-GH010527.MP4")));
+        assertTrue(Files.exists(sub.resolve("044602-GX020446.MP4")));
+        assertTrue(Files.exists(sub.resolve("044602-GL020446.LRV")));
+
+        stats = new RenamerEngine(settings.setMode(ProcessMode.Revert), msg -> { }).run();
+        assertEquals(3, stats.getRenamedCount());
+        assertTrue(Files.exists(root.resolve("GH010527.MP4")));
+        assertTrue(Files.exists(sub.resolve("GX020446.MP4")));
+    }
+
+    @Test
+    public void testNonRecursive() throws IOException {
+        Path root = tmp.getRoot().toPath();
+        touch(root, "GH010527.MP4");
+        touch(root.resolve("day1"), "GH010528.MP4");
+        RenamerSettings settings = new RenamerSettings().setStartDir(root).setRecursive(false);
+        RenamerStatistics stats = new RenamerEngine(settings, msg -> { }).run();
+        assertEquals(1, stats.getCheckedCount());
+    }
+
+    @Test
+    public void testParallelSameOutputAsSequential() throws IOException {
+        Path root = tmp.getRoot().toPath();
+        for (int d = 0; d < 20; d++) {
+            Path dir = root.resolve("day" + d);
+            for (int v = 0; v < 5; v++) {
+                touch(dir.resolve("sub" + v), String.format("GH01%04d.MP4", v), String.format("GL01%04d.LRV", v), "x.txt");
+            }
+            touch(dir, String.format("GX02%04d.MP4", d));
+        }
+        RenamerSettings settings = new RenamerSettings().setStartDir(root);
+        List<String> sequential = new ArrayList<>();
+        new RenamerEngine(settings, sequential::add).run();
+
+        List<String> parallel = new ArrayList<>();
+        RenamerStatistics stats = new RenamerEngine(settings.setParallelism(4), parallel::add).run();
+        assertEquals(sequential, parallel);
+        assertEquals(121, stats.getDirectoryCount());
+        assertEquals(320, stats.getCheckedCount());
+        assertEquals(220, stats.getMatchedCount());
+
+        stats = new RenamerEngine(settings.setDryRun(false), msg -> { }).run();
+        assertEquals(220, stats.getRenamedCount());
+        assertTrue(Files.exists(root.resolve("day7/sub3/000301-GL010003.LRV")));
+    }
+
+    @Test
+    public void testLinkLoop() throws IOException {
+        Path root = tmp.getRoot().toPath();
+        touch(root.resolve("day1"), "GH010527.MP4");
+        Files.createSymbolicLink(root.resolve("day1/back"), root);
+        Files.createSymbolicLink(root.resolve("again"), root.resolve("day1"));
+        for (int parallelism : new int[] {1, 4}) {
+            RenamerSettings settings = new RenamerSettings().setStartDir(root).setParallelism(parallelism);
+            RenamerEngine engine = new RenamerEngine(settings, msg -> { });
+            RenamerStatistics stats = engine.run();
+            assertEquals(2, stats.getDirectoryCount());
+            assertEquals(1, stats.getMatchedCount());
+            assertEquals(2, stats.getRepeatedCount());
+            assertEquals(1, engine.getPlan().size());
+        }
+    }
+
+    @Test
+    public void testConflictWithExistingFile() throws IOException {
+        Path root = tmp.getRoot().toPath();
+        touch(root, "GH010527.MP4", "052701-GH010527.MP4", "GH020527.MP4");
+        List<String> lines = new ArrayList<>();
+        RenamerSettings settings = new RenamerSettings().setStartDir(root).setDryRun(false);
+        RenamerStatistics stats = new RenamerEngine(settings, lines::add).run();
+        assertEquals(1, stats.getConflictCount());
+        assertEquals(1, stats.getRenamedCount());
+        assertTrue(lines.contains("CONFLICT: cannot rename GH010527.MP4 -> 052701-GH010527.MP4"));
+        assertTrue(Files.exists(root.resolve("GH010527.MP4")));
+        assertTrue(Files.exists(root.resolve("052702-GH020527.MP4")));
+    }
+
+    @Test
+    public void testExecuteDryRunPlan() throws IOException {
+        Path root = tmp.getRoot().toPath();
+        touch(root.resolve("day1"), "GH010527.MP4", "GL010527.LRV");
+        RenamerSettings settings = new RenamerSettings().setStartDir(root);
+        RenamerEngine dryRun = new RenamerEngine(settings, msg -> { });
+        dryRun.run();
+        RenamePlan plan = dryRun.getPlan();
+        assertEquals(2, plan.getPlannedCount());
+        assertTrue(Files.exists(root.resolve("day1/GH010527.MP4")));
+
+        RenamerStatistics stats = new RenamerEngine(settings, msg -> { }).execute(plan);
+        assertEquals(2, stats.getRenamedCount());
+        assertEquals(State.Done, plan.getState(0));
+        assertTrue(Files.exists(root.resolve("day1/052701-GL010527.LRV")));
+    }
+
+    @Test
+    public void testChapterGroupRollback() throws IOException {
+        Path root = tmp.getRoot().toPath();
+        touch(root, "GH010527.MP4", "GL010527.LRV", "GH010527.THM", "GH020527.MP4", "GL020527.LRV");
+        LatencyFileMover mover = new LatencyFileMover(0).failTimes("GL010527.LRV", 1);
+        RenamerSettings settings = new RenamerSettings().setStartDir(root).setDryRun(false)
+                .setMoveRetries(0).setFileMover(mover);
+        List<String> lines = new ArrayList<>();
+        RenamerStatistics stats = new RenamerEngine(settings, lines::add).run();
+        assertEquals(2, stats.getRenamedCount());
+        assertEquals(1, stats.getErrorCount());
+        assertEquals(2, stats.getRollbackCount());
+        // chapter 01 is complete under its original names, chapter 02 is renamed:
+        assertTrue(Files.exists(root.resolve("GH010527.MP4")));
+        assertTrue(Files.exists(root.resolve("GL010527.LRV")));
+        assertTrue(Files.exists(root.resolve("GH010527.THM")));
+        assertTrue(Files.exists(root.resolve("052702-GH020527.MP4")));
+        assertTrue(Files.exists(root.resolve("052702-GL020527.LRV")));
+        assertTrue(lines.contains("   restored GH010527.MP4 (chapter group incomplete)"));
+        assertTrue(lines.contains("Files restored: 2"));
+    }
+
+    @Test
+    public void testCancelKeepsChapterGroups() throws IOException {
+        Path root = tmp.getRoot().toPath();
+        touch(root, "GH010527.MP4", "GH010527.THM", "GL010527.LRV");
+        RenamerEngine[] engine = new RenamerEngine[1];
+        RenamerSettings settings = new RenamerSettings().setStartDir(root).setDryRun(false)
+                .setFileMover((source, target) -> {
+                    Files.move(source, target);
+                    engine[0].cancel();         // after the first move, the rest of the group is not started
+                });
+        List<String> lines = new ArrayList<>();
+        engine[0] = new RenamerEngine(settings, lines::add);
+        RenamerStatistics stats = engine[0].run();
+        assertTrue(stats.isCancelled());
+        assertEquals(0, stats.getRenamedCount());
+        assertEquals(1, stats.getRollbackCount());
+        assertTrue(Files.exists(root.resolve("GH010527.MP4")));
+        assertTrue(Files.exists(root.resolve("GH010527.THM")));
+        assertTrue(Files.exists(root.resolve("GL010527.LRV")));
+        assertTrue(lines.contains("   restored GH010527.MP4 (chapter group incomplete)"));
+    }
+
+    @Test
+    public void testMissingChapterWarning() throws IOException {
+        Path root = tmp.getRoot().toPath();
+        touch(root, "GH010527.MP4", "GH030527.MP4", "GL040527.LRV");
+        List<String> lines = new ArrayList<>();
+        RenamerStatistics stats = new RenamerEngine(new RenamerSettings().setStartDir(root), lines::add).run();
+        assertEquals(2, stats.getWarningCount());
+        assertTrue(lines.contains("WARNING: no video file for GL040527.LRV"));
+        assertTrue(lines.contains("WARNING: video 0527: chapter 02 is missing"));
+        assertTrue(lines.contains("Warnings:       2"));
+    }
+}
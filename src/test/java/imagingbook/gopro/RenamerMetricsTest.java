@@ -0,0 +1,108 @@
+package imagingbook.gopro;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static org.junit.Assert.*;
+
+public class RenamerMetricsTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testBuckets() {
+        assertEquals(0, RenamerMetrics.bucket(0));
+        assertEquals(1, RenamerMetrics.bucket(1));
+        assertEquals(2, RenamerMetrics.bucket(2));
+        assertEquals(2, RenamerMetrics.bucket(3));
+        assertEquals(20, RenamerMetrics.bucket(1000000));     // 1 ms < 2^20 ns
+        assertEquals(63, RenamerMetrics.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testLatencyPercentiles() {
+        RenamerMetrics metrics = new RenamerMetrics(new RenamerStatistics());
+        assertEquals(0, metrics.getMoveLatencyNanos(0.5));
+        for (int i = 0; i < 99; i++) {
+            metrics.moveTimed(1000);        // bucket [512, 1024)
+        }
+        metrics.moveTimed(5000000);
+        assertEquals(100, metrics.getMoveCount());
+        assertEquals(1023, metrics.getMoveLatencyNanos(0.5));
+        assertEquals(1023, metrics.getMoveLatencyNanos(0.99));
+        assertEquals(5000000, metrics.getMoveLatencyNanos(1.0));
+        assertEquals(5.0, metrics.getMoveLatencyMaxMillis(), 1e-9);
+    }
+
+    @Test
+    public void testSlowestDirectories() {
+        RenamerMetrics metrics = new RenamerMetrics(new RenamerStatistics());
+        for (int d = 0; d < 100; d++) {
+            metrics.directoryScanned(Paths.get("dir" + d), d * 1000L, d, 0);
+        }
+        String[] slowest = metrics.getSlowestDirectories();
+        assertEquals(RenamerMetrics.SLOWEST_DIRECTORIES, slowest.length);
+        assertTrue(slowest[0].startsWith("dir99:"));
+        assertTrue(slowest[slowest.length - 1].startsWith("dir90:"));
+    }
+
+    @Test
+    public void testJson() {
+        RenamerMetrics metrics = new RenamerMetrics(new RenamerStatistics());
+        metrics.moveTimed(1000);
+        metrics.directoryScanned(Paths.get("a\"b"), 2000000, 3, 1);
+        String json = metrics.toJson();
+        assertTrue(json.contains("\"moves\": {\"count\": 1,"));
+        assertTrue(json.contains("{\"belowMs\": 0.001, \"count\": 1}"));
+        assertTrue(json.contains("{\"path\": \"a\\\"b\", \"ms\": 2.000, \"files\": 3, \"matched\": 1}"));
+        assertEquals("\"x\\\\y\\u0001\"", RenamerMetrics.quote("x\\y\u0001"));
+    }
+
+    @Test
+    public void testEngineMetricsAndJmx() throws Exception {
+        Path root = tmp.getRoot().toPath().resolve("videos");
+        Files.createDirectories(root.resolve("day1"));
+        Files.createFile(root.resolve("GH010527.MP4"));
+        Files.createFile(root.resolve("day1").resolve("GH010528.MP4"));
+        Path metricsFile = tmp.getRoot().toPath().resolve("metrics.json");
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(RenamerMetrics.OBJECT_NAME);
+        List<Object> seen = new ArrayList<>();
+        FileMover mover = (source, target) -> {
+            try {
+                seen.add(server.getAttribute(name, "MatchedCount"));
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+            Files.move(source, target);
+        };
+        RenamerSettings settings = new RenamerSettings().setStartDir(root).setDryRun(false).setVerbose(false)
+                .setFileMover(mover).setJmxEnabled(true).setMetricsFile(metricsFile);
+        RenamerEngine engine = new RenamerEngine(settings, msg -> { });
+        assertEquals(2, engine.run().getRenamedCount());
+        assertEquals(2, seen.size());
+        assertEquals(2L, seen.get(0));
+        assertFalse(server.isRegistered(name));     // only registered while running
+
+        RenamerMetrics metrics = engine.getMetrics();
+        assertEquals(2, metrics.getMoveCount());
+        assertEquals(2, metrics.getSlowestDirectories().length);
+        String json = new String(Files.readAllBytes(metricsFile), StandardCharsets.UTF_8);
+        assertTrue(json.contains("\"renamed\": 2"));
+        assertTrue(json.contains("\"phasesMs\": {\"scan\": "));
+    }
+}
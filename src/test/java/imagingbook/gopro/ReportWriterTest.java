@@ -0,0 +1,83 @@
+package imagingbook.gopro;
+
+import imagingbook.gopro.RenamerListener.FileStatus;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class ReportWriterTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testCsv() throws IOException {
+        StringWriter sw = new StringWriter();
+        ReportWriter report = new ReportWriter(sw, ReportWriter.Format.CSV);
+        Path dir = Paths.get("a,b");
+        report.write(dir, "GH010527.MP4", "052701-GH010527.MP4", FileStatus.Renamed, 1234, 56789);
+        report.write(dir, "say \"hi\".txt", null, FileStatus.Ignored, 10, -1);
+        report.close();
+        String[] lines = sw.toString().split("\n");
+        assertEquals(3, lines.length);
+        assertEquals(ReportWriter.CSV_HEADER, lines[0]);
+        assertEquals("\"a,b\",GH010527.MP4,052701-GH010527.MP4,Renamed,1234,56", lines[1]);
+        assertEquals("\"a,b\",\"say \"\"hi\"\".txt\",,Ignored,10,", lines[2]);
+        assertEquals(2, report.getCount());
+    }
+
+    @Test
+    public void testNdjson() throws IOException {
+        StringWriter sw = new StringWriter();
+        ReportWriter report = new ReportWriter(sw, ReportWriter.Format.NDJSON);
+        report.write(Paths.get("videos"), "GH010527.MP4", "052701-GH010527.MP4", FileStatus.Conflict, -1, -1);
+        report.close();
+        assertEquals("{\"directory\":\"videos\",\"name\":\"GH010527.MP4\",\"newName\":\"052701-GH010527.MP4\"," +
+                "\"status\":\"Conflict\",\"size\":null,\"micros\":null}\n", sw.toString());
+    }
+
+    @Test
+    public void testEngineReportGzip() throws IOException {
+        Path root = tmp.getRoot().toPath().resolve("videos");
+        Files.createDirectories(root.resolve("day1"));
+        Files.write(root.resolve("GH010527.MP4"), new byte[100]);
+        Files.createFile(root.resolve("notes.txt"));
+        Files.createFile(root.resolve("day1").resolve("GH010528.MP4"));
+        Path reportFile = tmp.getRoot().toPath().resolve("report.csv.gz");
+
+        RenamerSettings settings = new RenamerSettings().setStartDir(root).setDryRun(false)
+                .setVerbose(false).setParallelism(2).setReportFile(reportFile);
+        List<String> output = new ArrayList<>();
+        RenamerStatistics stats = new RenamerEngine(settings, output::add).run();
+        assertEquals(2, stats.getRenamedCount());
+        assertFalse(output.stream().anyMatch(s -> s.contains("GH010527.MP4")));     // quiet
+
+        List<String> lines = new ArrayList<>();
+        try (InputStream is = new GZIPInputStream(Files.newInputStream(reportFile));
+             BufferedReader r = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+            for (String line = r.readLine(); line != null; line = r.readLine())
+                lines.add(line);
+        }
+        assertEquals(ReportWriter.CSV_HEADER, lines.get(0));
+        assertEquals(6, lines.size());      // 1 ignored, 2 matched, 2 renamed
+        assertTrue(lines.contains(root + ",notes.txt,,Ignored,0,"));
+        assertTrue(lines.contains(root + ",GH010527.MP4,052701-GH010527.MP4,Matched,100,"));
+        assertTrue(lines.stream().anyMatch(s -> s.startsWith(root + ",GH010527.MP4,052701-GH010527.MP4,Renamed,100,")));
+        assertTrue(lines.stream().anyMatch(s -> s.startsWith(root.resolve("day1") + ",GH010528.MP4,") && s.contains(",Renamed,0,")));
+    }
+}
@@ -0,0 +1,60 @@
+package imagingbook.gopro;
+
+import imagingbook.gopro.ResultStore.Filter;
+import imagingbook.gopro.ResultStore.Kind;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ResultStoreTest {
+
+    @Test
+    public void testRingBuffer() {
+        ResultStore store = new ResultStore(3);
+        for (int i = 0; i < 5; i++) {
+            store.add(Kind.Ignored, "dir", "f" + i, null);
+        }
+        assertEquals(3, store.size());
+        assertEquals(2, store.getDroppedCount());
+        assertEquals("f2", store.getName(0));
+        assertEquals("f4", store.getName(2));
+    }
+
+    @Test
+    public void testFilter() {
+        ResultStore store = new ResultStore(100);
+        store.add(Kind.Directory, "dir", null, null);
+        store.add(Kind.Ignored, "dir", "a", null);
+        store.add(Kind.Renamed, "dir", "b", "B");
+        store.add(Kind.Error, "dir", "c", "C");
+        store.add(Kind.Matched, "dir", "d", "D");
+
+        store.setFilter(Filter.Renamed);
+        assertEquals(2, store.size());
+        assertEquals("b", store.getName(0));
+        assertEquals("d", store.getName(1));
+
+        store.add(Kind.Renamed, "dir", "e", "E");   // index is updated while adding
+        assertEquals(3, store.size());
+        assertEquals("E", store.getNewName(2));
+
+        store.setFilter(Filter.Errors);
+        assertEquals(1, store.size());
+        assertEquals(Kind.Error, store.getKind(0));
+
+        store.setFilter(Filter.All);
+        assertEquals(6, store.size());
+    }
+
+    @Test
+    public void testFilterWithDroppedRows() {
+        ResultStore store = new ResultStore(10);
+        store.setFilter(Filter.Errors);
+        for (int i = 0; i < 1000; i++) {
+            store.add((i % 2 == 0) ? Kind.Error : Kind.Ignored, "dir", Integer.toString(i), null);
+        }
+        assertEquals(5, store.size());
+        assertEquals("990", store.getName(0));
+        assertEquals("998", store.getName(4));
+    }
+}
@@ -0,0 +1,171 @@
+package imagingbook.gopro;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Creates directory trees with GoPro-style files for tests and benchmarks,
+ * a fast replacement for {@code data/maketestfiles.sh}.
+ * Each generated directory contains a number of videos, each split into chapters
+ * with optional {@code .LRV}/{@code .THM} sidecar files and some unrelated files, e.g.,
+ * <pre>
+ * GH010000.MP4 GL010000.LRV GH010000.THM GH020000.MP4 ... notes0.txt</pre>
+ * Video numbers are unique within the whole tree (modulo 10000). Files are empty unless a
+ * file size is specified. Usage from the command line (after {@code mvn test-compile}):
+ * <pre>
+ * java -cp target/test-classes imagingbook.gopro.SyntheticTreeGenerator &lt;dir&gt; [dirs videos chapters]</pre>
+ */
+public class SyntheticTreeGenerator {
+
+    private int dirs = 10;
+    private int depth = 1;
+    private int videos = 10;
+    private int chapters = 3;
+    private boolean sidecars = true;
+    private int otherFiles = 1;
+    private int fileSize = 0;
+
+    /**
+     * @param dirs the number of leaf directories
+     * @return this generator
+     */
+    public SyntheticTreeGenerator setDirs(int dirs) {
+        this.dirs = dirs;
+        return this;
+    }
+
+    /**
+     * @param depth the nesting depth of the leaf directories (at least 1)
+     * @return this generator
+     */
+    public SyntheticTreeGenerator setDepth(int depth) {
+        this.depth = Math.max(1, depth);
+        return this;
+    }
+
+    /**
+     * @param videos the number of videos per directory
+     * @return this generator
+     */
+    public SyntheticTreeGenerator setVideos(int videos) {
+        this.videos = videos;
+        return this;
+    }
+
+    /**
+     * @param chapters the number of chapters per video (at most 99)
+     * @return this generator
+     */
+    public SyntheticTreeGenerator setChapters(int chapters) {
+        this.chapters = chapters;
+        return this;
+    }
+
+    /**
+     * @param sidecars if {@code true}, a {@code .LRV} and {@code .THM} file is created for every chapter
+     * @return this generator
+     */
+    public SyntheticTreeGenerator setSidecars(boolean sidecars) {
+        this.sidecars = sidecars;
+        return this;
+    }
+
+    /**
+     * @param otherFiles the number of non-GoPro files per directory
+     * @return this generator
+     */
+    public SyntheticTreeGenerator setOtherFiles(int otherFiles) {
+        this.otherFiles = otherFiles;
+        return this;
+    }
+
+    /**
+     * @param fileSize the size of each generated file (in bytes)
+     * @return this generator
+     */
+    public SyntheticTreeGenerator setFileSize(int fileSize) {
+        this.fileSize = fileSize;
+        return this;
+    }
+
+    /**
+     * @return the number of files created by {@link #generate(Path)}
+     */
+    public long getFileCount() {
+        return (long) dirs * (videos * chapters * (sidecars ? 3 : 1) + otherFiles);
+    }
+
+    /**
+     * @return the number of files created by {@link #generate(Path)} whose names match
+     * {@link FileNameFormat.OriginalGoproFormat}
+     */
+    public long getGoproFileCount() {
+        return (long) dirs * videos * chapters * (sidecars ? 3 : 1);
+    }
+
+    /**
+     * Creates the directory tree under the given root directory.
+     * @param root the root directory (created if necessary)
+     * @throws IOException if a file could not be created
+     */
+    public void generate(Path root) throws IOException {
+        ByteBuffer content = ByteBuffer.allocate(fileSize);
+        for (int i = 0; i < fileSize; i++) {
+            content.put(i, (byte) (i * 31 + 7));
+        }
+        int video = 0;
+        for (int d = 0; d < dirs; d++) {
+            Path dir = root;
+            for (int k = depth - 1; k > 0; k--) {
+                dir = dir.resolve(String.format("group%d", d / (int) Math.pow(10, k)));
+            }
+            dir = Files.createDirectories(dir.resolve(String.format("dir%05d", d)));
+            for (int v = 0; v < videos; v++, video++) {
+                for (int c = 1; c <= chapters; c++) {
+                    String num = String.format("%02d%04d", c, video % 10000);
+                    createFile(dir.resolve("GH" + num + ".MP4"), content);
+                    if (sidecars) {
+                        createFile(dir.resolve("GL" + num + ".LRV"), content);
+                        createFile(dir.resolve("GH" + num + ".THM"), content);
+                    }
+                }
+            }
+            for (int k = 0; k < otherFiles; k++) {
+                createFile(dir.resolve("notes" + k + ".txt"), content);
+            }
+        }
+    }
+
+    private static void createFile(Path file, ByteBuffer content) throws IOException {
+        if (content.capacity() == 0) {
+            Files.createFile(file);
+            return;
+        }
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer buf = content.duplicate();
+            buf.clear();
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: SyntheticTreeGenerator <dir> [dirs videos chapters]");
+            System.exit(2);
+        }
+        SyntheticTreeGenerator gen = new SyntheticTreeGenerator();
+        if (args.length > 3) {
+            gen.setDirs(Integer.parseInt(args[1])).setVideos(Integer.parseInt(args[2])).setChapters(Integer.parseInt(args[3]));
+        }
+        long start = System.nanoTime();
+        gen.generate(Paths.get(args[0]));
+        System.out.printf("created %d files in %.1f s%n", gen.getFileCount(), (System.nanoTime() - start) * 1e-9);
+    }
+}
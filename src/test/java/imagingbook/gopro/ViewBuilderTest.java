@@ -0,0 +1,112 @@
+package imagingbook.gopro;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class ViewBuilderTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Path makeCard() throws IOException {
+        Path card = tmp.newFolder("DCIM").toPath();
+        Path dir = Files.createDirectories(card.resolve("100GOPRO"));
+        Files.write(dir.resolve("GH010527.MP4"), new byte[] {1, 2, 3});
+        Files.write(dir.resolve("GH020527.MP4"), new byte[] {4, 5});
+        Files.write(dir.resolve("notes.txt"), new byte[] {6});
+        return card;
+    }
+
+    @Test
+    public void testIncrementalUpdate() throws IOException {
+        Path card = makeCard();
+        Path view = tmp.getRoot().toPath().resolve("view");
+        RenamerSettings settings = new RenamerSettings().setStartDir(card).setDryRun(false);
+
+        ViewBuilder builder = new ViewBuilder(settings, msg -> { }, view);
+        assertEquals(2, builder.run().getRenamedCount());
+        Path entry = view.resolve("100GOPRO/052701-GH010527.MP4");
+        assertTrue(Files.isSameFile(entry, card.resolve("100GOPRO/GH010527.MP4")));    // hard link
+        assertFalse(Files.exists(view.resolve("100GOPRO/notes.txt")));
+        assertTrue(Files.exists(card.resolve("100GOPRO/GH010527.MP4")));
+
+        // unchanged source, nothing to do:
+        builder = new ViewBuilder(settings, msg -> { }, view);
+        assertEquals(0, builder.run().getRenamedCount());
+        assertEquals(2, builder.getKeptCount());
+        assertEquals(0, builder.getRemovedCount());
+
+        // one chapter renamed to a name not matched, another added, a foreign file in the view:
+        Files.move(card.resolve("100GOPRO/GH020527.MP4"), card.resolve("100GOPRO/clip.MP4"));
+        Files.write(card.resolve("100GOPRO/GH030527.MP4"), new byte[] {7});
+        Files.write(view.resolve("100GOPRO/readme.txt"), new byte[] {8});
+        builder = new ViewBuilder(settings, msg -> { }, view);
+        assertEquals(1, builder.run().getRenamedCount());
+        assertEquals(1, builder.getKeptCount());
+        assertEquals(1, builder.getRemovedCount());
+        assertFalse(Files.exists(view.resolve("100GOPRO/052702-GH020527.MP4")));
+        assertTrue(Files.exists(view.resolve("100GOPRO/052703-GH030527.MP4")));
+        assertTrue(Files.exists(view.resolve("100GOPRO/readme.txt")));
+
+        // reverse mapping:
+        assertEquals(card.resolve("100GOPRO/GH010527.MP4").toAbsolutePath(), builder.getSource(entry));
+    }
+
+    @Test
+    public void testSymbolicLinks() throws IOException {
+        Path card = makeCard();
+        Path view = tmp.getRoot().toPath().resolve("view");
+        RenamerSettings settings = new RenamerSettings().setStartDir(card).setDryRun(false);
+        ViewBuilder builder = new ViewBuilder(settings, msg -> { }, view).setLinkMode(ViewBuilder.LinkMode.Symbolic);
+        assertEquals(2, builder.run().getRenamedCount());
+        Path entry = view.resolve("100GOPRO/052702-GH020527.MP4");
+        Path original = card.resolve("100GOPRO/GH020527.MP4").toAbsolutePath();
+        assertTrue(Files.isSymbolicLink(entry));
+        assertEquals(original, builder.getSource(entry));
+        assertArrayEquals(new byte[] {4, 5}, Files.readAllBytes(entry));
+
+        // broken link removed, directory left empty is deleted:
+        Files.delete(card.resolve("100GOPRO/GH010527.MP4"));
+        Files.delete(original);
+        builder = new ViewBuilder(settings, msg -> { }, view).setLinkMode(ViewBuilder.LinkMode.Symbolic);
+        builder.run();
+        assertEquals(2, builder.getRemovedCount());
+        assertFalse(Files.exists(view.resolve("100GOPRO")));
+    }
+
+    @Test
+    public void testForeignFilesKept() throws IOException {
+        Path card = makeCard();
+        Path view = tmp.getRoot().toPath().resolve("view");
+        RenamerSettings settings = new RenamerSettings().setStartDir(card).setDryRun(false);
+        new ViewBuilder(settings, msg -> { }, view).run();
+
+        // a real file with a mapped name, but not created by the view builder:
+        Path foreign = view.resolve("100GOPRO/099901-GH010999.MP4");
+        Files.write(foreign, new byte[] {9});
+        // a view entry whose original was deleted is the last link to its data:
+        Files.delete(card.resolve("100GOPRO/GH020527.MP4"));
+        ViewBuilder builder = new ViewBuilder(settings, msg -> { }, view);
+        RenamerStatistics stats = builder.run();
+        assertEquals(0, builder.getRemovedCount());
+        assertEquals(1, stats.getWarningCount());
+        assertArrayEquals(new byte[] {9}, Files.readAllBytes(foreign));
+        assertArrayEquals(new byte[] {4, 5}, Files.readAllBytes(view.resolve("100GOPRO/052702-GH020527.MP4")));
+    }
+
+    @Test
+    public void testDryRun() throws IOException {
+        Path card = makeCard();
+        Path view = tmp.getRoot().toPath().resolve("view");
+        RenamerSettings settings = new RenamerSettings().setStartDir(card);
+        assertEquals(2, new ViewBuilder(settings, msg -> { }, view).run().getMatchedCount());
+        assertFalse(Files.exists(view));
+    }
+}